@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.provider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.embeddedlog.LightUpDroid.Log;
+
+import java.util.Locale;
+
+/**
+ * Times the alarm list query while another thread writes the alarms in transactions, like the
+ * state manager and the LightUpPi sync do, with a rollback journal and with write-ahead logging.
+ * The times are only logged, as they depend on the device, look for "Alarm list reads" in the
+ * log of the test run.
+ */
+public class ClockDatabaseBenchmarkTest extends AndroidTestCase {
+    private static final int ALARM_COUNT = 1000;
+    private static final int WRITE_TRANSACTIONS = 200;
+    private static final int ROWS_PER_TRANSACTION = 20;
+
+    private Context mTestContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTestContext = new RenamingDelegatingContext(getContext(), "test_benchmark_");
+        mTestContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mTestContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testWriteAheadLoggingEnabled() {
+        ClockDatabaseHelper helper = new ClockDatabaseHelper(mTestContext);
+        try {
+            assertEquals("wal", DatabaseUtils.stringForQuery(helper.getReadableDatabase(),
+                    "PRAGMA journal_mode", null).toLowerCase(Locale.US));
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testReadsWhileWriting() throws InterruptedException {
+        String rollbackJournal = timeReadsWhileWriting(false);
+        mTestContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+        String writeAheadLog = timeReadsWhileWriting(true);
+        Log.i("Alarm list reads while writing " + ALARM_COUNT + " alarms, rollback journal: " +
+                rollbackJournal + "; write-ahead logging: " + writeAheadLog);
+    }
+
+    /**
+     * @return the number of reads done while the writes ran, and their average and longest time.
+     */
+    private String timeReadsWhileWriting(boolean writeAheadLogging) throws InterruptedException {
+        ClockDatabaseHelper helper = new ClockDatabaseHelper(mTestContext);
+        helper.setWriteAheadLoggingEnabled(writeAheadLogging);
+        try {
+            final SQLiteDatabase db = helper.getWritableDatabase();
+            insertAlarms(db);
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITE_TRANSACTIONS; i++) {
+                        updateAlarms(db, i);
+                    }
+                }
+            });
+            writer.start();
+
+            int reads = 0;
+            long total = 0;
+            long longest = 0;
+            while (writer.isAlive()) {
+                long start = SystemClock.elapsedRealtime();
+                Cursor cursor = db.query(ClockDatabaseHelper.ALARMS_TABLE_NAME,
+                        Alarm.QUERY_COLUMNS, null, null, null, null, null);
+                try {
+                    assertEquals(ALARM_COUNT + 2, cursor.getCount());
+                } finally {
+                    cursor.close();
+                }
+                long time = SystemClock.elapsedRealtime() - start;
+                total += time;
+                longest = Math.max(longest, time);
+                reads++;
+            }
+            writer.join();
+            return reads + " reads, " + (reads == 0 ? 0 : total / reads) + " ms average, " +
+                    longest + " ms longest";
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static void insertAlarms(SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ALARM_COUNT; i++) {
+                values.put(ClockContract.AlarmsColumns.HOUR, i % 24);
+                values.put(ClockContract.AlarmsColumns.MINUTES, i % 60);
+                values.put(ClockContract.AlarmsColumns.DAYS_OF_WEEK, 31);
+                values.put(ClockContract.AlarmsColumns.ENABLED, 1);
+                values.put(ClockContract.AlarmsColumns.VIBRATE, 0);
+                values.put(ClockContract.AlarmsColumns.LABEL, "Alarm " + i);
+                values.put(ClockContract.AlarmsColumns.LIGHTUPPI_ID, Alarm.INVALID_ID);
+                values.put(ClockContract.AlarmsColumns.TIMESTAMP, 1);
+                db.insert(ClockDatabaseHelper.ALARMS_TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void updateAlarms(SQLiteDatabase db, int transaction) {
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS_PER_TRANSACTION; i++) {
+                long id = (transaction * ROWS_PER_TRANSACTION + i) % ALARM_COUNT + 1;
+                values.put(ClockContract.AlarmsColumns.TIMESTAMP, transaction + 2);
+                db.update(ClockDatabaseHelper.ALARMS_TABLE_NAME, values,
+                        ClockContract.AlarmsColumns._ID + " = ?",
+                        new String[] { Long.toString(id) });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
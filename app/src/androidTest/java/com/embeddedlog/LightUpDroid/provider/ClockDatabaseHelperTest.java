@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Upgrades databases seeded with the schema and rows of older versions, and checks the rows are
+ * kept and the final schema has the same columns as a database created from scratch.
+ *
+ * The columns are compared by name, type, NOT NULL and primary key. Their order and DEFAULT
+ * values are left out on purpose: the upgrade appends the new columns with a default for the
+ * existing rows, while a new database declares them in place without one, and all the reads
+ * and writes of the provider name their columns.
+ */
+public class ClockDatabaseHelperTest extends AndroidTestCase {
+    private static final String RINGTONE = "content://media/internal/audio/media/12";
+
+    private Context mUpgradedContext;
+    private Context mCreatedContext;
+    private ClockDatabaseHelper mUpgradedHelper;
+    private ClockDatabaseHelper mCreatedHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Keeps the databases of the tests apart from the one of the app
+        mUpgradedContext = new RenamingDelegatingContext(getContext(), "test_upgraded_");
+        mCreatedContext = new RenamingDelegatingContext(getContext(), "test_created_");
+        mUpgradedContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+        mCreatedContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mUpgradedHelper != null) {
+            mUpgradedHelper.close();
+        }
+        if (mCreatedHelper != null) {
+            mCreatedHelper.close();
+        }
+        mUpgradedContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+        mCreatedContext.deleteDatabase(ClockDatabaseHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromVersion5() {
+        SQLiteDatabase old = createOldDatabase();
+        old.execSQL("CREATE TABLE alarms (_id INTEGER PRIMARY KEY, hour INTEGER, " +
+                "minutes INTEGER, daysofweek INTEGER, alarmtime INTEGER, enabled INTEGER, " +
+                "vibrate INTEGER, message TEXT, alert TEXT);");
+        old.execSQL("INSERT INTO alarms VALUES (1, 8, 30, 31, 0, 1, 1, 'Work', '" +
+                RINGTONE + "');");
+        old.execSQL("INSERT INTO alarms VALUES (2, 10, 15, 96, 0, 0, 0, NULL, 'silent');");
+        old.execSQL("INSERT INTO alarms VALUES (3, 7, 0, 0, 0, 1, 0, 'Once', '');");
+        closeOldDatabase(old, 5);
+
+        SQLiteDatabase db = upgrade();
+        assertAlarm(db, 1, "8|30|31|1|1|Work|" + RINGTONE + "|0|-1");
+        assertAlarm(db, 2, "10|15|96|0|0||" + Alarm.NO_RINGTONE + "|0|-1");
+        assertAlarm(db, 3, "7|0|0|1|0|Once|null|0|-1");
+        assertStamped(db, ClockDatabaseHelper.ALARMS_TABLE_NAME, 3);
+
+        // The enabled alarms get their next instance, with the settings of the alarm
+        assertEquals(2, count(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, null));
+        assertEquals("8|30|1|Work|" + RINGTONE, query(db, "SELECT hour, minutes, vibrate, " +
+                "label, ringtone FROM alarm_instances WHERE alarm_id = 1"));
+        assertEquals("7|0|0|Once|null", query(db, "SELECT hour, minutes, vibrate, " +
+                "label, ringtone FROM alarm_instances WHERE alarm_id = 3"));
+        assertEquals(0, count(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, "alarm_id = 2"));
+        assertEquals(0, count(db, "sqlite_master",
+                "name = '" + ClockDatabaseHelper.OLD_ALARMS_TABLE_NAME + "'"));
+        assertSchemaMatchesCreated(db);
+    }
+
+    public void testUpgradeFromVersion7() {
+        SQLiteDatabase old = createOldDatabase();
+        createVersion6AlarmsTable(old, "");
+        createInstancesTable(old, "vibrate INTEGER NOT NULL, label TEXT NOT NULL, " +
+                "ringtone TEXT, ");
+        createCitiesTable(old);
+        old.execSQL("INSERT INTO alarm_templates VALUES (1, 6, 45, 31, 1, 1, 'Gym', NULL, 1);");
+        old.execSQL("INSERT INTO alarm_templates VALUES (2, 9, 0, 0, 0, 0, '', '" +
+                RINGTONE + "', 0);");
+        old.execSQL("INSERT INTO alarm_instances VALUES " +
+                "(5, 2015, 2, 3, 6, 45, 1, 'Gym', NULL, 1, 1);");
+        old.execSQL("INSERT INTO selected_cities VALUES ('C1', 'London', 'Europe/London', 0);");
+        closeOldDatabase(old, 7);
+
+        SQLiteDatabase db = upgrade();
+        assertAlarm(db, 1, "6|45|31|1|1|Gym|null|1|-1");
+        assertAlarm(db, 2, "9|0|0|0|0||" + RINGTONE + "|0|-1");
+        assertStamped(db, ClockDatabaseHelper.ALARMS_TABLE_NAME, 2);
+        // No instances are created for alarms that already come from the instances era
+        assertEquals(1, count(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, null));
+        assertInstance(db, 5, "2015|2|3|6|45|1|Gym|null|1|1|-1");
+        assertStamped(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, 1);
+        assertEquals("C1|London|Europe/London|0", query(db, "SELECT * FROM selected_cities"));
+        assertSchemaMatchesCreated(db);
+    }
+
+    public void testUpgradeFromVersionLightUpPi1() {
+        SQLiteDatabase old = createOldDatabase();
+        createVersion6AlarmsTable(old, ", lightuppi_id INTEGER NOT NULL");
+        createInstancesTable(old, "vibrate INTEGER NOT NULL, label TEXT NOT NULL, " +
+                "ringtone TEXT, lightuppi_id INTEGER NOT NULL, ");
+        createCitiesTable(old);
+        old.execSQL("INSERT INTO alarm_templates VALUES " +
+                "(1, 6, 45, 31, 1, 0, 'Gym', NULL, 0, 42);");
+        old.execSQL("INSERT INTO alarm_instances (_id, year, month, day, hour, minutes, " +
+                "vibrate, label, ringtone, lightuppi_id, alarm_state, alarm_id) VALUES " +
+                "(5, 2015, 2, 3, 6, 45, 0, 'Gym', NULL, 42, 1, 1);");
+        closeOldDatabase(old, 10);
+
+        SQLiteDatabase db = upgrade();
+        assertAlarm(db, 1, "6|45|31|1|0|Gym|null|0|42");
+        assertStamped(db, ClockDatabaseHelper.ALARMS_TABLE_NAME, 1);
+        assertInstance(db, 5, "2015|2|3|6|45|0|Gym|null|1|1|42");
+        assertStamped(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, 1);
+        assertSchemaMatchesCreated(db);
+    }
+
+    public void testUpgradeFromVersionLightUpPi1WithInstanceTimestamp() {
+        // The instances table already has the timestamp column of the next version
+        SQLiteDatabase old = createOldDatabase();
+        createVersion6AlarmsTable(old, ", lightuppi_id INTEGER NOT NULL");
+        createInstancesTable(old, "vibrate INTEGER NOT NULL, label TEXT NOT NULL, " +
+                "ringtone TEXT, lightuppi_id INTEGER NOT NULL, timestamp INTEGER NOT NULL, ");
+        createCitiesTable(old);
+        old.execSQL("INSERT INTO alarm_templates VALUES " +
+                "(1, 6, 45, 31, 1, 0, 'Gym', NULL, 0, 42);");
+        old.execSQL("INSERT INTO alarm_instances (_id, year, month, day, hour, minutes, " +
+                "vibrate, label, ringtone, lightuppi_id, timestamp, alarm_state, alarm_id) " +
+                "VALUES (5, 2015, 2, 3, 6, 45, 0, 'Gym', NULL, 42, 0, 1, 1);");
+        closeOldDatabase(old, 10);
+
+        SQLiteDatabase db = upgrade();
+        assertAlarm(db, 1, "6|45|31|1|0|Gym|null|0|42");
+        assertInstance(db, 5, "2015|2|3|6|45|0|Gym|null|1|1|42");
+        assertStamped(db, ClockDatabaseHelper.INSTANCES_TABLE_NAME, 1);
+        assertSchemaMatchesCreated(db);
+    }
+
+    private SQLiteDatabase createOldDatabase() {
+        return mUpgradedContext.openOrCreateDatabase(ClockDatabaseHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+    }
+
+    private static void closeOldDatabase(SQLiteDatabase db, int version) {
+        db.setVersion(version);
+        db.close();
+    }
+
+    private SQLiteDatabase upgrade() {
+        mUpgradedHelper = new ClockDatabaseHelper(mUpgradedContext);
+        SQLiteDatabase db = mUpgradedHelper.getWritableDatabase();
+        mCreatedHelper = new ClockDatabaseHelper(mCreatedContext);
+        assertEquals(mCreatedHelper.getReadableDatabase().getVersion(), db.getVersion());
+        return db;
+    }
+
+    private static void createVersion6AlarmsTable(SQLiteDatabase db, String extraColumns) {
+        db.execSQL("CREATE TABLE alarm_templates (_id INTEGER PRIMARY KEY, " +
+                "hour INTEGER NOT NULL, minutes INTEGER NOT NULL, " +
+                "daysofweek INTEGER NOT NULL, enabled INTEGER NOT NULL, " +
+                "vibrate INTEGER NOT NULL, label TEXT NOT NULL, ringtone TEXT, " +
+                "delete_after_use INTEGER NOT NULL DEFAULT 0" + extraColumns + ");");
+    }
+
+    private static void createInstancesTable(SQLiteDatabase db, String settingColumns) {
+        db.execSQL("CREATE TABLE alarm_instances (_id INTEGER PRIMARY KEY, " +
+                "year INTEGER NOT NULL, month INTEGER NOT NULL, day INTEGER NOT NULL, " +
+                "hour INTEGER NOT NULL, minutes INTEGER NOT NULL, " + settingColumns +
+                "alarm_state INTEGER NOT NULL, alarm_id INTEGER REFERENCES " +
+                "alarm_templates(_id) ON UPDATE CASCADE ON DELETE CASCADE);");
+    }
+
+    private static void createCitiesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE selected_cities (city_id TEXT PRIMARY KEY, " +
+                "city_name TEXT NOT NULL, timezone_name TEXT NOT NULL, " +
+                "timezone_offset INTEGER NOT NULL);");
+    }
+
+    private static void assertAlarm(SQLiteDatabase db, long id, String expected) {
+        assertEquals(expected, query(db, "SELECT hour, minutes, daysofweek, enabled, vibrate, " +
+                "label, ringtone, delete_after_use, lightuppi_id FROM alarm_templates " +
+                "WHERE _id = " + id));
+    }
+
+    private static void assertInstance(SQLiteDatabase db, long id, String expected) {
+        assertEquals(expected, query(db, "SELECT year, month, day, hour, minutes, vibrate, " +
+                "label, ringtone, alarm_state, alarm_id, lightuppi_id FROM alarm_instances " +
+                "WHERE _id = " + id));
+    }
+
+    /**
+     * Checks all the rows of the table got a timestamp from the upgrade.
+     */
+    private static void assertStamped(SQLiteDatabase db, String table, int rows) {
+        assertEquals(rows, count(db, table, null));
+        assertEquals(0, count(db, table, "timestamp <= 0"));
+    }
+
+    private void assertSchemaMatchesCreated(SQLiteDatabase db) {
+        SQLiteDatabase created = mCreatedHelper.getReadableDatabase();
+        String[] tables = {
+                ClockDatabaseHelper.ALARMS_TABLE_NAME,
+                ClockDatabaseHelper.INSTANCES_TABLE_NAME,
+                ClockDatabaseHelper.CITIES_TABLE_NAME
+        };
+        for (String table : tables) {
+            assertEquals(table, getColumns(created, table), getColumns(db, table));
+        }
+    }
+
+    private static Map<String, String> getColumns(SQLiteDatabase db, String table) {
+        Map<String, String> columns = new HashMap<String, String>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.put(cursor.getString(cursor.getColumnIndexOrThrow("name")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("type")) +
+                        " notnull=" + cursor.getInt(cursor.getColumnIndexOrThrow("notnull")) +
+                        " pk=" + cursor.getInt(cursor.getColumnIndexOrThrow("pk")));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private static long count(SQLiteDatabase db, String table, String selection) {
+        return DatabaseUtils.queryNumEntries(db, table, selection);
+    }
+
+    /**
+     * @return the columns of the only row of the query joined by '|', with "null" for nulls.
+     */
+    private static String query(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertEquals(sql, 1, cursor.getCount());
+            cursor.moveToFirst();
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                if (i > 0) {
+                    row.append('|');
+                }
+                row.append(cursor.isNull(i) ? "null" : cursor.getString(i));
+            }
+            return row.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
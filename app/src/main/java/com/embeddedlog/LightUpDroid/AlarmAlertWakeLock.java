@@ -17,43 +17,249 @@
 package com.embeddedlog.LightUpDroid;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PowerManager;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import java.util.HashMap;
 
 /**
  * Utility class to hold wake lock in app.
+ *
+ * Every wake lock is tagged with its {@link Caller}, which sets the time it is expected to be
+ * held within and the timeout after which it is released even if the caller never releases
+ * it. The hold times of each caller are kept as a histogram in the shared preferences, together
+ * with the number of locks held past their budget and released by their timeout, and shown in
+ * the diagnostics screen of {@link BootTraceActivity}.
  */
 public class AlarmAlertWakeLock {
 
-    private static PowerManager.WakeLock sCpuWakeLock;
+    /**
+     * Holder of wake locks, with the time its locks are expected to be held within and the
+     * timeout after which they are released anyway.
+     */
+    public static final class Caller {
+        public final String name;
+        public final long budgetMillis;
+        public final long timeoutMillis;
+
+        private Caller(String name, long budgetMillis, long timeoutMillis) {
+            this.name = name;
+            this.budgetMillis = budgetMillis;
+            this.timeoutMillis = timeoutMillis;
+        }
+    }
+
+    public static final Caller ALARM_STATE_MANAGER = new Caller("AlarmStateManager",
+            10 * DateUtils.SECOND_IN_MILLIS, DateUtils.MINUTE_IN_MILLIS);
+    public static final Caller ALARM_INIT_RECEIVER = new Caller("AlarmInitReceiver",
+            10 * DateUtils.SECOND_IN_MILLIS, DateUtils.MINUTE_IN_MILLIS);
+    // Ringing alarms are silenced after 30 minutes at most, unless auto silence is off
+    public static final Caller ALARM_SERVICE = new Caller("AlarmService",
+            35 * DateUtils.MINUTE_IN_MILLIS, 2 * DateUtils.HOUR_IN_MILLIS);
+    public static final Caller TIMER_RING_SERVICE = new Caller("TimerRingService",
+            35 * DateUtils.MINUTE_IN_MILLIS, 2 * DateUtils.HOUR_IN_MILLIS);
+    private static final Caller[] CALLERS = {
+            ALARM_STATE_MANAGER, ALARM_INIT_RECEIVER, ALARM_SERVICE, TIMER_RING_SERVICE
+    };
+
+    // Upper bounds of the hold time histogram buckets, the last bucket has no bound
+    private static final long[] BUCKET_LIMITS = {
+            100, DateUtils.SECOND_IN_MILLIS, 10 * DateUtils.SECOND_IN_MILLIS,
+            DateUtils.MINUTE_IN_MILLIS, 10 * DateUtils.MINUTE_IN_MILLIS
+    };
+    private static final String[] BUCKET_NAMES = {
+            "<100ms", "<1s", "<10s", "<1min", "<10min", ">=10min"
+    };
+    // Stored after the buckets of each caller
+    private static final int STAT_OVER_BUDGET = BUCKET_NAMES.length;
+    private static final int STAT_TIMED_OUT = STAT_OVER_BUDGET + 1;
+    private static final int STAT_MAX_HELD = STAT_TIMED_OUT + 1;
+    private static final int STAT_COUNT = STAT_MAX_HELD + 1;
+
+    private static final String PREFS_NAME = "wake_locks";
+    private static final Object sStatsLock = new Object();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // CPU wake lock held by each caller, so overlapping callers do not release each other's
+    private static final HashMap<Caller, TrackedWakeLock> sCpuWakeLocks =
+            new HashMap<Caller, TrackedWakeLock>();
+
+    /**
+     * Wake lock that times how long it is held for its caller, and reports it when it is held
+     * past the budget of the caller. It is not reference counted.
+     */
+    public static class TrackedWakeLock {
+        private final Context mContext;
+        private final PowerManager.WakeLock mWakeLock;
+        private final Caller mCaller;
+        // Time the lock was acquired at, or 0 if it is not held
+        private long mAcquiredAt;
 
-    public static PowerManager.WakeLock createPartialWakeLock(Context context) {
+        private final Runnable mBudgetCheck = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (TrackedWakeLock.this) {
+                    if (mAcquiredAt == 0) {
+                        return;
+                    }
+                }
+                Log.w("Wake lock of " + mCaller.name + " held past its budget of "
+                        + mCaller.budgetMillis + " ms");
+                recordStat(mContext, mCaller, STAT_OVER_BUDGET);
+            }
+        };
+
+        private TrackedWakeLock(Context context, PowerManager.WakeLock wakeLock, Caller caller) {
+            mContext = context.getApplicationContext();
+            mWakeLock = wakeLock;
+            mWakeLock.setReferenceCounted(false);
+            mCaller = caller;
+        }
+
+        public synchronized void acquire() {
+            if (mAcquiredAt != 0) {
+                return;
+            }
+            mWakeLock.acquire(mCaller.timeoutMillis);
+            mAcquiredAt = SystemClock.elapsedRealtime();
+            sHandler.postDelayed(mBudgetCheck, mCaller.budgetMillis);
+        }
+
+        public synchronized void release() {
+            if (mAcquiredAt == 0) {
+                return;
+            }
+            sHandler.removeCallbacks(mBudgetCheck);
+            final long held = SystemClock.elapsedRealtime() - mAcquiredAt;
+            mAcquiredAt = 0;
+            if (mWakeLock.isHeld()) {
+                mWakeLock.release();
+            } else {
+                Log.w("Wake lock of " + mCaller.name + " was released by its timeout of "
+                        + mCaller.timeoutMillis + " ms");
+                recordStat(mContext, mCaller, STAT_TIMED_OUT);
+            }
+            recordHoldTime(mContext, mCaller, held);
+        }
+    }
+
+    public static TrackedWakeLock createPartialWakeLock(Context context, Caller caller) {
         PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        return pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, Log.LOGTAG);
+        return new TrackedWakeLock(context,
+                pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, Log.LOGTAG), caller);
     }
 
-    public static void acquireCpuWakeLock(Context context) {
-        if (sCpuWakeLock != null) {
+    public static synchronized void acquireCpuWakeLock(Context context, Caller caller) {
+        if (sCpuWakeLocks.containsKey(caller)) {
             return;
         }
 
-        sCpuWakeLock = createPartialWakeLock(context);
-        sCpuWakeLock.acquire();
+        final TrackedWakeLock wakeLock = createPartialWakeLock(context, caller);
+        wakeLock.acquire();
+        sCpuWakeLocks.put(caller, wakeLock);
     }
 
-    public static void acquireScreenCpuWakeLock(Context context) {
-        if (sCpuWakeLock != null) {
+    public static synchronized void acquireScreenCpuWakeLock(Context context, Caller caller) {
+        if (sCpuWakeLocks.containsKey(caller)) {
             return;
         }
         PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        sCpuWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK
-                | PowerManager.ACQUIRE_CAUSES_WAKEUP | PowerManager.ON_AFTER_RELEASE, Log.LOGTAG);
-        sCpuWakeLock.acquire();
+        final TrackedWakeLock wakeLock = new TrackedWakeLock(context,
+                pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP
+                        | PowerManager.ON_AFTER_RELEASE, Log.LOGTAG), caller);
+        wakeLock.acquire();
+        sCpuWakeLocks.put(caller, wakeLock);
+    }
+
+    /**
+     * Releases the CPU wake lock of the caller, leaving the ones of other callers held.
+     */
+    public static synchronized void releaseCpuLock(Caller caller) {
+        final TrackedWakeLock wakeLock = sCpuWakeLocks.remove(caller);
+        if (wakeLock != null) {
+            wakeLock.release();
+        }
+    }
+
+    private static void recordHoldTime(Context context, Caller caller, long held) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && held >= BUCKET_LIMITS[bucket]) {
+            bucket++;
+        }
+        synchronized (sStatsLock) {
+            final long[] stats = readStats(context, caller);
+            stats[bucket]++;
+            stats[STAT_MAX_HELD] = Math.max(stats[STAT_MAX_HELD], held);
+            writeStats(context, caller, stats);
+        }
+    }
+
+    private static void recordStat(Context context, Caller caller, int stat) {
+        synchronized (sStatsLock) {
+            final long[] stats = readStats(context, caller);
+            stats[stat]++;
+            writeStats(context, caller, stats);
+        }
+    }
+
+    private static long[] readStats(Context context, Caller caller) {
+        final long[] stats = new long[STAT_COUNT];
+        final String stored = getPrefs(context).getString(caller.name, null);
+        if (stored != null) {
+            final String[] values = stored.split(",");
+            for (int i = 0; i < values.length && i < STAT_COUNT; i++) {
+                stats[i] = Long.parseLong(values[i]);
+            }
+        }
+        return stats;
+    }
+
+    private static void writeStats(Context context, Caller caller, long[] stats) {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < STAT_COUNT; i++) {
+            if (i > 0) {
+                value.append(',');
+            }
+            value.append(stats[i]);
+        }
+        getPrefs(context).edit().putString(caller.name, value.toString()).apply();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the hold time histogram of each caller, and how many of its locks were held past
+     *         their budget or released by their timeout, one caller per line.
+     */
+    public static String getReport(Context context) {
+        final StringBuilder report = new StringBuilder();
+        synchronized (sStatsLock) {
+            for (Caller caller : CALLERS) {
+                final long[] stats = readStats(context, caller);
+                if (report.length() > 0) {
+                    report.append('\n');
+                }
+                report.append(caller.name).append(':');
+                for (int i = 0; i < BUCKET_NAMES.length; i++) {
+                    report.append(' ').append(BUCKET_NAMES[i]).append(' ').append(stats[i]);
+                }
+                report.append(", over budget ").append(stats[STAT_OVER_BUDGET])
+                        .append(", timed out ").append(stats[STAT_TIMED_OUT])
+                        .append(", max ").append(stats[STAT_MAX_HELD]).append(" ms");
+            }
+        }
+        return report.toString();
     }
 
-    public static void releaseCpuLock() {
-        if (sCpuWakeLock != null) {
-            sCpuWakeLock.release();
-            sCpuWakeLock = null;
+    public static void clearStats(Context context) {
+        synchronized (sStatsLock) {
+            getPrefs(context).edit().clear().apply();
         }
     }
 }
@@ -21,28 +21,41 @@ import android.animation.Animator.AnimatorListener;
 import android.animation.AnimatorInflater;
 import android.animation.ValueAnimator;
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.app.Fragment;
 import android.app.FragmentTransaction;
 import android.app.LoaderManager;
+import android.content.ActivityNotFoundException;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.content.OperationApplicationException;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
-import android.database.DataSetObserver;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Environment;
+import android.os.RemoteException;
 import android.os.Vibrator;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.format.DateFormat;
+import android.util.LongSparseArray;
+import android.view.ActionMode;
 import android.view.Gravity;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -53,12 +66,10 @@ import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.widget.CheckBox;
 import android.widget.CompoundButton;
-import android.widget.CursorAdapter;
 import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
-import android.widget.ListView;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -66,17 +77,26 @@ import android.widget.ToggleButton;
 
 import com.android.datetimepicker.time.RadialPickerLayout;
 import com.android.datetimepicker.time.TimePickerDialog;
+import com.embeddedlog.LightUpDroid.alarms.AlarmAnalyzer;
+import com.embeddedlog.LightUpDroid.alarms.AlarmBackup;
 import com.embeddedlog.LightUpDroid.alarms.AlarmStateManager;
 import com.embeddedlog.LightUpDroid.provider.Alarm;
 import com.embeddedlog.LightUpDroid.provider.AlarmInstance;
+import com.embeddedlog.LightUpDroid.provider.AlarmListLoader.AlarmListCursor;
+import com.embeddedlog.LightUpDroid.provider.ClockContract;
 import com.embeddedlog.LightUpDroid.provider.DaysOfWeek;
 import com.embeddedlog.LightUpDroid.widget.ActionableToastBar;
 import com.embeddedlog.LightUpDroid.widget.TextTime;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.DateFormatSymbols;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 /**
  * AlarmClock application.
@@ -90,7 +110,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
     private static final int ANIMATION_DURATION = 300;
     private static final String KEY_EXPANDED_IDS = "expandedIds";
     private static final String KEY_REPEAT_CHECKED_IDS = "repeatCheckedIds";
-    private static final String KEY_RINGTONE_TITLE_CACHE = "ringtoneTitleCache";
     private static final String KEY_SELECTED_ALARMS = "selectedAlarms";
     private static final String KEY_DELETED_ALARM = "deletedAlarm";
     private static final String KEY_UNDO_SHOWING = "undoShowing";
@@ -99,6 +118,14 @@ public class AlarmClockFragment extends DeskClockFragment implements
     private static final String KEY_DELETE_CONFIRMATION = "deleteConfirmation";
 
     private static final int REQUEST_CODE_RINGTONE = 1;
+    private static final int REQUEST_CODE_BULK_RINGTONE = 2;
+    private static final int REQUEST_CODE_IMPORT_ALARMS = 3;
+    // File the alarms are exported to, in the public downloads directory
+    private static final String EXPORT_FILE_NAME = "LightUpDroid-alarms.json";
+    // Minutes the selected alarms can be shifted by
+    private static final int[] BULK_SHIFT_MINUTES = {-60, -30, -15, -5, 5, 15, 30, 60};
+    // Alarms ringing at most this many minutes apart on the same day are reported as close
+    private static final int ALARM_CHECK_WINDOW_MINUTES = 15;
 
     // This extra is used when receiving an intent to create an alarm, but no alarm details
     // have been passed in, so the alarm page should start the process of creating a new alarm.
@@ -108,7 +135,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
     // can not be found, and toast message will pop up that the alarm has be deleted.
     public static final String SCROLL_TO_ALARM_INTENT_EXTRA = "LightUpDroid.scroll.to.alarm";
 
-    private ListView mAlarmsList;
+    private RecyclerView mAlarmsList;
     private AlarmItemAdapter mAdapter;
     private View mEmptyView;
     private ImageView mAddAlarmButton;
@@ -117,18 +144,18 @@ public class AlarmClockFragment extends DeskClockFragment implements
     private AlarmTimelineView mTimelineView;
     private View mFooterView;
 
-    private Bundle mRingtoneTitleCache; // Key: ringtone uri, value: ringtone title
     private ActionableToastBar mUndoBar;
     private View mUndoFrame;
 
     private Alarm mSelectedAlarm;
+    // Shown while alarms are selected for bulk edits
+    private ActionMode mActionMode;
     private long mScrollToAlarmId = -1;
 
     private Loader mCursorLoader = null;
 
     // Saved states for undo
     private Alarm mDeletedAlarm;
-    private Alarm mAddedAlarm;
     private boolean mUndoShowing = false;
 
     private Animator mFadeIn;
@@ -140,9 +167,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
     private int mTimelineViewWidth;
     private int mUndoBarInitialMargin;
 
-    // Cached layout positions of items in listview prior to add/removal of alarm item
-    private ConcurrentHashMap<Long, Integer> mItemIdTopMap = new ConcurrentHashMap<Long, Integer>();
-
     public AlarmClockFragment() {
         // Basic provider required by Fragment.java
     }
@@ -166,7 +190,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
         if (savedState != null) {
             expandedIds = savedState.getLongArray(KEY_EXPANDED_IDS);
             repeatCheckedIds = savedState.getLongArray(KEY_REPEAT_CHECKED_IDS);
-            mRingtoneTitleCache = savedState.getBundle(KEY_RINGTONE_TITLE_CACHE);
             mDeletedAlarm = savedState.getParcelable(KEY_DELETED_ALARM);
             mUndoShowing = savedState.getBoolean(KEY_UNDO_SHOWING);
             selectedAlarms = savedState.getLongArray(KEY_SELECTED_ALARMS);
@@ -214,7 +237,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
                 startCreatingAlarm();
             }
         });
-        mAlarmsList = (ListView) v.findViewById(R.id.alarms_list);
+        mAlarmsList = (RecyclerView) v.findViewById(R.id.alarms_list);
 
         mFadeIn = AnimatorInflater.loadAnimator(getActivity(), R.anim.fade_in);
         mFadeIn.setDuration(ANIMATION_DURATION);
@@ -287,14 +310,24 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
         mAdapter = new AlarmItemAdapter(getActivity(),
                 expandedIds, repeatCheckedIds, selectedAlarms, previousDayMap, mAlarmsList);
-        mAdapter.registerDataSetObserver(new DataSetObserver() {
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
 
             private int prevAdapterCount = -1;
 
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                onChanged();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                onChanged();
+            }
+
             @Override
             public void onChanged() {
 
-                final int count = mAdapter.getCount();
+                final int count = mAdapter.getItemCount();
                 if (mDeletedAlarm != null && prevAdapterCount > count) {
                     showUndoBar();
                 }
@@ -418,14 +451,21 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
                 // Cache this adapter's count for when the adapter changes.
                 prevAdapterCount = count;
-                super.onChanged();
             }
         });
 
-        if (mRingtoneTitleCache == null) {
-            mRingtoneTitleCache = new Bundle();
+        mAlarmsList.setLayoutManager(new LinearLayoutManager(getActivity()));
+        final int itemSpacing = getResources().getDimensionPixelSize(
+                R.dimen.alarm_list_item_spacing);
+        if (itemSpacing > 0) {
+            mAlarmsList.addItemDecoration(new RecyclerView.ItemDecoration() {
+                @Override
+                public void getItemOffsets(Rect outRect, View view, RecyclerView parent,
+                        RecyclerView.State state) {
+                    outRect.set(0, 0, 0, itemSpacing);
+                }
+            });
         }
-
         mAlarmsList.setAdapter(mAdapter);
         mAlarmsList.setVerticalScrollBarEnabled(true);
         mAlarmsList.setOnCreateContextMenuListener(this);
@@ -447,6 +487,12 @@ public class AlarmClockFragment extends DeskClockFragment implements
     @Override
     public void onResume() {
         super.onResume();
+        // Titles looked up while paused are shown once the listener is back
+        RingtoneTitleResolver.getInstance(getActivity()).addListener(mRingtoneTitlesListener);
+        mAdapter.updateRingtoneTitles();
+        // Brings back the action mode of a selection restored from the saved state
+        updateActionMode();
+
         // Check if another app asked us to create a blank new alarm.
         final Intent intent = getActivity().getIntent();
         if (intent.hasExtra(ALARM_CREATE_NEW_INTENT_EXTRA)) {
@@ -518,7 +564,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
         outState.putLongArray(KEY_EXPANDED_IDS, mAdapter.getExpandedArray());
         outState.putLongArray(KEY_REPEAT_CHECKED_IDS, mAdapter.getRepeatArray());
         outState.putLongArray(KEY_SELECTED_ALARMS, mAdapter.getSelectedAlarmsArray());
-        outState.putBundle(KEY_RINGTONE_TITLE_CACHE, mRingtoneTitleCache);
         outState.putParcelable(KEY_DELETED_ALARM, mDeletedAlarm);
         outState.putBoolean(KEY_UNDO_SHOWING, mUndoShowing);
         outState.putBundle(KEY_PREVIOUS_DAY_MAP, mAdapter.getPreviousDaysOfWeekMap());
@@ -534,6 +579,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
     @Override
     public void onPause() {
         super.onPause();
+        RingtoneTitleResolver.getInstance(getActivity()).removeListener(mRingtoneTitlesListener);
         // When the user places the app in the background by pressing "home",
         // dismiss the toast bar. However, since there is no way to determine if
         // home was pressed, just dismiss any existing toast bar when restarting
@@ -562,7 +608,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
             mSelectedAlarm.minutes = minute;
             mSelectedAlarm.enabled = true;
             mScrollToAlarmId = mSelectedAlarm.id;
-            asyncUpdateAlarm(mSelectedAlarm, true);
+            asyncUpdateAlarmSummary(mSelectedAlarm, true);
             mSelectedAlarm = null;
         }
     }
@@ -583,7 +629,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
     public void setLabel(Alarm alarm, String label) {
         alarm.label = label;
-        asyncUpdateAlarm(alarm, false);
+        asyncUpdateAlarmSummary(alarm, false);
     }
 
     @Override
@@ -593,7 +639,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
     @Override
     public void onLoadFinished(Loader<Cursor> cursorLoader, final Cursor data) {
-        mAdapter.swapCursor(data);
+        mAdapter.swapCursor((AlarmListCursor) data);
         if (mScrollToAlarmId != Alarm.INVALID_ID) {
             scrollToAlarm(mScrollToAlarmId);
             mScrollToAlarmId = Alarm.INVALID_ID;
@@ -607,7 +653,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
      */
     private void scrollToAlarm(long alarmId) {
         int alarmPosition = -1;
-        for (int i = 0; i < mAdapter.getCount(); i++) {
+        for (int i = 0; i < mAdapter.getItemCount(); i++) {
             long id = mAdapter.getItemId(i);
             if (id == alarmId) {
                 alarmPosition = i;
@@ -617,7 +663,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
         if (alarmPosition >= 0) {
             mAdapter.setNewAlarm(alarmId);
-            mAlarmsList.smoothScrollToPositionFromTop(alarmPosition, 0);
+            mAlarmsList.smoothScrollToPosition(alarmPosition);
         } else {
             // Trying to display a deleted alarm should only happen from a missed notification for
             // an alarm that has been marked deleted after use.
@@ -650,6 +696,8 @@ public class AlarmClockFragment extends DeskClockFragment implements
             uri = Alarm.NO_RINGTONE_URI;
         }
         mSelectedAlarm.alert = uri;
+        // Look up the title again in case the picked ringtone has changed since it was cached
+        RingtoneTitleResolver.getInstance(getActivity()).invalidate(uri);
 
         // Save the last selected ringtone as the default for new alarms
         if (!Alarm.NO_RINGTONE_URI.equals(uri)) {
@@ -666,13 +714,27 @@ public class AlarmClockFragment extends DeskClockFragment implements
                 case REQUEST_CODE_RINGTONE:
                     saveRingtoneUri(data);
                     break;
+                case REQUEST_CODE_BULK_RINGTONE:
+                    saveBulkRingtoneUri(data);
+                    break;
+                case REQUEST_CODE_IMPORT_ALARMS:
+                    asyncImportAlarms(data.getData());
+                    break;
                 default:
                     Log.w("Unhandled request code in onActivityResult: " + requestCode);
             }
         }
     }
 
-    public class AlarmItemAdapter extends CursorAdapter {
+    private final RingtoneTitleResolver.OnTitlesResolvedListener mRingtoneTitlesListener =
+            new RingtoneTitleResolver.OnTitlesResolvedListener() {
+                @Override
+                public void onTitlesResolved() {
+                    mAdapter.updateRingtoneTitles();
+                }
+            };
+
+    public class AlarmItemAdapter extends RecyclerView.Adapter<AlarmItemAdapter.ItemHolder> {
         private static final int EXPAND_DURATION = 300;
         private static final int COLLAPSE_DURATION = 250;
 
@@ -686,7 +748,15 @@ public class AlarmClockFragment extends DeskClockFragment implements
         private final int mBackgroundColor;
         private final Typeface mRobotoNormal;
         private final Typeface mRobotoBold;
-        private final ListView mList;
+        private final RecyclerView mList;
+        private final RingtoneTitleResolver mRingtoneTitleResolver;
+        // Scratch buffer for reading the string columns of the alarms
+        private final CharArrayBuffer mStringBuffer = new CharArrayBuffer(64);
+        private AlarmListCursor mCursor;
+        // The list only loads the summary of each alarm. The rest of the alarms expanded so
+        // far is kept here by id, until the alarm changes again.
+        private final LongSparseArray<Alarm> mDetails = new LongSparseArray<Alarm>();
+        private final HashSet<Long> mLoadingDetails = new HashSet<Long>();
 
         private final HashSet<Long> mExpanded = new HashSet<Long>();
         private final HashSet<Long> mRepeatChecked = new HashSet<Long>();
@@ -707,7 +777,7 @@ public class AlarmClockFragment extends DeskClockFragment implements
                 Calendar.SATURDAY,
         };
 
-        public class ItemHolder {
+        public class ItemHolder extends RecyclerView.ViewHolder {
 
             // views for optimization
             LinearLayout alarmItem;
@@ -728,10 +798,23 @@ public class AlarmClockFragment extends DeskClockFragment implements
             View hairLine;
             View arrow;
             View collapseExpandArea;
-            View footerFiller;
+
+            // Listener kept to be set again after the switch is updated
+            CompoundButton.OnCheckedChangeListener onOffListener;
 
             // Other states
             Alarm alarm;
+            // Whether the alarm has the fields not shown in the summary, see mDetails
+            boolean detailsLoaded;
+            // Values the summary views were last bound to
+            int boundDaysOfWeek = -1;
+            String boundLabel;
+            boolean labelBound;
+            String boundRingtone;
+
+            ItemHolder(View itemView) {
+                super(itemView);
+            }
         }
 
         // Used for scrolling an expanded item in the list to make sure it is fully visible.
@@ -751,11 +834,11 @@ public class AlarmClockFragment extends DeskClockFragment implements
         };
 
         public AlarmItemAdapter(Context context, long[] expandedIds, long[] repeatCheckedIds,
-                long[] selectedAlarms, Bundle previousDaysOfWeekMap, ListView list) {
-            super(context, null, 0);
+                long[] selectedAlarms, Bundle previousDaysOfWeekMap, RecyclerView list) {
             mContext = context;
             mFactory = LayoutInflater.from(context);
             mList = list;
+            mRingtoneTitleResolver = RingtoneTitleResolver.getInstance(context);
 
             DateFormatSymbols dfs = new DateFormatSymbols();
             mShortWeekDayStrings = dfs.getShortWeekdays();
@@ -787,218 +870,81 @@ public class AlarmClockFragment extends DeskClockFragment implements
                     .hasVibrator();
 
             mCollapseExpandHeight = (int) res.getDimension(R.dimen.collapse_expand_height);
+            setHasStableIds(true);
         }
 
         public void removeSelectedId(int id) {
             mSelectedAlarms.remove(id);
         }
 
-        @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            if (!getCursor().moveToPosition(position)) {
-                // May happen if the last alarm was deleted and the cursor refreshed while the
-                // list is updated.
-                Log.v("couldn't move cursor to position " + position);
-                return null;
+        /**
+         * Shows the new list of alarms. When the loader worked out the changes from the list
+         * shown so far, only the alarms that were added, removed, moved or edited are notified,
+         * and the item animations come from those changes.
+         */
+        public void swapCursor(AlarmListCursor cursor) {
+            if (cursor == mCursor) {
+                return;
             }
-            View v;
-            if (convertView == null) {
-                v = newView(mContext, getCursor(), parent);
-            } else {
-                // TODO temporary hack to prevent the convertView from not having stuff we need.
-                boolean badConvertView = convertView.findViewById(R.id.digital_clock) == null;
-                // Do a translation check to test for animation. Change this to something more
-                // reliable and robust in the future.
-                if (convertView.getTranslationX() != 0 || convertView.getTranslationY() != 0 ||
-                        badConvertView) {
-                    // view was animated, reset
-                    v = newView(mContext, getCursor(), parent);
-                } else {
-                    v = convertView;
+            final AlarmListCursor previous = mCursor;
+            mCursor = cursor;
+            if (cursor == null || !cursor.isChangedFrom(previous)) {
+                mDetails.clear();
+                notifyDataSetChanged();
+                return;
+            }
+            for (int i = 0; i < cursor.getChangeCount(); i++) {
+                final int position = cursor.getChangePosition(i);
+                switch (cursor.getChangeType(i)) {
+                    case AlarmListCursor.CHANGE_INSERT:
+                        notifyItemInserted(position);
+                        break;
+                    case AlarmListCursor.CHANGE_REMOVE:
+                        notifyItemRemoved(position);
+                        break;
+                    case AlarmListCursor.CHANGE_MOVE:
+                        notifyItemMoved(position, cursor.getChangeToPosition(i));
+                        break;
+                    case AlarmListCursor.CHANGE_UPDATE:
+                        // Updates come after the moves and inserts before them, so the
+                        // position is the final one
+                        mDetails.remove(cursor.getId(position));
+                        notifyItemChanged(position);
+                        break;
                 }
             }
-            bindView(v, mContext, getCursor());
-            ItemHolder holder = (ItemHolder) v.getTag();
-
-            // We need the footer for the last element of the array to allow the user to scroll
-            // the item beyond the bottom button bar, which obscures the view.
-            holder.footerFiller.setVisibility(position < getCount() - 1 ? View.GONE : View.VISIBLE);
-            return v;
         }
 
         @Override
-        public View newView(Context context, Cursor cursor, ViewGroup parent) {
-            final View view = mFactory.inflate(R.layout.alarm_time, parent, false);
-            setNewHolder(view);
-            return view;
+        public int getItemCount() {
+            return mCursor == null ? 0 : mCursor.getCount();
         }
 
-        /**
-         * In addition to changing the data set for the alarm list, swapCursor is now also
-         * responsible for preparing the list view's pre-draw operation for any animations that
-         * need to occur if an alarm was removed or added.
-         */
         @Override
-        public synchronized Cursor swapCursor(Cursor cursor) {
-            Cursor c = super.swapCursor(cursor);
-
-            if (mItemIdTopMap.isEmpty() && mAddedAlarm == null) {
-                return c;
-            }
-
-            final ListView list = mAlarmsList;
-            final ViewTreeObserver observer = list.getViewTreeObserver();
-
-            /*
-             * Add a pre-draw listener to the observer to prepare for any possible animations to
-             * the alarms within the list view.  The animations will occur if an alarm has been
-             * removed or added.
-             *
-             * For alarm removal, the remaining children should all retain their initial starting
-             * positions, and transition to their new positions.
-             *
-             * For alarm addition, the other children should all retain their initial starting
-             * positions, transition to their new positions, and at the end of that transition, the
-             * newly added alarm should appear in the designated space.
-             */
-            observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-
-                private View mAddedView;
-
-                @Override
-                public boolean onPreDraw() {
-                    // Remove the pre-draw listener, as this only needs to occur once.
-                    if (observer.isAlive()) {
-                        observer.removeOnPreDrawListener(this);
-                    }
-                    boolean firstAnimation = true;
-                    int firstVisiblePosition = list.getFirstVisiblePosition();
-
-                    // Iterate through the children to prepare the add/remove animation.
-                    for (int i = 0; i< list.getChildCount(); i++) {
-                        final View child = list.getChildAt(i);
-
-                        int position = firstVisiblePosition + i;
-                        long itemId = mAdapter.getItemId(position);
-
-                        // If this is the added alarm, set it invisible for now, and animate later.
-                        if (mAddedAlarm != null && itemId == mAddedAlarm.id) {
-                            mAddedView = child;
-                            mAddedView.setAlpha(0.0f);
-                            continue;
-                        }
-
-                        // The cached starting position of the child view.
-                        Integer startTop = mItemIdTopMap.get(itemId);
-                        // The new starting position of the child view.
-                        int top = child.getTop();
-
-                        // If there is no cached starting position, determine whether the item has
-                        // come from the top of bottom of the list view.
-                        if (startTop == null) {
-                            int childHeight = child.getHeight() + list.getDividerHeight();
-                            startTop = top + (i > 0 ? childHeight : -childHeight);
-                        }
-
-                        Log.d("Start Top: " + startTop + ", Top: " + top);
-                        // If the starting position of the child view is different from the
-                        // current position, animate the child.
-                        if (startTop != top) {
-                            int delta = startTop - top;
-                            child.setTranslationY(delta);
-                            child.animate().setDuration(ANIMATION_DURATION).translationY(0);
-                            final View addedView = mAddedView;
-                            if (firstAnimation) {
-
-                                // If this is the first child being animated, then after the
-                                // animation is complete, and animate in the added alarm (if one
-                                // exists).
-                                try {
-                                    child.animate().withEndAction(new Runnable() {
-
-                                        @Override
-                                        public void run() {
-                                            // If there was an added view, animate it in after
-                                            // the other views have animated.
-                                            if (addedView != null) {
-                                                addedView.animate().alpha(1.0f)
-                                                    .setDuration(ANIMATION_DURATION)
-                                                    .withEndAction(new Runnable() {
-
-                                                        @Override
-                                                        public void run() {
-                                                            // Re-enable the list after the add
-                                                            // animation is complete.
-                                                            list.setEnabled(true);
-                                                        }
-
-                                                    });
-                                            } else {
-                                                // Re-enable the list after animations are complete.
-                                                list.setEnabled(true);
-                                            }
-                                        }
-
-                                    });
-                                } catch (Throwable e) {
-                                    // If there was an added view, animate it in after
-                                    // the other views have animated.
-                                    if (addedView != null) {
-                                        addedView.animate().alpha(1.0f)
-                                                .setDuration(ANIMATION_DURATION)
-                                                .withEndAction(new Runnable() {
-
-                                                    @Override
-                                                    public void run() {
-                                                        // Re-enable the list after the add
-                                                        // animation is complete.
-                                                        list.setEnabled(true);
-                                                    }
-
-                                                });
-                                    } else {
-                                        // Re-enable the list after animations are complete.
-                                        list.setEnabled(true);
-                                    }
-                                }
-
-                                firstAnimation = false;
-                            }
-                        }
-                    }
+        public long getItemId(int position) {
+            return mCursor.getId(position);
+        }
 
-                    // If there were no child views (outside of a possible added view)
-                    // that require animation...
-                    if (firstAnimation) {
-                        if (mAddedView != null) {
-                            // If there is an added view, prepare animation for the added view.
-                            Log.d("Animating added view...");
-                            mAddedView.animate().alpha(1.0f)
-                                .setDuration(ANIMATION_DURATION)
-                                .withEndAction(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        // Re-enable the list after animations are complete.
-                                        list.setEnabled(true);
-                                    }
-                                });
-                        } else {
-                            // Re-enable the list after animations are complete.
-                            list.setEnabled(true);
-                        }
-                    }
+        @Override
+        public ItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            final View view = mFactory.inflate(R.layout.alarm_time, parent, false);
+            return setNewHolder(view);
+        }
 
-                    mAddedAlarm = null;
-                    mItemIdTopMap.clear();
-                    return true;
-                }
-            });
-            return c;
+        @Override
+        public void onBindViewHolder(ItemHolder holder, int position) {
+            if (!mCursor.moveToPosition(position)) {
+                // May happen if the last alarm was deleted and the cursor refreshed while the
+                // list is updated.
+                Log.v("couldn't move cursor to position " + position);
+                return;
+            }
+            bindView(holder, mCursor);
         }
 
-        private void setNewHolder(View view) {
+        private ItemHolder setNewHolder(View view) {
             // standard view holder optimization
-            final ItemHolder holder = new ItemHolder();
+            final ItemHolder holder = new ItemHolder(view);
             holder.alarmItem = (LinearLayout) view.findViewById(R.id.alarm_item);
             holder.clock = (TextTime) view.findViewById(R.id.digital_clock);
             holder.onoff = (Switch) view.findViewById(R.id.onoff);
@@ -1014,14 +960,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
             holder.clickableLabel = (TextView) view.findViewById(R.id.edit_label);
             holder.repeatDays = (LinearLayout) view.findViewById(R.id.repeat_days);
             holder.collapseExpandArea = view.findViewById(R.id.collapse_expand);
-            holder.footerFiller = view.findViewById(R.id.alarm_footer_filler);
-            holder.footerFiller.setOnClickListener(new OnClickListener() {
-
-                @Override
-                public void onClick(View v) {
-                    // Do nothing.
-                }
-            });
 
             // Build button for each day.
             for (int i = 0; i < 7; i++) {
@@ -1040,173 +978,100 @@ public class AlarmClockFragment extends DeskClockFragment implements
             holder.vibrate = (CheckBox) view.findViewById(R.id.vibrate_onoff);
             holder.ringtone = (TextView) view.findViewById(R.id.choose_ringtone);
 
+            holder.clock.setFormat(
+                    (int) mContext.getResources().getDimension(R.dimen.alarm_label_size));
+            holder.clock.setClickable(true);
+            holder.alarm = new Alarm();
+            setHolderListeners(holder);
+
             view.setTag(holder);
+            return holder;
         }
 
-        @Override
-        public void bindView(final View view, Context context, final Cursor cursor) {
-            final Alarm alarm = new Alarm(cursor);
-            Object tag = view.getTag();
-            if (tag == null) {
-                // The view was converted but somehow lost its tag.
-                setNewHolder(view);
-            }
-            final ItemHolder itemHolder = (ItemHolder) tag;
-            itemHolder.alarm = alarm;
-
-            // We must unset the listener first because this maybe a recycled view so changing the
-            // state would affect the wrong alarm.
-            itemHolder.onoff.setOnCheckedChangeListener(null);
-            itemHolder.onoff.setChecked(alarm.enabled);
-
-            if (mSelectedAlarms.contains(itemHolder.alarm.id)) {
-                itemHolder.alarmItem.setBackgroundColor(mBackgroundColorExpanded);
-                setItemAlpha(itemHolder, true);
-                itemHolder.onoff.setEnabled(false);
-            } else {
-                itemHolder.onoff.setEnabled(true);
-                itemHolder.alarmItem.setBackgroundResource(mBackgroundColor);
-                setItemAlpha(itemHolder, itemHolder.onoff.isChecked());
-            }
-            itemHolder.clock.setFormat(
-                    (int)mContext.getResources().getDimension(R.dimen.alarm_label_size));
-            itemHolder.clock.setTime(alarm.hour, alarm.minutes);
-            itemHolder.clock.setClickable(true);
-            itemHolder.clock.setOnClickListener(new View.OnClickListener() {
+        /**
+         * Sets the listeners of a new row once. They act on the alarm the row is bound to when
+         * they are called, and hand copies of it to anything that outlives the binding.
+         */
+        private void setHolderListeners(final ItemHolder holder) {
+            holder.clock.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
-                    mSelectedAlarm = itemHolder.alarm;
+                    mSelectedAlarm = new Alarm(holder.alarm);
                     AlarmUtils.showTimeEditDialog(getFragmentManager(),
-                            alarm, AlarmClockFragment.this
+                            mSelectedAlarm, AlarmClockFragment.this
                             , DateFormat.is24HourFormat(getActivity()));
-                    expandAlarm(itemHolder, true);
-                    itemHolder.alarmItem.post(mScrollRunnable);
+                    expandAlarm(holder, true);
+                    holder.alarmItem.post(mScrollRunnable);
                 }
             });
 
-            final CompoundButton.OnCheckedChangeListener onOffListener =
-                    new CompoundButton.OnCheckedChangeListener() {
-                        @Override
-                        public void onCheckedChanged(CompoundButton compoundButton,
-                                boolean checked) {
-                            if (checked != alarm.enabled) {
-                                setItemAlpha(itemHolder, checked);
-                                alarm.enabled = checked;
-                                asyncUpdateAlarm(alarm, alarm.enabled);
-                            }
-                        }
-                    };
-
-            itemHolder.onoff.setOnCheckedChangeListener(onOffListener);
-
-            boolean expanded = isAlarmExpanded(alarm);
-            itemHolder.expandArea.setVisibility(expanded? View.VISIBLE : View.GONE);
-            itemHolder.summary.setVisibility(expanded? View.GONE : View.VISIBLE);
-
-            String labelSpace = "";
-            // Set the repeat text or leave it blank if it does not repeat.
-            final String daysOfWeekStr =
-                    alarm.daysOfWeek.toString(AlarmClockFragment.this.getActivity(), false);
-            if (daysOfWeekStr != null && daysOfWeekStr.length() != 0) {
-                itemHolder.daysOfWeek.setText(daysOfWeekStr);
-                itemHolder.daysOfWeek.setContentDescription(alarm.daysOfWeek.toAccessibilityString(
-                        AlarmClockFragment.this.getActivity()));
-                itemHolder.daysOfWeek.setVisibility(View.VISIBLE);
-                itemHolder.daysOfWeek.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View view) {
-                        expandAlarm(itemHolder, true);
-                        itemHolder.alarmItem.post(mScrollRunnable);
+            holder.onOffListener = new CompoundButton.OnCheckedChangeListener() {
+                @Override
+                public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
+                    final Alarm alarm = holder.alarm;
+                    if (checked != alarm.enabled) {
+                        setItemAlpha(holder, checked);
+                        alarm.enabled = checked;
+                        asyncUpdateAlarmSummary(new Alarm(alarm), alarm.enabled);
                     }
-                });
-
-            } else {
-                itemHolder.daysOfWeek.setVisibility(View.GONE);
-            }
+                }
+            };
 
-            if (alarm.label != null && alarm.label.length() != 0) {
-                itemHolder.label.setText(alarm.label + "  ");
-                itemHolder.label.setVisibility(View.VISIBLE);
-                itemHolder.label.setContentDescription(
-                        mContext.getResources().getString(R.string.label_description) + " "
-                        + alarm.label);
-                itemHolder.label.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View view) {
-                        expandAlarm(itemHolder, true);
-                        itemHolder.alarmItem.post(mScrollRunnable);
-                    }
-                });
-            } else {
-                itemHolder.label.setVisibility(View.GONE);
-            }
+            final View.OnClickListener expandListener = new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    expandAlarm(holder, true);
+                    holder.alarmItem.post(mScrollRunnable);
+                }
+            };
+            holder.daysOfWeek.setOnClickListener(expandListener);
+            holder.label.setOnClickListener(expandListener);
 
-            itemHolder.delete.setOnClickListener(new View.OnClickListener() {
+            holder.delete.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    mDeletedAlarm = alarm;
-
-                    try {
-                        view.animate().setDuration(ANIMATION_DURATION).alpha(0).translationY(-1)
-                        .withEndAction(new Runnable() {
-                         @Override
-                            public void run() {
-                                asyncDeleteAlarm(mDeletedAlarm, view);
-                            }
-                        });
-                    } catch (Throwable e) { }
+                    // The row is animated out once the loader reports it as removed
+                    mDeletedAlarm = new Alarm(holder.alarm);
+                    asyncDeleteAlarm(mDeletedAlarm);
                 }
             });
 
-            if (expanded) {
-                expandAlarm(itemHolder, false);
-            } else {
-                collapseAlarm(itemHolder, false);
-            }
-
-            itemHolder.alarmItem.setOnClickListener(new View.OnClickListener() {
+            holder.alarmItem.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
-                    if (isAlarmExpanded(alarm)) {
-                        collapseAlarm(itemHolder, true);
+                    if (mActionMode != null) {
+                        toggleSelected(holder);
+                    } else if (isAlarmExpanded(holder.alarm)) {
+                        collapseAlarm(holder, true);
                     } else {
-                        expandAlarm(itemHolder, true);
+                        expandAlarm(holder, true);
                     }
                 }
             });
-        }
 
-        private void bindExpandArea(final ItemHolder itemHolder, final Alarm alarm) {
-            // Views in here are not bound until the item is expanded.
+            holder.alarmItem.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View view) {
+                    toggleSelected(holder);
+                    return true;
+                }
+            });
 
-            if (alarm.label != null && alarm.label.length() > 0) {
-                itemHolder.clickableLabel.setText(alarm.label);
-                itemHolder.clickableLabel.setTextColor(mColorLit);
-            } else {
-                itemHolder.clickableLabel.setText(R.string.label);
-                itemHolder.clickableLabel.setTextColor(mColorDim);
-            }
-            itemHolder.clickableLabel.setOnClickListener(new View.OnClickListener() {
+            holder.clickableLabel.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
-                    showLabelDialog(alarm);
+                    showLabelDialog(holder.alarm);
                 }
             });
 
-            if (mRepeatChecked.contains(alarm.id) || itemHolder.alarm.daysOfWeek.isRepeating()) {
-                itemHolder.repeat.setChecked(true);
-                itemHolder.repeatDays.setVisibility(View.VISIBLE);
-            } else {
-                itemHolder.repeat.setChecked(false);
-                itemHolder.repeatDays.setVisibility(View.GONE);
-            }
-            itemHolder.repeat.setOnClickListener(new View.OnClickListener() {
+            holder.repeat.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
+                    final Alarm alarm = holder.alarm;
                     final boolean checked = ((CheckBox) view).isChecked();
                     if (checked) {
                         // Show days
-                        itemHolder.repeatDays.setVisibility(View.VISIBLE);
+                        holder.repeatDays.setVisibility(View.VISIBLE);
                         mRepeatChecked.add(alarm.id);
 
                         // Set all previously set days
@@ -1217,10 +1082,10 @@ public class AlarmClockFragment extends DeskClockFragment implements
                         if (!alarm.daysOfWeek.isRepeating()) {
                             alarm.daysOfWeek.setDaysOfWeek(true, DAY_ORDER);
                         }
-                        updateDaysOfWeekButtons(itemHolder, alarm.daysOfWeek);
+                        updateDaysOfWeekButtons(holder, alarm.daysOfWeek);
                     } else {
                         // Hide days
-                        itemHolder.repeatDays.setVisibility(View.GONE);
+                        holder.repeatDays.setVisibility(View.GONE);
                         mRepeatChecked.remove(alarm.id);
 
                         // Remember the set days in case the user wants it back.
@@ -1231,30 +1096,30 @@ public class AlarmClockFragment extends DeskClockFragment implements
                         alarm.daysOfWeek.clearAllDays();
                     }
 
-                    asyncUpdateAlarm(alarm, false);
+                    asyncUpdateAlarmSummary(new Alarm(alarm), false);
                 }
             });
 
-            updateDaysOfWeekButtons(itemHolder, alarm.daysOfWeek);
             for (int i = 0; i < 7; i++) {
                 final int buttonIndex = i;
 
-                itemHolder.dayButtonParents[i].setOnClickListener(new View.OnClickListener() {
+                holder.dayButtonParents[i].setOnClickListener(new View.OnClickListener() {
                     @Override
                     public void onClick(View view) {
-                        itemHolder.dayButtons[buttonIndex].toggle();
-                        final boolean checked = itemHolder.dayButtons[buttonIndex].isChecked();
+                        final Alarm alarm = holder.alarm;
+                        holder.dayButtons[buttonIndex].toggle();
+                        final boolean checked = holder.dayButtons[buttonIndex].isChecked();
                         int day = DAY_ORDER[buttonIndex];
                         alarm.daysOfWeek.setDaysOfWeek(checked, day);
                         if (checked) {
-                            turnOnDayOfWeek(itemHolder, buttonIndex);
+                            turnOnDayOfWeek(holder, buttonIndex);
                         } else {
-                            turnOffDayOfWeek(itemHolder, buttonIndex);
+                            turnOffDayOfWeek(holder, buttonIndex);
 
                             // See if this was the last day, if so, un-check the repeat box.
                             if (!alarm.daysOfWeek.isRepeating()) {
-                                itemHolder.repeatDays.setVisibility(View.GONE);
-                                itemHolder.repeat.setTextColor(mColorDim);
+                                holder.repeatDays.setVisibility(View.GONE);
+                                holder.repeat.setTextColor(mColorDim);
                                 mRepeatChecked.remove(alarm.id);
 
                                 // Set history to no days, so it will be everyday when repeat is
@@ -1263,17 +1128,143 @@ public class AlarmClockFragment extends DeskClockFragment implements
                                         DaysOfWeek.NO_DAYS_SET);
                             }
                         }
-                        asyncUpdateAlarm(alarm, false);
+                        asyncUpdateAlarmSummary(new Alarm(alarm), false);
                     }
                 });
             }
 
+            holder.vibrate.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (!holder.detailsLoaded) {
+                        return;
+                    }
+                    final boolean checked = ((CheckBox) v).isChecked();
+                    if (checked) {
+                        holder.vibrate.setTextColor(mColorLit);
+                    } else {
+                        holder.vibrate.setTextColor(mColorDim);
+                    }
+                    holder.alarm.vibrate = checked;
+                    mDetails.put(holder.alarm.id, new Alarm(holder.alarm));
+                    asyncUpdateAlarm(new Alarm(holder.alarm), false);
+                }
+            });
+
+            holder.ringtone.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    if (holder.detailsLoaded) {
+                        launchRingTonePicker(new Alarm(holder.alarm));
+                    }
+                }
+            });
+        }
+
+        /**
+         * Binds the row to the alarm at the cursor position. The row keeps its listeners and
+         * alarm instance, and only the views whose values have changed are updated, so
+         * rebinding a row to the same alarm does not allocate.
+         */
+        private void bindView(ItemHolder itemHolder, Cursor cursor) {
+            final Alarm alarm = itemHolder.alarm;
+            alarm.readSummaryFrom(cursor, mStringBuffer);
+            final Alarm details = mDetails.get(alarm.id);
+            itemHolder.detailsLoaded = details != null;
+            if (details != null) {
+                alarm.copyDetailsFrom(details);
+            }
+
+            // We must unset the listener first because this maybe a recycled view so changing the
+            // state would affect the wrong alarm.
+            itemHolder.onoff.setOnCheckedChangeListener(null);
+            itemHolder.onoff.setChecked(alarm.enabled);
+
+            if (mSelectedAlarms.contains(alarm.id)) {
+                itemHolder.alarmItem.setBackgroundColor(mBackgroundColorExpanded);
+                setItemAlpha(itemHolder, true);
+                itemHolder.onoff.setEnabled(false);
+            } else {
+                itemHolder.onoff.setEnabled(true);
+                itemHolder.alarmItem.setBackgroundResource(mBackgroundColor);
+                setItemAlpha(itemHolder, itemHolder.onoff.isChecked());
+            }
+            itemHolder.clock.setTime(alarm.hour, alarm.minutes);
+            itemHolder.onoff.setOnCheckedChangeListener(itemHolder.onOffListener);
+
+            boolean expanded = isAlarmExpanded(alarm);
+            itemHolder.expandArea.setVisibility(expanded? View.VISIBLE : View.GONE);
+            itemHolder.summary.setVisibility(expanded? View.GONE : View.VISIBLE);
+
+            // Set the repeat text or leave it blank if it does not repeat.
+            final int daysOfWeekBitSet = alarm.daysOfWeek.getBitSet();
+            if (daysOfWeekBitSet != itemHolder.boundDaysOfWeek) {
+                itemHolder.boundDaysOfWeek = daysOfWeekBitSet;
+                final String daysOfWeekStr = alarm.daysOfWeek.toString(mContext, false);
+                if (daysOfWeekStr.length() != 0) {
+                    itemHolder.daysOfWeek.setText(daysOfWeekStr);
+                    itemHolder.daysOfWeek.setContentDescription(
+                            alarm.daysOfWeek.toAccessibilityString(mContext));
+                    itemHolder.daysOfWeek.setVisibility(View.VISIBLE);
+                } else {
+                    itemHolder.daysOfWeek.setVisibility(View.GONE);
+                }
+            }
+
+            // The alarm keeps the same label instance while the label does not change
+            if (!itemHolder.labelBound || alarm.label != itemHolder.boundLabel) {
+                itemHolder.labelBound = true;
+                itemHolder.boundLabel = alarm.label;
+                if (alarm.label != null && alarm.label.length() != 0) {
+                    itemHolder.label.setText(alarm.label + "  ");
+                    itemHolder.label.setVisibility(View.VISIBLE);
+                    itemHolder.label.setContentDescription(
+                            mContext.getResources().getString(R.string.label_description) + " "
+                            + alarm.label);
+                } else {
+                    itemHolder.label.setVisibility(View.GONE);
+                }
+            }
+
+            if (expanded) {
+                expandAlarm(itemHolder, false);
+            } else {
+                collapseAlarm(itemHolder, false);
+            }
+        }
+
+        private void bindExpandArea(final ItemHolder itemHolder, final Alarm alarm) {
+            // Views in here are not bound until the item is expanded.
+
+            if (alarm.label != null && alarm.label.length() > 0) {
+                itemHolder.clickableLabel.setText(alarm.label);
+                itemHolder.clickableLabel.setTextColor(mColorLit);
+            } else {
+                itemHolder.clickableLabel.setText(R.string.label);
+                itemHolder.clickableLabel.setTextColor(mColorDim);
+            }
+
+            if (mRepeatChecked.contains(alarm.id) || alarm.daysOfWeek.isRepeating()) {
+                itemHolder.repeat.setChecked(true);
+                itemHolder.repeatDays.setVisibility(View.VISIBLE);
+            } else {
+                itemHolder.repeat.setChecked(false);
+                itemHolder.repeatDays.setVisibility(View.GONE);
+            }
+            updateDaysOfWeekButtons(itemHolder, alarm.daysOfWeek);
+
+            // The vibrate and ringtone settings are shown once the rest of the alarm is loaded
+            if (!itemHolder.detailsLoaded) {
+                loadDetails(alarm.id);
+            }
+            itemHolder.vibrate.setEnabled(itemHolder.detailsLoaded);
+            itemHolder.ringtone.setEnabled(itemHolder.detailsLoaded);
 
             if (!mHasVibrator) {
                 itemHolder.vibrate.setVisibility(View.INVISIBLE);
             } else {
                 itemHolder.vibrate.setVisibility(View.VISIBLE);
-                if (!alarm.vibrate) {
+                if (!itemHolder.detailsLoaded || !alarm.vibrate) {
                     itemHolder.vibrate.setChecked(false);
                     itemHolder.vibrate.setTextColor(mColorDim);
                 } else {
@@ -1282,41 +1273,42 @@ public class AlarmClockFragment extends DeskClockFragment implements
                 }
             }
 
-            itemHolder.vibrate.setOnClickListener(new View.OnClickListener() {
+            bindRingtoneTitle(itemHolder, alarm);
+        }
+
+        /**
+         * Loads the rest of the alarm in the background, and binds the expanded row showing it
+         * when it arrives.
+         */
+        private void loadDetails(final long id) {
+            if (!mLoadingDetails.add(id)) {
+                return;
+            }
+            final ContentResolver cr = mContext.getContentResolver();
+            final AsyncTask<Void, Void, Alarm> loadTask = new AsyncTask<Void, Void, Alarm>() {
                 @Override
-                public void onClick(View v) {
-                    final boolean checked = ((CheckBox) v).isChecked();
-                    if (checked) {
-                        itemHolder.vibrate.setTextColor(mColorLit);
-                    } else {
-                        itemHolder.vibrate.setTextColor(mColorDim);
-                    }
-                    alarm.vibrate = checked;
-                    asyncUpdateAlarm(alarm, false);
+                protected Alarm doInBackground(Void... parameters) {
+                    return Alarm.getAlarm(cr, id);
                 }
-            });
 
-            final String ringtone;
-            if (Alarm.NO_RINGTONE_URI.equals(alarm.alert)) {
-                ringtone = mContext.getResources().getString(R.string.silent_alarm_summary);
-            } else {
-                final String ringtone_tmp = getRingToneTitle(alarm.alert);
-                if (ringtone_tmp == null) {
-                    ringtone = mContext.getResources().getString(R.string.silent_alarm_summary);
-                } else {
-                    ringtone = ringtone_tmp;
-                }
-            }
-            itemHolder.ringtone.setText(ringtone);
-            itemHolder.ringtone.setContentDescription(
-                    mContext.getResources().getString(R.string.ringtone_description) + " "
-                            + ringtone);
-            itemHolder.ringtone.setOnClickListener(new View.OnClickListener() {
                 @Override
-                public void onClick(View view) {
-                    launchRingTonePicker(alarm);
+                protected void onPostExecute(Alarm details) {
+                    mLoadingDetails.remove(id);
+                    if (details == null) {
+                        return;
+                    }
+                    mDetails.put(id, details);
+                    final ItemHolder holder = (ItemHolder) mList.findViewHolderForItemId(id);
+                    if (holder != null && holder.alarm.id == id) {
+                        holder.alarm.copyDetailsFrom(details);
+                        holder.detailsLoaded = true;
+                        if (isAlarmExpanded(holder.alarm)) {
+                            bindExpandArea(holder, holder.alarm);
+                        }
+                    }
                 }
-            });
+            };
+            loadTask.execute();
         }
 
         // Sets the alpha of the item except the on/off switch. This gives a visual effect
@@ -1331,9 +1323,8 @@ public class AlarmClockFragment extends DeskClockFragment implements
         }
 
         private void updateDaysOfWeekButtons(ItemHolder holder, DaysOfWeek daysOfWeek) {
-            HashSet<Integer> setDays = daysOfWeek.getSetDays();
             for (int i = 0; i < 7; i++) {
-                if (setDays.contains(DAY_ORDER[i])) {
+                if (daysOfWeek.isDaySet(DAY_ORDER[i])) {
                     turnOnDayOfWeek(holder, i);
                 } else {
                     turnOffDayOfWeek(holder, i);
@@ -1354,6 +1345,25 @@ public class AlarmClockFragment extends DeskClockFragment implements
             }
         }
 
+        /**
+         * Selects or unselects the alarm of the row for the bulk edits.
+         */
+        private void toggleSelected(ItemHolder holder) {
+            final long id = holder.alarm.id;
+            if (!mSelectedAlarms.remove(id)) {
+                mSelectedAlarms.add(id);
+            }
+            notifyItemChanged(holder.getPosition());
+            updateActionMode();
+        }
+
+        public void clearSelection() {
+            if (!mSelectedAlarms.isEmpty()) {
+                mSelectedAlarms.clear();
+                notifyDataSetChanged();
+            }
+        }
+
         private View getTopParent(View v) {
             while (v != null && v.getId() != R.id.alarm_item) {
                 v = (View) v.getParent();
@@ -1379,25 +1389,46 @@ public class AlarmClockFragment extends DeskClockFragment implements
 
 
         /**
-         * Does a read-through cache for ringtone titles.
-         *
-         * @param uri The uri of the ringtone.
-         * @return The ringtone title. {@literal null} if no matching ringtone found.
+         * Shows the ringtone title of the alarm, or a placeholder while it is being looked up.
+         * The row is bound again by {@link #updateRingtoneTitles()} when the title arrives.
          */
-        private String getRingToneTitle(Uri uri) {
-            // Try the cache first
-            String title = mRingtoneTitleCache.getString(uri.toString());
-            if (title == null) {
-                // This is slow because a media player is created during Ringtone object creation.
-                Ringtone ringTone = RingtoneManager.getRingtone(mContext, uri);
-                if (ringTone != null) {
-                    title = ringTone.getTitle(mContext);
-                    if (title != null) {
-                        mRingtoneTitleCache.putString(uri.toString(), title);
-                    }
+        private void bindRingtoneTitle(ItemHolder itemHolder, Alarm alarm) {
+            final Resources res = mContext.getResources();
+            final String ringtone;
+            if (!itemHolder.detailsLoaded) {
+                ringtone = res.getString(R.string.ringtone_title_loading);
+            } else if (Alarm.NO_RINGTONE_URI.equals(alarm.alert)) {
+                ringtone = res.getString(R.string.silent_alarm_summary);
+            } else {
+                final String title = mRingtoneTitleResolver.getTitle(alarm.alert);
+                if (title == null) {
+                    ringtone = res.getString(R.string.ringtone_title_loading);
+                } else if (title.isEmpty()) {
+                    // No matching ringtone found
+                    ringtone = res.getString(R.string.silent_alarm_summary);
+                } else {
+                    ringtone = title;
+                }
+            }
+            // Titles come from caches, so an unchanged title is the same instance
+            if (ringtone != itemHolder.boundRingtone) {
+                itemHolder.boundRingtone = ringtone;
+                itemHolder.ringtone.setText(ringtone);
+                itemHolder.ringtone.setContentDescription(
+                        res.getString(R.string.ringtone_description) + " " + ringtone);
+            }
+        }
+
+        /**
+         * Updates the ringtone titles of the alarms on screen with the titles looked up so far.
+         */
+        public void updateRingtoneTitles() {
+            for (int i = 0; i < mList.getChildCount(); i++) {
+                Object tag = mList.getChildAt(i).getTag();
+                if (tag instanceof ItemHolder && ((ItemHolder) tag).alarm != null) {
+                    bindRingtoneTitle((ItemHolder) tag, ((ItemHolder) tag).alarm);
                 }
             }
-            return title;
         }
 
         public void setNewAlarm(long alarmId) {
@@ -1644,22 +1675,9 @@ public class AlarmClockFragment extends DeskClockFragment implements
             });
         }
 
-        @Override
-        public int getViewTypeCount() {
-            return 1;
-        }
-
         private View getViewById(long id) {
-            for (int i = 0; i < mList.getCount(); i++) {
-                View v = mList.getChildAt(i);
-                if (v != null) {
-                    ItemHolder h = (ItemHolder)(v.getTag());
-                    if (h != null && h.alarm.id == id) {
-                        return v;
-                    }
-                }
-            }
-            return null;
+            final RecyclerView.ViewHolder holder = mList.findViewHolderForItemId(id);
+            return holder == null ? null : holder.itemView;
         }
 
         public long[] getExpandedArray() {
@@ -1703,6 +1721,166 @@ public class AlarmClockFragment extends DeskClockFragment implements
         }
     }
 
+    /**
+     * Looks for duplicate and clustered alarms in the background, and lists them in a dialog.
+     */
+    public void showAlarmCheck() {
+        final ContentResolver cr = getActivity().getContentResolver();
+        final AsyncTask<Void, Void, AlarmAnalyzer.Result> checkTask =
+                new AsyncTask<Void, Void, AlarmAnalyzer.Result>() {
+            @Override
+            protected AlarmAnalyzer.Result doInBackground(Void... parameters) {
+                return AlarmAnalyzer.analyze(Alarm.getAlarms(cr, Alarm.ENABLED + "=1"),
+                        Calendar.getInstance(), ALARM_CHECK_WINDOW_MINUTES);
+            }
+
+            @Override
+            protected void onPostExecute(AlarmAnalyzer.Result result) {
+                // The fragment may be gone by now
+                if (getActivity() == null) {
+                    return;
+                }
+                new AlertDialog.Builder(getActivity())
+                        .setTitle(R.string.menu_item_check_alarms)
+                        .setMessage(getAlarmCheckText(result))
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show();
+            }
+        };
+        checkTask.execute();
+    }
+
+    private String getAlarmCheckText(AlarmAnalyzer.Result result) {
+        final Resources res = getResources();
+        final String[] dayNames = new DateFormatSymbols().getWeekdays();
+        final java.text.DateFormat timeFormat = DateFormat.getTimeFormat(getActivity());
+        final Calendar calendar = Calendar.getInstance();
+        final StringBuilder text = new StringBuilder();
+        if (result.isEmpty()) {
+            text.append(res.getString(R.string.alarm_check_no_issues));
+        }
+        for (AlarmAnalyzer.AlarmPair pair : result.duplicates) {
+            appendLine(text, res.getString(R.string.alarm_check_duplicate,
+                    getAlarmCheckName(pair.second, timeFormat, calendar),
+                    getAlarmCheckName(pair.first, timeFormat, calendar)));
+        }
+        for (AlarmAnalyzer.AlarmPair pair : result.close) {
+            appendLine(text, res.getString(R.string.alarm_check_close,
+                    getAlarmCheckName(pair.first, timeFormat, calendar),
+                    getAlarmCheckName(pair.second, timeFormat, calendar),
+                    pair.minutesApart, dayNames[pair.day]));
+        }
+        for (AlarmAnalyzer.AlarmPair pair : result.shadowed) {
+            appendLine(text, res.getString(R.string.alarm_check_shadowed,
+                    getAlarmCheckName(pair.first, timeFormat, calendar),
+                    getAlarmCheckName(pair.second, timeFormat, calendar),
+                    pair.minutesApart, dayNames[pair.day]));
+        }
+
+        final int busiestHour = result.getBusiestHour();
+        if (busiestHour >= 0) {
+            final int firings = result.hourlyFirings[busiestHour];
+            calendar.set(Calendar.HOUR_OF_DAY, busiestHour % 24);
+            calendar.set(Calendar.MINUTE, 0);
+            text.append("\n\n").append(res.getQuantityString(R.plurals.alarm_check_busiest_hour,
+                    firings, dayNames[Calendar.SUNDAY + busiestHour / 24],
+                    timeFormat.format(calendar.getTime()), firings));
+        }
+        return text.toString();
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if (text.length() > 0) {
+            text.append('\n');
+        }
+        text.append(line);
+    }
+
+    private static String getAlarmCheckName(
+            Alarm alarm, java.text.DateFormat timeFormat, Calendar calendar) {
+        calendar.set(Calendar.HOUR_OF_DAY, alarm.hour);
+        calendar.set(Calendar.MINUTE, alarm.minutes);
+        final String time = timeFormat.format(calendar.getTime());
+        return alarm.label == null || alarm.label.isEmpty() ? time : time + " " + alarm.label;
+    }
+
+    /**
+     * Writes all the alarms to a file in the downloads directory in the background.
+     */
+    public void exportAlarms() {
+        final Context context = getActivity().getApplicationContext();
+        final File file = new File(Environment.getExternalStoragePublicDirectory(
+                Environment.DIRECTORY_DOWNLOADS), EXPORT_FILE_NAME);
+        final AsyncTask<Void, Void, Integer> exportTask = new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... parameters) {
+                try {
+                    file.getParentFile().mkdirs();
+                    return AlarmBackup.exportAlarms(
+                            context.getContentResolver(), new FileOutputStream(file));
+                } catch (IOException e) {
+                    Log.e("Could not export the alarms to " + file + ": " + e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(Integer count) {
+                final String message = count == null
+                        ? context.getString(R.string.alarms_export_failed)
+                        : context.getResources().getQuantityString(
+                                R.plurals.alarms_exported, count, count, file.getPath());
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+        };
+        exportTask.execute();
+    }
+
+    /**
+     * Lets the user pick a file of exported alarms, which is imported once picked.
+     */
+    public void importAlarms() {
+        final Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        try {
+            startActivityForResult(Intent.createChooser(intent,
+                    getString(R.string.menu_item_import_alarms)), REQUEST_CODE_IMPORT_ALARMS);
+        } catch (ActivityNotFoundException e) {
+            Log.e("No activity found to pick the alarms file");
+        }
+    }
+
+    private void asyncImportAlarms(final Uri uri) {
+        final Context context = getActivity().getApplicationContext();
+        final AsyncTask<Void, Void, AlarmBackup.ImportResult> importTask =
+                new AsyncTask<Void, Void, AlarmBackup.ImportResult>() {
+            @Override
+            protected AlarmBackup.ImportResult doInBackground(Void... parameters) {
+                try {
+                    final InputStream in = context.getContentResolver().openInputStream(uri);
+                    if (in == null) {
+                        return null;
+                    }
+                    return AlarmBackup.importAlarms(context, in);
+                } catch (IOException e) {
+                    Log.e("Could not import the alarms from " + uri + ": " + e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(AlarmBackup.ImportResult result) {
+                final String message = result == null
+                        ? context.getString(R.string.alarms_import_failed)
+                        : context.getString(
+                                R.string.alarms_imported, result.imported, result.skipped);
+                Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+            }
+        };
+        importTask.execute();
+    }
+
     private void startCreatingAlarm() {
         // Set the "selected" alarm as null, and we'll create the new one when the timepicker
         // comes back.
@@ -1720,38 +1898,20 @@ public class AlarmClockFragment extends DeskClockFragment implements
         return newInstance;
     }
 
-    protected void asyncDeleteAlarm(
-            final Alarm alarm, final View viewToRemove, final boolean... bypassServer) {
+    protected void asyncDeleteAlarm(final Alarm alarm, final boolean... bypassServer) {
         final Context context = AlarmClockFragment.this.getActivity().getApplicationContext();
         final AsyncTask<Void, Void, Void> deleteTask = new AsyncTask<Void, Void, Void>() {
-            @Override
-            public synchronized void onPreExecute() {
-                if (viewToRemove == null) {
-                    return;
-                }
-                // The alarm list needs to be disabled until the animation finishes to prevent
-                // possible concurrency issues.  It becomes re-enabled after the animations have
-                // completed.
-                mAlarmsList.setEnabled(false);
-
-                // Store all of the current list view item positions in memory for animation.
-                final ListView list = mAlarmsList;
-                int firstVisiblePosition = list.getFirstVisiblePosition();
-                for (int i=0; i<list.getChildCount(); i++) {
-                    View child = list.getChildAt(i);
-                    if (child != viewToRemove) {
-                        int position = firstVisiblePosition + i;
-                        long itemId = mAdapter.getItemId(position);
-                        mItemIdTopMap.put(itemId, child.getTop());
-                    }
-                }
-            }
-
             @Override
             protected Void doInBackground(Void... parameters) {
                 // Activity may be closed at this point , make sure data is still valid
                 if (context != null && alarm != null) {
                     ContentResolver cr = context.getContentResolver();
+                    // Alarms deleted from the list may only have their summary loaded, the rest
+                    // is needed to delete it from the server and to add it back on undo.
+                    final Alarm stored = Alarm.getAlarm(cr, alarm.id);
+                    if (stored != null) {
+                        alarm.copyDetailsFrom(stored);
+                    }
                     AlarmStateManager.deleteAllInstances(context, alarm.id);
                     Alarm.deleteAlarm(cr, alarm.id);
                     if ((bypassServer.length <= 0) || (!bypassServer[0]) ) {
@@ -1770,24 +1930,6 @@ public class AlarmClockFragment extends DeskClockFragment implements
         final Context context = AlarmClockFragment.this.getActivity().getApplicationContext();
         final AsyncTask<Void, Void, AlarmInstance> updateTask =
                 new AsyncTask<Void, Void, AlarmInstance>() {
-            @Override
-            public synchronized void onPreExecute() {
-                final ListView list = mAlarmsList;
-                // The alarm list needs to be disabled until the animation finishes to prevent
-                // possible concurrency issues.  It becomes re-enabled after the animations have
-                // completed.
-                mAlarmsList.setEnabled(false);
-
-                // Store all of the current list view item positions in memory for animation.
-                int firstVisiblePosition = list.getFirstVisiblePosition();
-                for (int i=0; i<list.getChildCount(); i++) {
-                    View child = list.getChildAt(i);
-                    int position = firstVisiblePosition + i;
-                    long itemId = mAdapter.getItemId(position);
-                    mItemIdTopMap.put(itemId, child.getTop());
-                }
-            }
-
             @Override
             protected AlarmInstance doInBackground(Void... parameters) {
                 if (context != null && alarm != null) {
@@ -1826,25 +1968,37 @@ public class AlarmClockFragment extends DeskClockFragment implements
                 new AsyncTask<Void, Void, AlarmInstance>() {
             @Override
             protected AlarmInstance doInBackground(Void ... parameters) {
-                ContentResolver cr = context.getContentResolver();
-
-                // Dismiss all old instances
-                AlarmStateManager.deleteAllInstances(context, alarm.id);
+                return updateAlarmInBackground(context, alarm,
+                        bypassServer.length > 0 && bypassServer[0]);
+            }
 
-                // Update alarm, if bypassing the server we also want to bypass the timestamp (3rd
-                // argument in updateAlarm. Usually this is a request from LightUpPi server.
-                if (bypassServer.length > 0 && bypassServer[0]) {
-                    Alarm.updateAlarm(cr, alarm, true);
-                } else {
-                    Alarm.updateAlarm(cr, alarm);
-                    newLightUpPiSync().editServerAlarm(alarm);
+            @Override
+            protected void onPostExecute(AlarmInstance instance) {
+                if (popToast && instance != null) {
+                    AlarmUtils.popAlarmSetToast(context, instance.getAlarmTime().getTimeInMillis());
                 }
+            }
+        };
+        updateTask.execute();
+    }
 
-                if (alarm.enabled) {
-                    return setupAlarmInstance(context, alarm);
+    /**
+     * Updates the fields of an alarm shown in the list summary and keeps the rest as stored.
+     * Used for edits made from list rows, which may not have loaded the rest of their alarm.
+     */
+    private void asyncUpdateAlarmSummary(final Alarm summary, final boolean popToast) {
+        final Context context = AlarmClockFragment.this.getActivity().getApplicationContext();
+        final AsyncTask<Void, Void, AlarmInstance> updateTask =
+                new AsyncTask<Void, Void, AlarmInstance>() {
+            @Override
+            protected AlarmInstance doInBackground(Void ... parameters) {
+                final Alarm alarm = Alarm.getAlarm(context.getContentResolver(), summary.id);
+                if (alarm == null) {
+                    // Deleted since the edit was made
+                    return null;
                 }
-
-                return null;
+                alarm.copySummaryFrom(summary);
+                return updateAlarmInBackground(context, alarm, false);
             }
 
             @Override
@@ -1857,12 +2011,323 @@ public class AlarmClockFragment extends DeskClockFragment implements
         updateTask.execute();
     }
 
+    private AlarmInstance updateAlarmInBackground(
+            Context context, Alarm alarm, boolean bypassServer) {
+        ContentResolver cr = context.getContentResolver();
+
+        // Dismiss all old instances
+        AlarmStateManager.deleteAllInstances(context, alarm.id);
+
+        // Update alarm, if bypassing the server we also want to bypass the timestamp (3rd
+        // argument in updateAlarm. Usually this is a request from LightUpPi server.
+        if (bypassServer) {
+            Alarm.updateAlarm(cr, alarm, true);
+        } else {
+            Alarm.updateAlarm(cr, alarm);
+            newLightUpPiSync().editServerAlarm(alarm);
+        }
+
+        if (alarm.enabled) {
+            return setupAlarmInstance(context, alarm);
+        }
+
+        return null;
+    }
+
     @Override
     public boolean onTouch(View v, MotionEvent event) {
         hideUndoBar(true, event);
         return false;
     }
 
+    /**
+     * Shows the bulk edit action mode while there are alarms selected, with their count.
+     */
+    private void updateActionMode() {
+        final int selected = mAdapter.getSelectedItemsNum();
+        if (selected == 0) {
+            if (mActionMode != null) {
+                mActionMode.finish();
+            }
+            return;
+        }
+        if (mActionMode == null) {
+            mActionMode = getActivity().startActionMode(mBulkEditCallback);
+        }
+        mActionMode.setTitle(getString(R.string.alarms_selected, selected));
+    }
+
+    private void finishActionMode() {
+        if (mActionMode != null) {
+            mActionMode.finish();
+        }
+    }
+
+    private final ActionMode.Callback mBulkEditCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.alarm_cab_menu, menu);
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            final long[] alarmIds = mAdapter.getSelectedAlarmsArray();
+            switch (item.getItemId()) {
+                case R.id.menu_item_enable_alarms:
+                case R.id.menu_item_disable_alarms:
+                    final boolean enabled = item.getItemId() == R.id.menu_item_enable_alarms;
+                    asyncBulkEdit(alarmIds, new BulkEdit() {
+                        @Override
+                        public void apply(Alarm alarm) {
+                            alarm.enabled = enabled;
+                        }
+                    });
+                    mode.finish();
+                    return true;
+                case R.id.menu_item_shift_alarms:
+                    showBulkShiftDialog(alarmIds);
+                    return true;
+                case R.id.menu_item_alarm_days:
+                    showBulkDaysDialog(alarmIds);
+                    return true;
+                case R.id.menu_item_alarm_ringtone:
+                    final Intent intent = new Intent(RingtoneManager.ACTION_RINGTONE_PICKER);
+                    intent.putExtra(RingtoneManager.EXTRA_RINGTONE_TYPE,
+                            RingtoneManager.TYPE_ALARM);
+                    intent.putExtra(RingtoneManager.EXTRA_RINGTONE_SHOW_DEFAULT, false);
+                    startActivityForResult(intent, REQUEST_CODE_BULK_RINGTONE);
+                    return true;
+                case R.id.menu_item_delete_alarm:
+                    showBulkDeleteDialog(alarmIds);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            mActionMode = null;
+            mAdapter.clearSelection();
+        }
+    };
+
+    private void showBulkShiftDialog(final long[] alarmIds) {
+        final String[] items = new String[BULK_SHIFT_MINUTES.length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = getString(R.string.alarm_shift_minutes, BULK_SHIFT_MINUTES[i]);
+        }
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.menu_item_shift_alarms)
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final int shift = BULK_SHIFT_MINUTES[which];
+                        asyncBulkEdit(alarmIds, new BulkEdit() {
+                            @Override
+                            public void apply(Alarm alarm) {
+                                // Shifted alarms stay on the same days, wrapping around midnight
+                                final int minutesInDay = 24 * 60;
+                                final int minuteOfDay = ((alarm.hour * 60 + alarm.minutes + shift)
+                                        % minutesInDay + minutesInDay) % minutesInDay;
+                                alarm.hour = minuteOfDay / 60;
+                                alarm.minutes = minuteOfDay % 60;
+                            }
+                        });
+                        finishActionMode();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void showBulkDaysDialog(final long[] alarmIds) {
+        final String[] dayNames = new DateFormatSymbols().getWeekdays();
+        final String[] items = new String[7];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = dayNames[Calendar.SUNDAY + i];
+        }
+        final boolean[] checked = new boolean[items.length];
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.menu_item_alarm_days)
+                .setMultiChoiceItems(items, checked,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+                        checked[which] = isChecked;
+                    }
+                })
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final DaysOfWeek days = new DaysOfWeek(DaysOfWeek.NO_DAYS_SET);
+                        for (int i = 0; i < checked.length; i++) {
+                            days.setDaysOfWeek(checked[i], Calendar.SUNDAY + i);
+                        }
+                        final int bitSet = days.getBitSet();
+                        asyncBulkEdit(alarmIds, new BulkEdit() {
+                            @Override
+                            public void apply(Alarm alarm) {
+                                alarm.daysOfWeek.setBitSet(bitSet);
+                            }
+                        });
+                        finishActionMode();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void showBulkDeleteDialog(final long[] alarmIds) {
+        new AlertDialog.Builder(getActivity())
+                .setMessage(getResources().getQuantityString(
+                        R.plurals.alarm_delete_confirmation, alarmIds.length))
+                .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        asyncBulkDelete(alarmIds);
+                        finishActionMode();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void saveBulkRingtoneUri(Intent intent) {
+        Uri picked = intent.getParcelableExtra(RingtoneManager.EXTRA_RINGTONE_PICKED_URI);
+        final Uri uri = picked != null ? picked : Alarm.NO_RINGTONE_URI;
+        RingtoneTitleResolver.getInstance(getActivity()).invalidate(uri);
+        asyncBulkEdit(mAdapter.getSelectedAlarmsArray(), new BulkEdit() {
+            @Override
+            public void apply(Alarm alarm) {
+                alarm.alert = uri;
+            }
+        });
+        finishActionMode();
+    }
+
+    /**
+     * A change applied to each alarm of a bulk edit.
+     */
+    private interface BulkEdit {
+        void apply(Alarm alarm);
+    }
+
+    /**
+     * Applies the edit to the alarms in the background, storing the alarms and replacing their
+     * instances in one provider batch, so either all the changes are stored or none, and then
+     * sends all of them to the LightUpPi server together.
+     */
+    private void asyncBulkEdit(final long[] alarmIds, final BulkEdit edit) {
+        final Context context = AlarmClockFragment.this.getActivity().getApplicationContext();
+        final AsyncTask<Void, Void, List<Alarm>> editTask =
+                new AsyncTask<Void, Void, List<Alarm>>() {
+            @Override
+            protected List<Alarm> doInBackground(Void... parameters) {
+                ContentResolver cr = context.getContentResolver();
+                List<Alarm> alarms = Alarm.getAlarmsById(cr, alarmIds);
+                String instanceSelection = Alarm.getIdSelection(AlarmInstance.ALARM_ID, alarmIds);
+                for (AlarmInstance instance : AlarmInstance.getInstances(cr, instanceSelection)) {
+                    AlarmStateManager.unregisterInstance(context, instance);
+                }
+
+                // The alarm updates, the delete of the old instances and the inserts of the new
+                // ones, with the instances to register at the same indexes as their inserts
+                ArrayList<ContentProviderOperation> operations =
+                        new ArrayList<ContentProviderOperation>();
+                ArrayList<AlarmInstance> instances = new ArrayList<AlarmInstance>();
+                long timestamp = System.currentTimeMillis() / 1000;
+                for (Alarm alarm : alarms) {
+                    edit.apply(alarm);
+                    alarm.timestamp = timestamp;
+                    operations.add(ContentProviderOperation.newUpdate(Alarm.getUri(alarm.id))
+                            .withValues(Alarm.createContentValues(alarm)).build());
+                    instances.add(null);
+                }
+                operations.add(ContentProviderOperation.newDelete(AlarmInstance.CONTENT_URI)
+                        .withSelection(instanceSelection, null).build());
+                instances.add(null);
+                Calendar now = Calendar.getInstance();
+                for (Alarm alarm : alarms) {
+                    if (alarm.enabled) {
+                        AlarmInstance instance = alarm.createInstanceAfter(now);
+                        operations.add(ContentProviderOperation.newInsert(AlarmInstance.CONTENT_URI)
+                                .withValues(AlarmInstance.createContentValues(instance)).build());
+                        instances.add(instance);
+                    }
+                }
+
+                ContentProviderResult[] results = null;
+                try {
+                    results = cr.applyBatch(ClockContract.AUTHORITY, operations);
+                } catch (RemoteException e) {
+                    Log.e("Could not apply the bulk edit: " + e);
+                } catch (OperationApplicationException e) {
+                    Log.e("Could not apply the bulk edit: " + e);
+                }
+                if (results != null) {
+                    for (int i = 0; i < results.length; i++) {
+                        AlarmInstance instance = instances.get(i);
+                        if (instance != null) {
+                            instance.mId = AlarmInstance.getId(results[i].uri);
+                            AlarmStateManager.registerInstance(context, instance, false);
+                        }
+                    }
+                } else {
+                    // Nothing was stored, put back the instances of the alarms as they are and
+                    // send nothing to the server
+                    List<AlarmInstance> oldInstances =
+                            AlarmInstance.getInstances(cr, instanceSelection);
+                    for (AlarmInstance instance : oldInstances) {
+                        AlarmStateManager.registerInstance(context, instance, false);
+                    }
+                    alarms = new ArrayList<Alarm>();
+                }
+                AlarmStateManager.updateNextAlarm(context);
+                return alarms;
+            }
+
+            @Override
+            protected void onPostExecute(List<Alarm> alarms) {
+                // The server sync needs the activity for its progress dialog
+                if (getActivity() != null && !alarms.isEmpty()) {
+                    newLightUpPiSync().editServerAlarms(alarms);
+                }
+            }
+        };
+        editTask.execute();
+    }
+
+    private void asyncBulkDelete(final long[] alarmIds) {
+        final Context context = AlarmClockFragment.this.getActivity().getApplicationContext();
+        final AsyncTask<Void, Void, List<Alarm>> deleteTask =
+                new AsyncTask<Void, Void, List<Alarm>>() {
+            @Override
+            protected List<Alarm> doInBackground(Void... parameters) {
+                ContentResolver cr = context.getContentResolver();
+                // Loaded first for their LightUpPi IDs
+                List<Alarm> alarms = Alarm.getAlarmsById(cr, alarmIds);
+                AlarmStateManager.deleteAllInstances(context, alarmIds, true);
+                Alarm.deleteAlarms(cr, alarmIds);
+                return alarms;
+            }
+
+            @Override
+            protected void onPostExecute(List<Alarm> alarms) {
+                if (getActivity() != null) {
+                    newLightUpPiSync().deleteServerAlarms(alarms);
+                }
+            }
+        };
+        deleteTask.execute();
+    }
+
     private LightUpPiSync newLightUpPiSync() {
         return new LightUpPiSync(getActivity(), this.getTag());
     }
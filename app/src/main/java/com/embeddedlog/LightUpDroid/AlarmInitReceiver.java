@@ -21,7 +21,6 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.PowerManager.WakeLock;
 import android.preference.PreferenceManager;
 
 import com.embeddedlog.LightUpDroid.alarms.AlarmStateManager;
@@ -35,41 +34,57 @@ public class AlarmInitReceiver extends BroadcastReceiver {
 
     /**
      * Sets alarm on ACTION_BOOT_COMPLETED.  Resets alarm on
-     * TIME_SET, TIMEZONE_CHANGED
+     * TIME_SET, TIMEZONE_CHANGED, and on MY_PACKAGE_REPLACED, as the instances created while
+     * upgrading the alarms database are not registered yet.
      */
     @Override
     public void onReceive(final Context context, Intent intent) {
         final String action = intent.getAction();
         Log.v("AlarmInitReceiver " + action);
+        if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            ZoneOffsetCache.clear();
+        }
 
         final PendingResult result = goAsync();
-        final WakeLock wl = AlarmAlertWakeLock.createPartialWakeLock(context);
+        // Traced from here, so the trace covers the whole time the wake lock is held
+        final BootTrace trace = BootTrace.start(action);
+        final AlarmAlertWakeLock.TrackedWakeLock wl = AlarmAlertWakeLock.createPartialWakeLock(
+                context, AlarmAlertWakeLock.ALARM_INIT_RECEIVER);
         wl.acquire();
 
         // We need to increment the global id out of the async task to prevent
         // race conditions
+        trace.beginStep("global intent id");
         AlarmStateManager.updateGloablIntentId(context);
+        trace.beginStep("queued on AsyncHandler");
         AsyncHandler.post(new Runnable() {
             @Override public void run() {
+                trace.endStep();
                 // Remove the snooze alarm after a boot.
                 if (action.equals(Intent.ACTION_BOOT_COMPLETED)) {
                     // Clear stopwatch and timers data
+                    trace.beginStep("load preferences");
                     SharedPreferences prefs =
                             PreferenceManager.getDefaultSharedPreferences(context);
                     Log.v("AlarmInitReceiver - Reset timers and clear stopwatch data");
+                    trace.beginStep("reset timers");
                     TimerObj.resetTimersInSharedPrefs(prefs);
-                    Utils.clearSwSharedPref(prefs);
+                    trace.beginStep("clear stopwatch");
+                    Utils.clearSwSharedPref(context);
 
                     if (!prefs.getBoolean(PREF_VOLUME_DEF_DONE, false)) {
                         // Fix the default
                         Log.v("AlarmInitReceiver - resetting volume button default");
+                        trace.beginStep("volume button default");
                         switchVolumeButtonDefault(prefs);
                     }
                 }
 
                 // Update all the alarm instances on time change event
+                trace.beginStep("fix alarm instances");
                 AlarmStateManager.fixAlarmInstances(context);
 
+                trace.finish(context);
                 result.finish();
                 Log.v("AlarmInitReceiver finished");
                 wl.release();
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.text.format.DateUtils;
+import android.util.LongSparseArray;
+
+import com.embeddedlog.LightUpDroid.provider.Alarm;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Upcoming firing times of the enabled alarms over the next week, for the alarm timeline.
+ *
+ * The firing times of each alarm are worked out once, as epoch milliseconds, when the alarm is
+ * loaded or changes, so an edit only replaces the times of that alarm. The times of all the
+ * alarms are merged into one sorted array, where alarms firing at the same time share a node,
+ * the next time the nodes are read.
+ *
+ * Must only be used from one thread, the firing times can be worked out on any thread.
+ */
+public class AlarmTimeline {
+    private static final int DAYS_IN_WEEK = 7;
+
+    // Firing times of each alarm by id, and whether the alarm repeats. Both have the same keys,
+    // so an alarm has the same index in both.
+    private final LongSparseArray<long[]> mAlarmTimes = new LongSparseArray<long[]>();
+    private final LongSparseArray<Boolean> mAlarmRepeating = new LongSparseArray<Boolean>();
+
+    // Merged nodes, sorted by time
+    private long[] mTimes = new long[0];
+    private boolean[] mRepeating = new boolean[0];
+    private int mCount;
+    private boolean mDirty;
+
+    /**
+     * Works out the firing times of an alarm within a week from now. A repeating alarm fires
+     * once on each of its days, an alarm that does not repeat fires once today or tomorrow.
+     *
+     * @param alarm the alarm, which is assumed to be enabled.
+     * @param calendar calendar set to the current time, it is changed by this method.
+     * @return the firing times in ascending order.
+     */
+    public static long[] getFiringTimes(Alarm alarm, Calendar calendar) {
+        final long now = calendar.getTimeInMillis();
+        // Alarms firing in the current minute are still upcoming
+        final long start = now - now % DateUtils.MINUTE_IN_MILLIS;
+        final boolean repeating = alarm.daysOfWeek.isRepeating();
+        final long[] times = new long[DAYS_IN_WEEK];
+        int count = 0;
+        boolean todayPassed = false;
+        for (int day = 0; day <= DAYS_IN_WEEK; day++) {
+            calendar.setTimeInMillis(now);
+            calendar.add(Calendar.DATE, day);
+            calendar.set(Calendar.HOUR_OF_DAY, alarm.hour);
+            calendar.set(Calendar.MINUTE, alarm.minutes);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            final long time = calendar.getTimeInMillis();
+            if (time < start) {
+                todayPassed = true;
+                continue;
+            }
+            if (day == DAYS_IN_WEEK && !todayPassed) {
+                // Same day of the week as today, which has been counted already
+                break;
+            }
+            if (!repeating) {
+                return new long[] { time };
+            }
+            if (alarm.daysOfWeek.isDaySet(calendar.get(Calendar.DAY_OF_WEEK))) {
+                times[count++] = time;
+            }
+        }
+        return Arrays.copyOf(times, count);
+    }
+
+    /**
+     * Sets the firing times of an alarm, replacing the ones it had.
+     *
+     * @param times the times from {@link #getFiringTimes}, or null to remove the alarm.
+     */
+    public void setAlarm(long alarmId, long[] times, boolean repeating) {
+        if (times == null || times.length == 0) {
+            mAlarmTimes.remove(alarmId);
+            mAlarmRepeating.remove(alarmId);
+        } else {
+            mAlarmTimes.put(alarmId, times);
+            mAlarmRepeating.put(alarmId, repeating);
+        }
+        mDirty = true;
+    }
+
+    public void clear() {
+        mAlarmTimes.clear();
+        mAlarmRepeating.clear();
+        mDirty = true;
+    }
+
+    public int getNodeCount() {
+        merge();
+        return mCount;
+    }
+
+    public long getNodeTime(int node) {
+        merge();
+        return mTimes[node];
+    }
+
+    /**
+     * @return true if any of the alarms firing at the node repeats.
+     */
+    public boolean isNodeRepeating(int node) {
+        merge();
+        return mRepeating[node];
+    }
+
+    /**
+     * Merges the times of all the alarms. Each time is packed with its repeating flag in the
+     * lowest bit, so sorting one primitive array orders the nodes.
+     */
+    private void merge() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        int total = 0;
+        for (int i = 0; i < mAlarmTimes.size(); i++) {
+            total += mAlarmTimes.valueAt(i).length;
+        }
+        final long[] packed = new long[total];
+        int n = 0;
+        for (int i = 0; i < mAlarmTimes.size(); i++) {
+            final long flag = mAlarmRepeating.valueAt(i) ? 1 : 0;
+            for (long time : mAlarmTimes.valueAt(i)) {
+                packed[n++] = time << 1 | flag;
+            }
+        }
+        Arrays.sort(packed);
+
+        if (mTimes.length < total) {
+            mTimes = new long[total];
+            mRepeating = new boolean[total];
+        }
+        mCount = 0;
+        for (long value : packed) {
+            final long time = value >> 1;
+            final boolean repeating = (value & 1) != 0;
+            if (mCount > 0 && mTimes[mCount - 1] == time) {
+                mRepeating[mCount - 1] |= repeating;
+            } else {
+                mTimes[mCount] = time;
+                mRepeating[mCount++] = repeating;
+            }
+        }
+    }
+}
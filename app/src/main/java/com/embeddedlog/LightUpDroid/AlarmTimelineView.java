@@ -16,6 +16,7 @@
 package com.embeddedlog.LightUpDroid;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.res.Resources;
 import android.database.ContentObserver;
@@ -29,18 +30,17 @@ import android.os.Handler;
 import android.text.format.DateFormat;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
+import android.util.LongSparseArray;
 import android.view.View;
 
 import com.embeddedlog.LightUpDroid.provider.Alarm;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.TreeMap;
 
 /**
  * Renders a tree-like view of the next alarm times over the period of a week.
@@ -54,8 +54,6 @@ public class AlarmTimelineView extends View {
     private static final String FORMAT_12_HOUR = "E h mm a";
     private static final String FORMAT_24_HOUR = "E H mm";
 
-    private static final int DAYS_IN_WEEK = 7;
-
     private int mAlarmTimelineColor;
     private int mAlarmTimelineLength;
     private int mAlarmTimelineMarginTop;
@@ -70,10 +68,10 @@ public class AlarmTimelineView extends View {
     private Paint mPaint;
     private ContentResolver mResolver;
     private SimpleDateFormat mDateFormat;
-    private TreeMap<Date, AlarmTimeNode> mAlarmTimes = new TreeMap<Date, AlarmTimeNode>();
-    private Calendar mCalendar;
+    private final AlarmTimeline mTimeline = new AlarmTimeline();
+    // Reused to format the node times
+    private final Date mDate = new Date();
     private AlarmObserver mAlarmObserver = new AlarmObserver(getHandler());
-    private GetAlarmsTask mAlarmsTask = new GetAlarmsTask();
     private String mNoAlarmsScheduled;
     private boolean mIsAnimatingOut;
 
@@ -88,116 +86,74 @@ public class AlarmTimelineView extends View {
 
         @Override
         public void onChange(boolean changed) {
-            if (mAlarmsTask != null) {
-                mAlarmsTask.cancel(true);
-            }
-            mAlarmsTask = new GetAlarmsTask();
-            mAlarmsTask.execute();
+            onChange(changed, null);
         }
 
         @Override
         public void onChange(boolean changed, Uri uri) {
-            onChange(changed);
+            // Changes to a single alarm only reload that alarm
+            long alarmId = Alarm.INVALID_ID;
+            if (uri != null && uri.getPathSegments().size()
+                    == Alarm.CONTENT_URI.getPathSegments().size() + 1) {
+                try {
+                    alarmId = ContentUris.parseId(uri);
+                } catch (NumberFormatException e) {
+                    alarmId = Alarm.INVALID_ID;
+                }
+            }
+            new GetAlarmsTask(alarmId).execute();
         }
     }
 
     /**
-     * The data model for one node on the timeline.
+     * Works out the firing times of the enabled alarms, or of one alarm, in the background and
+     * updates the timeline with them. The tasks run one after the other, so their updates are
+     * applied in the order of the changes.
      */
-    private class AlarmTimeNode {
-        public Date date;
-        public boolean isRepeating;
+    private class GetAlarmsTask extends AsyncTask<Void, Void, Void> {
+        // The alarm to reload, or INVALID_ID to reload all of them
+        private final long mAlarmId;
+        private final LongSparseArray<long[]> mTimes = new LongSparseArray<long[]>();
+        private final LongSparseArray<Boolean> mRepeating = new LongSparseArray<Boolean>();
 
-        public AlarmTimeNode(Date date, boolean isRepeating) {
-            this.date = date;
-            this.isRepeating = isRepeating;
+        GetAlarmsTask(long alarmId) {
+            mAlarmId = alarmId;
         }
-    }
-
-    /**
-     * Retrieves alarms from the content provider and generates an alarm node tree sorted by date.
-     */
-    private class GetAlarmsTask extends AsyncTask<Void, Void, Void> {
 
         @Override
-        protected synchronized Void doInBackground(Void... params) {
-            List<Alarm> enabledAlarmList = Alarm.getAlarms(mResolver, Alarm.ENABLED + "=1");
-            final Date currentTime = mCalendar.getTime();
-            mAlarmTimes.clear();
-            for (Alarm alarm : enabledAlarmList) {
-                int hour = alarm.hour;
-                int minutes = alarm.minutes;
-                HashSet<Integer> repeatingDays = alarm.daysOfWeek.getSetDays();
-
-                // If the alarm is not repeating,
-                if (repeatingDays.isEmpty()) {
-                    mCalendar.add(Calendar.DATE, getDaysFromNow(hour, minutes));
-                    mCalendar.set(Calendar.HOUR_OF_DAY, alarm.hour);
-                    mCalendar.set(Calendar.MINUTE, alarm.minutes);
-                    Date date = mCalendar.getTime();
-
-                    if (!mAlarmTimes.containsKey(date)) {
-                        // Add alarm if there is no other alarm with this date.
-                        mAlarmTimes.put(date, new AlarmTimeNode(date, false));
-                    }
-                    mCalendar.setTime(currentTime);
-                    continue;
-                }
+        protected Void doInBackground(Void... params) {
+            final List<Alarm> alarms;
+            if (mAlarmId == Alarm.INVALID_ID) {
+                alarms = Alarm.getAlarms(mResolver, Alarm.ENABLED + "=1");
+            } else {
+                final Alarm alarm = Alarm.getAlarm(mResolver, mAlarmId);
+                alarms = alarm != null && alarm.enabled
+                        ? Collections.singletonList(alarm) : Collections.<Alarm>emptyList();
+            }
 
-                // If the alarm is repeating, iterate through each alarm date.
-                for (int day : alarm.daysOfWeek.getSetDays()) {
-                    mCalendar.add(Calendar.DATE, getDaysFromNow(day, hour, minutes));
-                    mCalendar.set(Calendar.HOUR_OF_DAY, alarm.hour);
-                    mCalendar.set(Calendar.MINUTE, alarm.minutes);
-                    Date date = mCalendar.getTime();
-
-                    if (!mAlarmTimes.containsKey(date)) {
-                        // Add alarm if there is no other alarm with this date.
-                        mAlarmTimes.put(date, new AlarmTimeNode(mCalendar.getTime(), true));
-                    } else {
-                        // If there is another alarm with this date, make it
-                        // repeating.
-                        mAlarmTimes.get(date).isRepeating = true;
-                    }
-                    mCalendar.setTime(currentTime);
-                }
+            final Calendar calendar = Calendar.getInstance();
+            final long now = calendar.getTimeInMillis();
+            for (Alarm alarm : alarms) {
+                calendar.setTimeInMillis(now);
+                mTimes.put(alarm.id, AlarmTimeline.getFiringTimes(alarm, calendar));
+                mRepeating.put(alarm.id, alarm.daysOfWeek.isRepeating());
             }
             return null;
         }
 
         @Override
         protected void onPostExecute(Void result) {
-            requestLayout();
-            AlarmTimelineView.this.invalidate();
-        }
-
-        // Returns whether this non-repeating alarm is firing today or tomorrow.
-        private int getDaysFromNow(int hour, int minutes) {
-            final int currentHour = mCalendar.get(Calendar.HOUR_OF_DAY);
-            if (hour > currentHour ||
-                    (hour == currentHour && minutes >= mCalendar.get(Calendar.MINUTE)) ) {
-                return 0;
-            }
-            return 1;
-        }
-
-        // Returns the days from now of the next instance of this alarm, given the repeated day.
-        private int getDaysFromNow(int day, int hour, int minute) {
-            final int currentDay = mCalendar.get(Calendar.DAY_OF_WEEK);
-            if (day != currentDay) {
-                if (day < currentDay) {
-                    day += DAYS_IN_WEEK;
-                }
-                return day - currentDay;
+            if (mAlarmId == Alarm.INVALID_ID) {
+                mTimeline.clear();
+            } else {
+                // Removes the alarm if it was deleted or disabled
+                mTimeline.setAlarm(mAlarmId, null, false);
             }
-
-            final int currentHour = mCalendar.get(Calendar.HOUR_OF_DAY);
-            if (hour != currentHour) {
-                return (hour < currentHour) ? DAYS_IN_WEEK : 0;
+            for (int i = 0; i < mTimes.size(); i++) {
+                mTimeline.setAlarm(mTimes.keyAt(i), mTimes.valueAt(i), mRepeating.valueAt(i));
             }
-
-            final int currentMinute = mCalendar.get(Calendar.MINUTE);
-            return (minute < currentMinute) ? DAYS_IN_WEEK : 0;
+            requestLayout();
+            AlarmTimelineView.this.invalidate();
         }
     }
 
@@ -235,12 +191,11 @@ public class AlarmTimelineView extends View {
         mPaint.setStrokeWidth(res.getDimensionPixelOffset(R.dimen.alarm_timeline_width));
         mPaint.setAntiAlias(true);
 
-        mCalendar = Calendar.getInstance();
         final Locale locale = Locale.getDefault();
         String formatString = DateFormat.is24HourFormat(context) ? FORMAT_24_HOUR : FORMAT_12_HOUR;
         mDateFormat = new SimpleDateFormat(formatString, locale);
 
-        mAlarmsTask.execute();
+        new GetAlarmsTask(Alarm.INVALID_ID).execute();
     }
 
     @Override
@@ -258,13 +213,13 @@ public class AlarmTimelineView extends View {
     @Override
     public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        int timelineHeight = !mAlarmTimes.isEmpty() ?  mAlarmTimelineLength : 0;
+        int timelineHeight = mTimeline.getNodeCount() > 0 ?  mAlarmTimelineLength : 0;
         setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec),
                 timelineHeight + mAlarmTimelineMarginTop + mAlarmTimelineMarginBottom);
     }
 
     @Override
-    public synchronized void onDraw(Canvas canvas) {
+    public void onDraw(Canvas canvas) {
 
         // If the view is in the process of animating out, do not change the text or the timeline.
         if (mIsAnimatingOut) {
@@ -279,7 +234,8 @@ public class AlarmTimelineView extends View {
         mPaint.setColor(mAlarmTimelineColor);
 
         // If there are no alarms, draw the no alarms text.
-        if (mAlarmTimes == null || mAlarmTimes.isEmpty()) {
+        final int nodeCount = mTimeline.getNodeCount();
+        if (nodeCount == 0) {
             mPaint.setTextAlign(Align.CENTER);
             canvas.drawText(mNoAlarmsScheduled, x, y, mPaint);
             return;
@@ -292,31 +248,28 @@ public class AlarmTimelineView extends View {
         final int xRight = x + mAlarmNodeRadius + mAlarmTextPadding;
 
         // Iterate through each of the alarm times chronologically.
-        Iterator<AlarmTimeNode> iter = mAlarmTimes.values().iterator();
-        Date firstDate = null;
+        final long firstTime = mTimeline.getNodeTime(0);
         int prevY = 0;
-        int i=0;
         final int maxY = mAlarmTimelineLength + mAlarmTimelineMarginTop;
-        while (iter.hasNext()) {
-            AlarmTimeNode node = iter.next();
-            Date date = node.date;
+        for (int i = 0; i < nodeCount; i++) {
+            final long time = mTimeline.getNodeTime(i);
+            final boolean isRepeating = mTimeline.isNodeRepeating(i);
 
-            if (firstDate == null) {
+            if (i == 0) {
                 // If this is the first alarm, set the node to the top of the timeline.
                 y = mAlarmTimelineMarginTop;
-                firstDate = date;
             } else {
                 // If this is not the first alarm, set the distance based upon the time from the
                 // first alarm.  If a node already exists at that time, use the minimum distance
                 // required from the last drawn node.
-                y = Math.max(convertToDistance(date, firstDate), prevY + mAlarmMinDistance);
+                y = Math.max(convertToDistance(time, firstTime), prevY + mAlarmMinDistance);
             }
 
             if (y > maxY) {
                 // If the y value has somehow exceeded the timeline length, draw node on end of
                 // timeline.  We should never reach this state.
                 Log.wtf("Y-value exceeded timeline length.  Should never happen.");
-                Log.wtf("alarm date=" + node.date.getTime() + ", isRepeating=" + node.isRepeating
+                Log.wtf("alarm date=" + time + ", isRepeating=" + isRepeating
                         + ", y=" + y + ", maxY=" + maxY);
                 y = maxY;
             }
@@ -326,14 +279,15 @@ public class AlarmTimelineView extends View {
             canvas.drawCircle(x, y, mAlarmNodeRadius, mPaint);
 
             // If the node is not repeating, draw an inner circle to make the node "open".
-            if (!node.isRepeating) {
+            if (!isRepeating) {
                 mPaint.setColor(mAlarmNodeInnerRadiusColor);
                 canvas.drawCircle(x, y, mAlarmNodeInnerRadius, mPaint);
             }
             prevY = y;
 
             // Draw the alarm text.  Alternate left and right of the timeline.
-            final String timeString = mDateFormat.format(date).toUpperCase();
+            mDate.setTime(time);
+            final String timeString = mDateFormat.format(mDate).toUpperCase();
             mPaint.setColor(mAlarmTimelineColor);
             if (i % 2 == 0) {
                 mPaint.setTextAlign(Align.RIGHT);
@@ -342,7 +296,6 @@ public class AlarmTimelineView extends View {
                 mPaint.setTextAlign(Align.LEFT);
                 canvas.drawText(timeString, xRight, y + mAlarmTextSize / 3, mPaint);
             }
-            i++;
         }
     }
 
@@ -355,11 +308,8 @@ public class AlarmTimelineView extends View {
 
     // Convert the time difference between the date and the first date to a distance along the
     // timeline.
-    private int convertToDistance(final Date date, final Date firstDate) {
-        if (date == null || firstDate == null) {
-            return 0;
-        }
-        return (int) ((date.getTime() - firstDate.getTime())
+    private int convertToDistance(final long time, final long firstTime) {
+        return (int) ((time - firstTime)
                 * mAlarmTimelineLength / DateUtils.WEEK_IN_MILLIS + mAlarmTimelineMarginTop);
     }
 }
@@ -17,28 +17,36 @@
 package com.embeddedlog.LightUpDroid;
 
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.BroadcastReceiver;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.text.format.DateUtils;
 import android.text.format.Time;
 import android.util.AttributeSet;
 import android.view.View;
 
-import java.util.TimeZone;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This widget display an analogic clock with two hands for hours and
  * minutes.
  */
 public class AnalogClock extends View {
+    // Dial layers by size and dot style, shared by all the clocks
+    private static final int MAX_STATIC_LAYERS = 4;
+    private static final LinkedHashMap<String, Bitmap> sStaticLayers =
+            new LinkedHashMap<String, Bitmap>(MAX_STATIC_LAYERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+                    return size() > MAX_STATIC_LAYERS;
+                }
+            };
+
     private Time mCalendar;
 
     private final Drawable mHourHand;
@@ -50,8 +58,8 @@ public class AnalogClock extends View {
     private final int mDialHeight;
 
     private boolean mAttached;
+    private boolean mTicking;
 
-    private final Handler mHandler = new Handler();
     private float mSeconds;
     private float mMinutes;
     private float mHour;
@@ -62,7 +70,9 @@ public class AnalogClock extends View {
 
     private final float mDotRadius;
     private final float mDotOffset;
+    private final int mDotColor;
     private Paint mDotPaint;
+    private Bitmap mStaticLayer;
 
     public AnalogClock(Context context) {
         this(context, null);
@@ -86,11 +96,12 @@ public class AnalogClock extends View {
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AnalogClock);
         mDotRadius = a.getDimension(R.styleable.AnalogClock_jewelRadius, 0);
         mDotOffset = a.getDimension(R.styleable.AnalogClock_jewelOffset, 0);
-        final int dotColor = a.getColor(R.styleable.AnalogClock_jewelColor, Color.WHITE);
-        if (dotColor != 0) {
+        mDotColor = a.getColor(R.styleable.AnalogClock_jewelColor, Color.WHITE);
+        if (mDotColor != 0) {
             mDotPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            mDotPaint.setColor(dotColor);
+            mDotPaint.setColor(mDotColor);
         }
+        a.recycle();
 
         mCalendar = new Time();
 
@@ -101,40 +112,48 @@ public class AnalogClock extends View {
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
-
-        if (!mAttached) {
-            mAttached = true;
-            IntentFilter filter = new IntentFilter();
-
-            filter.addAction(Intent.ACTION_TIME_TICK);
-            filter.addAction(Intent.ACTION_TIME_CHANGED);
-            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-
-            getContext().registerReceiver(mIntentReceiver, filter, null, mHandler);
-        }
-
-        // NOTE: It's safe to do these after registering the receiver since the receiver always runs
-        // in the main thread, therefore the receiver can't run before this method returns.
-
-        // The time zone may have changed while the receiver wasn't registered, so update the Time
-        mCalendar = new Time();
-
-        // Make sure we update to the current time
-        onTimeChanged();
-
-        // tick the seconds
-        post(mClockTick);
-
+        mAttached = true;
+        updateTicking();
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        if (mAttached) {
-            getContext().unregisterReceiver(mIntentReceiver);
-            removeCallbacks(mClockTick);
-            mAttached = false;
+        mAttached = false;
+        updateTicking();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateTicking();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateTicking();
+    }
+
+    /**
+     * Subscribes to the shared clock ticker only while the clock can be seen, at the seconds
+     * granularity only if the second hand is drawn.
+     */
+    private void updateTicking() {
+        boolean tick = mAttached && getWindowVisibility() == VISIBLE && isShown();
+        if (tick) {
+            if (!mTicking) {
+                // The time zone may have changed while not ticking, so update the Time
+                mCalendar = new Time();
+                onTimeChanged();
+                invalidate();
+            }
+            ClockTicker.getInstance(mContext).register(mTickListener, mNoSeconds
+                    ? ClockTicker.GRANULARITY_MINUTE : ClockTicker.GRANULARITY_SECOND);
+        } else if (mTicking) {
+            ClockTicker.getInstance(mContext).unregister(mTickListener);
         }
+        mTicking = tick;
     }
 
     @Override
@@ -166,6 +185,7 @@ public class AnalogClock extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         mChanged = true;
+        mStaticLayer = null;
     }
 
     @Override
@@ -179,33 +199,26 @@ public class AnalogClock extends View {
 
         int availableWidth = getWidth();
         int availableHeight = getHeight();
+        if (availableWidth <= 0 || availableHeight <= 0) {
+            return;
+        }
 
         int x = availableWidth / 2;
         int y = availableHeight / 2;
 
-        final Drawable dial = mDial;
-        int w = dial.getIntrinsicWidth();
-        int h = dial.getIntrinsicHeight();
-
-        boolean scaled = false;
+        // The dial and dot never move, draw them from the shared cached layer
+        if (mStaticLayer == null) {
+            mStaticLayer = getStaticLayer(availableWidth, availableHeight);
+        }
+        canvas.drawBitmap(mStaticLayer, 0, 0, null);
 
-        if (availableWidth < w || availableHeight < h) {
-            scaled = true;
-            float scale = Math.min((float) availableWidth / (float) w,
-                                   (float) availableHeight / (float) h);
+        float scale = getDialScale(availableWidth, availableHeight);
+        boolean scaled = scale < 1.0f;
+        if (scaled) {
             canvas.save();
             canvas.scale(scale, scale, x, y);
         }
 
-        if (changed) {
-            dial.setBounds(x - (w / 2), y - (h / 2), x + (w / 2), y + (h / 2));
-        }
-        dial.draw(canvas);
-
-        if (mDotRadius > 0f && mDotPaint != null) {
-            canvas.drawCircle(x, y - (h / 2) + mDotOffset, mDotRadius, mDotPaint);
-        }
-
         drawHand(canvas, mHourHand, x, y, mHour / 12.0f * 360.0f, changed);
         drawHand(canvas, mMinuteHand, x, y, mMinutes / 60.0f * 360.0f, changed);
         if (!mNoSeconds) {
@@ -217,6 +230,41 @@ public class AnalogClock extends View {
         }
     }
 
+    private float getDialScale(int availableWidth, int availableHeight) {
+        if (availableWidth < mDialWidth || availableHeight < mDialHeight) {
+            return Math.min((float) availableWidth / (float) mDialWidth,
+                            (float) availableHeight / (float) mDialHeight);
+        }
+        return 1.0f;
+    }
+
+    /**
+     * Returns the bitmap with the dial and dot drawn for the given view size. Clocks of the same
+     * size and dot style share one bitmap, so a list of world clocks draws its dial only once.
+     */
+    private Bitmap getStaticLayer(int width, int height) {
+        String key = width + "x" + height + ":" + mDotColor + ":" + mDotRadius + ":" + mDotOffset;
+        Bitmap layer = sStaticLayers.get(key);
+        if (layer == null) {
+            layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(layer);
+            int x = width / 2;
+            int y = height / 2;
+            float scale = getDialScale(width, height);
+            canvas.scale(scale, scale, x, y);
+
+            int w = mDialWidth;
+            int h = mDialHeight;
+            mDial.setBounds(x - (w / 2), y - (h / 2), x + (w / 2), y + (h / 2));
+            mDial.draw(canvas);
+            if (mDotRadius > 0f && mDotPaint != null) {
+                canvas.drawCircle(x, y - (h / 2) + mDotOffset, mDotRadius, mDotPaint);
+            }
+            sStaticLayers.put(key, layer);
+        }
+        return layer;
+    }
+
     private void drawHand(Canvas canvas, Drawable hand, int x, int y, float angle,
           boolean changed) {
       canvas.save();
@@ -250,28 +298,17 @@ public class AnalogClock extends View {
         updateContentDescription(mCalendar);
     }
 
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
+    private final ClockTicker.OnTickListener mTickListener = new ClockTicker.OnTickListener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
-                String tz = intent.getStringExtra("time-zone");
-                mCalendar = new Time(TimeZone.getTimeZone(tz).getID());
+        public void onTick(boolean timeZoneChanged) {
+            if (timeZoneChanged) {
+                mCalendar = new Time();
             }
             onTimeChanged();
             invalidate();
         }
     };
 
-    private final Runnable mClockTick = new Runnable () {
-
-        @Override
-        public void run() {
-            onTimeChanged();
-            invalidate();
-            AnalogClock.this.postDelayed(mClockTick, 1000);
-        }
-    };
-
     private void updateContentDescription(Time time) {
         final int flags = DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_24HOUR;
         String contentDescription = DateUtils.formatDateTime(mContext,
@@ -285,7 +322,12 @@ public class AnalogClock extends View {
     }
 
     public void enableSeconds(boolean enable) {
-        mNoSeconds = !enable;
+        if (mNoSeconds == enable) {
+            mNoSeconds = !enable;
+            if (mTicking) {
+                updateTicking();
+            }
+        }
     }
 
 }
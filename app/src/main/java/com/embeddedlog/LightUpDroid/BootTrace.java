@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Trace of the work {@link AlarmInitReceiver} does on boot and time changes while it holds its
+ * wake lock. Each step is timed and counts the database rows read and written, the
+ * AlarmManager calls and the notifications posted while it runs. The last traces are kept in a
+ * ring buffer in the shared preferences, to be shown by {@link BootTraceActivity}.
+ *
+ * The counters are global and only count while a trace is running, so a step also counts work
+ * done by other threads at the same time.
+ */
+public class BootTrace {
+    public static final int ROWS_READ = 0;
+    public static final int ROWS_WRITTEN = 1;
+    public static final int ALARM_MANAGER_CALLS = 2;
+    public static final int NOTIFICATIONS = 3;
+    private static final int COUNTER_COUNT = 4;
+    private static final String[] COUNTER_NAMES = {
+            "rows read", "rows written", "AlarmManager calls", "notifications"
+    };
+
+    // Number of traces kept, the oldest one is dropped when a new one is added
+    private static final int MAX_TRACES = 10;
+    private static final String PREF_BOOT_TRACES = "boot_traces";
+    private static final String TRACE_SEPARATOR = "\n\n";
+
+    private static final AtomicIntegerArray sCounters = new AtomicIntegerArray(COUNTER_COUNT);
+    // Number of traces running, the counters are left alone while there are none
+    private static final AtomicInteger sRunning = new AtomicInteger();
+
+    private final String mAction;
+    private final long mStartTime;
+    private final long mStartRealtime;
+    private final StringBuilder mSteps = new StringBuilder();
+    private final int[] mStepCounters = new int[COUNTER_COUNT];
+    private String mStepName;
+    private long mStepStart;
+
+    private BootTrace(String action) {
+        mAction = action;
+        mStartTime = System.currentTimeMillis();
+        mStartRealtime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Starts a trace, which must be finished with {@link #finish} once the work is done.
+     */
+    public static BootTrace start(String action) {
+        sRunning.incrementAndGet();
+        return new BootTrace(action);
+    }
+
+    /**
+     * Counts one event while a trace is running.
+     */
+    public static void count(int counter) {
+        count(counter, 1);
+    }
+
+    public static void count(int counter, int amount) {
+        if (sRunning.get() > 0) {
+            sCounters.addAndGet(counter, amount);
+        }
+    }
+
+    /**
+     * Starts timing a step, ending the previous one if it was not ended.
+     */
+    public synchronized void beginStep(String name) {
+        if (mStepName != null) {
+            endStep();
+        }
+        mStepName = name;
+        mStepStart = SystemClock.elapsedRealtime();
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            mStepCounters[i] = sCounters.get(i);
+        }
+    }
+
+    public synchronized void endStep() {
+        if (mStepName == null) {
+            return;
+        }
+        mSteps.append("\n  ").append(mStepName).append(": ")
+                .append(SystemClock.elapsedRealtime() - mStepStart).append(" ms");
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            final int count = sCounters.get(i) - mStepCounters[i];
+            if (count > 0) {
+                mSteps.append(", ").append(count).append(' ').append(COUNTER_NAMES[i]);
+            }
+        }
+        mStepName = null;
+    }
+
+    /**
+     * Ends the trace and adds it to the stored ones. The time from the start of the trace to
+     * this call is reported as the wake lock hold time, so it has to be called right before the
+     * wake lock is released. Writes the preferences, so it must not run on the main thread.
+     */
+    public void finish(Context context) {
+        final String trace;
+        synchronized (this) {
+            endStep();
+            final long held = SystemClock.elapsedRealtime() - mStartRealtime;
+            final String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
+                    .format(new Date(mStartTime));
+            trace = mAction + " at " + time + ", wake lock held " + held + " ms" + mSteps;
+        }
+        sRunning.decrementAndGet();
+        Log.i("Boot trace: " + trace);
+
+        synchronized (BootTrace.class) {
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            final String[] stored = getTraces(context);
+            final int kept = Math.min(stored.length, MAX_TRACES - 1);
+            final String[] traces = new String[kept + 1];
+            traces[0] = trace;
+            System.arraycopy(stored, 0, traces, 1, kept);
+            prefs.edit().putString(PREF_BOOT_TRACES, TextUtils.join(TRACE_SEPARATOR, traces))
+                    .commit();
+        }
+    }
+
+    /**
+     * @return the stored traces, newest first.
+     */
+    public static String[] getTraces(Context context) {
+        final String traces = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(PREF_BOOT_TRACES, "");
+        return traces.isEmpty() ? new String[0] : traces.split(TRACE_SEPARATOR);
+    }
+
+    public static void clearTraces(Context context) {
+        synchronized (BootTrace.class) {
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .remove(PREF_BOOT_TRACES).apply();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.app.ActionBar;
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * Hidden diagnostics screen with the wake lock statistics of {@link AlarmAlertWakeLock} and the
+ * last traces of {@link BootTrace}, newest first. It is not in any menu, it is opened by
+ * dialing the secret code handled by {@link SecretCodeReceiver}.
+ */
+public class BootTraceActivity extends Activity {
+    private static final int MENU_ITEM_CLEAR = Menu.FIRST;
+
+    private TextView mTraces;
+
+    /**
+     * Opens the boot traces screen when its secret code is dialed.
+     */
+    public static class SecretCodeReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            context.startActivity(new Intent(context, BootTraceActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK));
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.boot_trace_activity);
+        mTraces = (TextView) findViewById(R.id.boot_traces);
+        ActionBar actionBar = getActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayOptions(ActionBar.DISPLAY_HOME_AS_UP, ActionBar.DISPLAY_HOME_AS_UP);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        updateTraces();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_ITEM_CLEAR, Menu.NONE, R.string.boot_trace_clear);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                finish();
+                return true;
+            case MENU_ITEM_CLEAR:
+                BootTrace.clearTraces(this);
+                AlarmAlertWakeLock.clearStats(this);
+                updateTraces();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    private void updateTraces() {
+        final String[] traces = BootTrace.getTraces(this);
+        final String wakeLocks = AlarmAlertWakeLock.getReport(this);
+        if (traces.length == 0) {
+            mTraces.setText(wakeLocks + "\n\n" + getString(R.string.boot_trace_empty));
+        } else {
+            mTraces.setText(wakeLocks + "\n\n" + TextUtils.join("\n\n", traces));
+        }
+    }
+}
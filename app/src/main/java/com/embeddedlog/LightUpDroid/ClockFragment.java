@@ -17,17 +17,21 @@
 package com.embeddedlog.LightUpDroid;
 
 import android.app.Activity;
+import android.app.LoaderManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.Loader;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.database.ContentObserver;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
@@ -38,14 +42,17 @@ import android.widget.ListView;
 
 import com.embeddedlog.LightUpDroid.alarms.AlarmNotifications;
 import com.embeddedlog.LightUpDroid.widget.TextClock;
+import com.embeddedlog.LightUpDroid.worldclock.Cities;
 import com.embeddedlog.LightUpDroid.worldclock.WorldClockAdapter;
 
 /**
  * Fragment that shows  the clock (analog or digital), the next alarm info and the world clock.
  */
-public class ClockFragment extends DeskClockFragment implements OnSharedPreferenceChangeListener {
+public class ClockFragment extends DeskClockFragment implements OnSharedPreferenceChangeListener,
+        LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final String BUTTONS_HIDDEN_KEY = "buttons_hidden";
+    private static final long QUARTER_HOUR_MILLIS = 15 * DateUtils.MINUTE_IN_MILLIS;
     private final static String TAG = "ClockFragment";
 
     private boolean mButtonsHidden = false;
@@ -57,6 +64,7 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
     private String mDateFormatForAccessibility;
     private String mDefaultClockStyle;
     private String mClockStyle;
+    private long mLastQuarterHour;
 
     private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
             @Override
@@ -65,6 +73,9 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
             boolean changed = action.equals(Intent.ACTION_TIME_CHANGED)
                     || action.equals(Intent.ACTION_TIMEZONE_CHANGED)
                     || action.equals(Intent.ACTION_LOCALE_CHANGED);
+            if (action.equals(Intent.ACTION_TIMEZONE_CHANGED)) {
+                ZoneOffsetCache.clear();
+            }
             if (changed) {
                 Utils.updateDate(mDateFormat, mDateFormatForAccessibility,mClockFrame);
                 if (mAdapter != null) {
@@ -87,7 +98,6 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
                         mAdapter.notifyDataSetChanged();
                     }
                 }
-                Utils.setQuarterHourUpdater(mHandler, mQuarterHourUpdater);
             }
             if (changed || action.equals(AlarmNotifications.SYSTEM_ALARM_CHANGE_ACTION)) {
                 Utils.refreshAlarm(getActivity(), mClockFrame);
@@ -104,16 +114,21 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
         }
     };
 
-    // Thread that runs on every quarter-hour and refreshes the date.
-    private final Runnable mQuarterHourUpdater = new Runnable() {
+    // Refreshes the date on every quarter-hour, sharing the minute tick of the clocks.
+    private final ClockTicker.OnTickListener mQuarterHourUpdater =
+            new ClockTicker.OnTickListener() {
         @Override
-        public void run() {
+        public void onTick(boolean timeZoneChanged) {
+            long quarterHour = System.currentTimeMillis() / QUARTER_HOUR_MILLIS;
+            if (quarterHour == mLastQuarterHour) {
+                return;
+            }
+            mLastQuarterHour = quarterHour;
             // Update the main and world clock dates
             Utils.updateDate(mDateFormat, mDateFormatForAccessibility, mClockFrame);
             if (mAdapter != null) {
                 mAdapter.notifyDataSetChanged();
             }
-            Utils.setQuarterHourUpdater(mHandler, mQuarterHourUpdater);
         }
     };
 
@@ -197,6 +212,8 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
         mList.addFooterView(footerView);
         mAdapter = new WorldClockAdapter(getActivity());
         mList.setAdapter(mAdapter);
+        // The selected cities are loaded from the provider and reloaded when a row changes
+        getLoaderManager().initLoader(0, null, this);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
         mDefaultClockStyle = getActivity().getResources().getString(R.string.default_clock_style);
@@ -211,7 +228,9 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
         mDateFormatForAccessibility = getString(R.string.full_wday_month_day_no_year);
 
         Activity activity = getActivity();
-        Utils.setQuarterHourUpdater(mHandler, mQuarterHourUpdater);
+        mLastQuarterHour = System.currentTimeMillis() / QUARTER_HOUR_MILLIS;
+        ClockTicker.getInstance(activity).register(
+                mQuarterHourUpdater, ClockTicker.GRANULARITY_MINUTE);
         // Besides monitoring when quarter-hour changes, monitor other actions that
         // effect clock time
         IntentFilter filter = new IntentFilter();
@@ -221,7 +240,8 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
         filter.addAction(Intent.ACTION_LOCALE_CHANGED);
         activity.registerReceiver(mIntentReceiver, filter);
 
-        // Resume can invoked after changing the cities list or a change in locale
+        // Resume can invoked after a change in locale or home city settings, changes to the
+        // cities list come through the loader
         if (mAdapter != null) {
             mAdapter.loadCitiesDb(activity);
             mAdapter.reloadData(activity);
@@ -232,12 +252,7 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
         mClockStyle = (clockView == mDigitalClock ?
                 Utils.CLOCK_TYPE_DIGITAL : Utils.CLOCK_TYPE_ANALOG);
 
-        // Center the main clock frame if cities are empty.
-        if (getView().findViewById(R.id.main_clock_left_pane) != null && mAdapter.getCount() == 0) {
-            mList.setVisibility(View.GONE);
-        } else {
-            mList.setVisibility(View.VISIBLE);
-        }
+        updateListVisibility();
         mAdapter.notifyDataSetChanged();
 
         Utils.updateDate(mDateFormat, mDateFormatForAccessibility,mClockFrame);
@@ -252,12 +267,39 @@ public class ClockFragment extends DeskClockFragment implements OnSharedPreferen
     public void onPause() {
         super.onPause();
         mPrefs.unregisterOnSharedPreferenceChangeListener(this);
-        Utils.cancelQuarterHourUpdater(mHandler, mQuarterHourUpdater);
         Activity activity = getActivity();
+        ClockTicker.getInstance(activity).unregister(mQuarterHourUpdater);
         activity.unregisterReceiver(mIntentReceiver);
         activity.getContentResolver().unregisterContentObserver(mAlarmObserver);
     }
 
+    private void updateListVisibility() {
+        // Center the main clock frame if cities are empty.
+        if (getView().findViewById(R.id.main_clock_left_pane) != null && mAdapter.getCount() == 0) {
+            mList.setVisibility(View.GONE);
+        } else {
+            mList.setVisibility(View.VISIBLE);
+        }
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return Cities.getCitiesCursorLoader(getActivity());
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.setSelectedCities(data);
+        if (getView() != null) {
+            updateListVisibility();
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.setSelectedCities(null);
+    }
+
     @Override
     public void onSaveInstanceState (Bundle outState) {
         outState.putBoolean(BUTTONS_HIDDEN_KEY, mButtonsHidden);
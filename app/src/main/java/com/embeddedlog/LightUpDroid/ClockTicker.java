@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * Process wide time tick shared by all the clock views.
+ *
+ * Listeners subscribe while they are visible, either to every second or to every minute, and a
+ * single runnable on the main thread wakes up at the next boundary any of them needs. Listeners
+ * sharing a boundary are all updated by the same wake-up, so a list of minute clocks costs one
+ * wake-up per minute however many rows it shows. Nothing is scheduled, and no receiver is
+ * registered, while there are no listeners.
+ *
+ * All the methods must be called from the main thread, and listeners are called on it.
+ */
+public class ClockTicker {
+    public static final int GRANULARITY_SECOND = 0;
+    public static final int GRANULARITY_MINUTE = 1;
+
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+
+    public interface OnTickListener {
+        /**
+         * Called at each boundary of the subscribed granularity, and straight away when the
+         * system time or time zone is changed.
+         *
+         * @param timeZoneChanged true if the default time zone has just changed
+         */
+        void onTick(boolean timeZoneChanged);
+    }
+
+    private static ClockTicker sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<OnTickListener> mSecondListeners = new ArrayList<OnTickListener>();
+    private final ArrayList<OnTickListener> mMinuteListeners = new ArrayList<OnTickListener>();
+    // Copy of the listeners being called, so listeners can unsubscribe from onTick
+    private final ArrayList<OnTickListener> mDispatching = new ArrayList<OnTickListener>();
+    private long mLastMinute;
+    private boolean mReceiverRegistered;
+
+    public static ClockTicker getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ClockTicker(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ClockTicker(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Subscribes the listener to the given granularity, replacing any previous subscription.
+     */
+    public void register(OnTickListener listener, int granularity) {
+        mSecondListeners.remove(listener);
+        mMinuteListeners.remove(listener);
+        if (granularity == GRANULARITY_SECOND) {
+            mSecondListeners.add(listener);
+        } else {
+            mMinuteListeners.add(listener);
+        }
+        if (!mReceiverRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            mContext.registerReceiver(mTimeChangedReceiver, filter, null, mHandler);
+            mReceiverRegistered = true;
+            mLastMinute = System.currentTimeMillis() / MINUTE;
+        }
+        schedule();
+    }
+
+    public void unregister(OnTickListener listener) {
+        if (!mSecondListeners.remove(listener) && !mMinuteListeners.remove(listener)) {
+            return;
+        }
+        if (mSecondListeners.isEmpty() && mMinuteListeners.isEmpty()) {
+            mHandler.removeCallbacks(mTick);
+            mContext.unregisterReceiver(mTimeChangedReceiver);
+            mReceiverRegistered = false;
+        } else {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        mHandler.removeCallbacks(mTick);
+        if (mSecondListeners.isEmpty() && mMinuteListeners.isEmpty()) {
+            return;
+        }
+        long period = mSecondListeners.isEmpty() ? MINUTE : SECOND;
+        long now = System.currentTimeMillis();
+        mHandler.postDelayed(mTick, period - now % period);
+    }
+
+    private void dispatch(boolean all, boolean timeZoneChanged) {
+        long minute = System.currentTimeMillis() / MINUTE;
+        mDispatching.clear();
+        mDispatching.addAll(mSecondListeners);
+        if (all || minute != mLastMinute) {
+            mDispatching.addAll(mMinuteListeners);
+        }
+        mLastMinute = minute;
+        for (int i = 0; i < mDispatching.size(); i++) {
+            mDispatching.get(i).onTick(timeZoneChanged);
+        }
+        mDispatching.clear();
+        schedule();
+    }
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            dispatch(false, false);
+        }
+    };
+
+    private final BroadcastReceiver mTimeChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                ZoneOffsetCache.clear();
+                dispatch(true, true);
+            } else {
+                dispatch(true, false);
+            }
+        }
+    };
+}
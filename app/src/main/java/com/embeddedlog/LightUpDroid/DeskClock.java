@@ -56,6 +56,7 @@ import com.embeddedlog.LightUpDroid.timer.TimerFragment;
 import com.embeddedlog.LightUpDroid.timer.TimerObj;
 import com.embeddedlog.LightUpDroid.timer.Timers;
 import com.embeddedlog.LightUpDroid.worldclock.CitiesActivity;
+import com.embeddedlog.LightUpDroid.worldclock.CityHoursActivity;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -325,12 +326,15 @@ public class DeskClock extends Activity implements LabelDialogFragment.TimerLabe
             Utils.prepareHelpMenuItem(this, help);
         }
 
-        // Hide "lights out" if not in Clock tab.
+        // Hide "lights out" and the working hours overview if not in Clock tab.
         MenuItem nightMode = menu.findItem(R.id.menu_item_night_mode);
+        MenuItem cityHours = menu.findItem(R.id.menu_item_city_hours);
         if (mActionBar.getSelectedNavigationIndex() == CLOCK_TAB_INDEX) {
             nightMode.setVisible(true);
+            cityHours.setVisible(true);
         } else {
             nightMode.setVisible(false);
+            cityHours.setVisible(false);
         }
 
         // Hide "reset alarm" and "sync/push with LightUpPi" if not in alarm tab
@@ -338,12 +342,21 @@ public class DeskClock extends Activity implements LabelDialogFragment.TimerLabe
         MenuItem resetAlarms = menu.findItem(R.id.menu_item_reset_db);
         MenuItem pushPiAlarms = menu.findItem(R.id.menu_item_push_to_lightuppi);
         MenuItem pushPhoneAlarms = menu.findItem(R.id.menu_item_push_to_phone);
+        MenuItem checkAlarms = menu.findItem(R.id.menu_item_check_alarms);
+        MenuItem exportAlarms = menu.findItem(R.id.menu_item_export_alarms);
+        MenuItem importAlarms = menu.findItem(R.id.menu_item_import_alarms);
         if (mActionBar.getSelectedNavigationIndex() == ALARM_TAB_INDEX) {
+            checkAlarms.setVisible(true);
+            exportAlarms.setVisible(true);
+            importAlarms.setVisible(true);
             syncLightuppi.setVisible(true);
             resetAlarms.setVisible(true);
             pushPiAlarms.setVisible(true);
             pushPhoneAlarms.setVisible(true);
         } else {
+            checkAlarms.setVisible(false);
+            exportAlarms.setVisible(false);
+            importAlarms.setVisible(false);
             syncLightuppi.setVisible(false);
             resetAlarms.setVisible(false);
             pushPiAlarms.setVisible(false);
@@ -365,6 +378,9 @@ public class DeskClock extends Activity implements LabelDialogFragment.TimerLabe
             case R.id.menu_item_settings:
                 startActivity(new Intent(DeskClock.this, SettingsActivity.class));
                 return true;
+            case R.id.menu_item_city_hours:
+                startActivity(new Intent(DeskClock.this, CityHoursActivity.class));
+                return true;
             case R.id.menu_item_help:
                 Intent i = item.getIntent();
                 if (i != null) {
@@ -388,6 +404,23 @@ public class DeskClock extends Activity implements LabelDialogFragment.TimerLabe
                 String correctString = "android:switcher:" + mViewPager.getId() + ":" + ALARM_TAB_INDEX;
                 new LightUpPiSync(this, correctString).syncPushToPhone();
                 return true;
+            case R.id.menu_item_check_alarms:
+            case R.id.menu_item_export_alarms:
+            case R.id.menu_item_import_alarms:
+                AlarmClockFragment alarmFragment = (AlarmClockFragment) getFragmentManager()
+                        .findFragmentByTag(
+                                "android:switcher:" + mViewPager.getId() + ":" + ALARM_TAB_INDEX);
+                if (alarmFragment == null) {
+                    return true;
+                }
+                if (item.getItemId() == R.id.menu_item_check_alarms) {
+                    alarmFragment.showAlarmCheck();
+                } else if (item.getItemId() == R.id.menu_item_export_alarms) {
+                    alarmFragment.exportAlarms();
+                } else {
+                    alarmFragment.importAlarms();
+                }
+                return true;
             case R.id.menu_item_reset_db:
                 // Delete the database
                 ContentResolver cr = this.getContentResolver();
@@ -32,6 +32,7 @@ import com.embeddedlog.LightUpDroid.provider.AlarmInstance;
 import com.embeddedlog.LightUpDroid.provider.DaysOfWeek;
 import com.embeddedlog.LightUpDroid.timer.TimerFragment;
 import com.embeddedlog.LightUpDroid.timer.TimerObj;
+import com.embeddedlog.LightUpDroid.timer.TimerPresets;
 import com.embeddedlog.LightUpDroid.timer.Timers;
 
 import java.util.ArrayList;
@@ -68,6 +69,8 @@ public class HandleApiCalls extends Activity {
                     handleShowAlarms();
                 } else if (ACTION_SET_TIMER.equals(intent.getAction())) {
                     handleSetTimer(intent);
+                } else if (Timers.ACTION_START_TIMER_GROUP.equals(intent.getAction())) {
+                    handleStartTimerGroup(intent);
                 }
             }
         } finally {
@@ -208,6 +211,68 @@ public class HandleApiCalls extends Activity {
         }
     }
 
+    /**
+     * Processes the START_TIMER_GROUP intent. The timers come either from the stored preset named
+     * in EXTRA_PRESET_NAME or from the EXTRA_LENGTHS (seconds) and optional EXTRA_LABELS arrays,
+     * started together, in sequence (EXTRA_SEQUENCE) or as an interval program (EXTRA_ROUNDS).
+     * @param intent
+     */
+    private void handleStartTimerGroup(Intent intent) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        final TimerPresets.Preset preset;
+        if (intent.hasExtra(Timers.EXTRA_PRESET_NAME)) {
+            final String name = intent.getStringExtra(Timers.EXTRA_PRESET_NAME);
+            preset = TimerPresets.getPreset(prefs, name);
+            if (preset == null) {
+                Log.i("Unknown timer preset requested: " + name);
+                return;
+            }
+        } else {
+            final int[] seconds = intent.getIntArrayExtra(Timers.EXTRA_LENGTHS);
+            if (seconds == null || seconds.length == 0) {
+                Log.i("Timer group requested without lengths");
+                return;
+            }
+            final String[] extraLabels = intent.getStringArrayExtra(Timers.EXTRA_LABELS);
+            final long[] lengths = new long[seconds.length];
+            final String[] labels = new String[seconds.length];
+            for (int i = 0; i < seconds.length; i++) {
+                lengths[i] = 1000l * seconds[i];
+                labels[i] = (extraLabels != null && i < extraLabels.length
+                        && extraLabels[i] != null) ? extraLabels[i] : "";
+            }
+            // Asking for rounds runs the lengths as an interval program in a single timer
+            final int rounds = intent.getIntExtra(Timers.EXTRA_ROUNDS, 0);
+            final int type;
+            if (rounds > 0) {
+                type = TimerPresets.TYPE_PROGRAM;
+            } else if (intent.getBooleanExtra(Timers.EXTRA_SEQUENCE, false)) {
+                type = TimerPresets.TYPE_SEQUENCE;
+            } else {
+                type = TimerPresets.TYPE_GROUP;
+            }
+            preset = new TimerPresets.Preset(null, type, lengths, labels, rounds);
+        }
+
+        for (long length : preset.mLengths) {
+            if (length < TIMER_MIN_LENGTH || length > TIMER_MAX_LENGTH) {
+                Log.i("Invalid timer length requested in group: " + length);
+                return;
+            }
+        }
+
+        final boolean skipUi = intent.getBooleanExtra(EXTRA_SKIP_UI, false);
+        // Timers set without presenting UI to the user will be deleted after use
+        Timers.startTimers(this, prefs, preset.createTimers(Utils.getTimeNow(), skipUi));
+
+        if (skipUi) {
+            Utils.showInUseNotifications(this);
+        } else {
+            startActivity(new Intent(this, DeskClock.class)
+                    .putExtra(DeskClock.SELECT_TAB_INTENT_EXTRA, DeskClock.TIMER_TAB_INDEX));
+        }
+    }
+
     private void setupInstance(AlarmInstance instance, boolean skipUi) {
         instance = AlarmInstance.addInstance(this.getContentResolver(), instance);
         AlarmStateManager.registerInstance(this, instance, true);
@@ -41,6 +41,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.LinkedList;
 import java.util.List;
@@ -133,7 +134,7 @@ public class LightUpPiSync {
                     }
                 }
                 // This is only executed if a match between server and local alarm was not found
-                mAlarmFragment.asyncDeleteAlarm(localAlarm, null, true);
+                mAlarmFragment.asyncDeleteAlarm(localAlarm, true);
             }
         }
         // The rest of the serverAlarms are new to the phone and present in the server
@@ -214,33 +215,37 @@ public class LightUpPiSync {
     public void editServerAlarm(Alarm alarm) {
         // First check if alarm has an associated LightUpPi server ID
         if (alarm.lightuppiId != Alarm.INVALID_ID) {
-            Uri.Builder editAlarmUri= getServerUriBuilder();
-            editAlarmUri.appendPath("editAlarm")
-                    .appendQueryParameter("id", Long.toString(alarm.lightuppiId))
-                    .appendQueryParameter("hour", Integer.toString(alarm.hour))
-                    .appendQueryParameter("minute", Integer.toString(alarm.minutes))
-                    .appendQueryParameter("monday",
-                            Boolean.toString(alarm.daysOfWeek.isMondayEnabled()))
-                    .appendQueryParameter("tuesday",
-                            Boolean.toString(alarm.daysOfWeek.isTuesdayEnabled()))
-                    .appendQueryParameter("wednesday",
-                            Boolean.toString(alarm.daysOfWeek.isWednesdayEnabled()))
-                    .appendQueryParameter("thursday",
-                            Boolean.toString(alarm.daysOfWeek.isThursdayEnabled()))
-                    .appendQueryParameter("friday",
-                            Boolean.toString(alarm.daysOfWeek.isFridayEnabled()))
-                    .appendQueryParameter("saturday",
-                            Boolean.toString(alarm.daysOfWeek.isSaturdayEnabled()))
-                    .appendQueryParameter("sunday",
-                            Boolean.toString(alarm.daysOfWeek.isSundayEnabled()))
-                    .appendQueryParameter("enabled", Boolean.toString(alarm.enabled))
-                    .appendQueryParameter("label", alarm.label);
-            getJsonHandler(editAlarmUri, TaskType.EDIT_ALARM, alarm.id);
+            getJsonHandler(getEditAlarmUri(alarm), TaskType.EDIT_ALARM, alarm.id);
         } else {
             launchToast(R.string.lightuppi_no_server_ID);
         }
     }
 
+    private Uri.Builder getEditAlarmUri(Alarm alarm) {
+        Uri.Builder editAlarmUri= getServerUriBuilder();
+        editAlarmUri.appendPath("editAlarm")
+                .appendQueryParameter("id", Long.toString(alarm.lightuppiId))
+                .appendQueryParameter("hour", Integer.toString(alarm.hour))
+                .appendQueryParameter("minute", Integer.toString(alarm.minutes))
+                .appendQueryParameter("monday",
+                        Boolean.toString(alarm.daysOfWeek.isMondayEnabled()))
+                .appendQueryParameter("tuesday",
+                        Boolean.toString(alarm.daysOfWeek.isTuesdayEnabled()))
+                .appendQueryParameter("wednesday",
+                        Boolean.toString(alarm.daysOfWeek.isWednesdayEnabled()))
+                .appendQueryParameter("thursday",
+                        Boolean.toString(alarm.daysOfWeek.isThursdayEnabled()))
+                .appendQueryParameter("friday",
+                        Boolean.toString(alarm.daysOfWeek.isFridayEnabled()))
+                .appendQueryParameter("saturday",
+                        Boolean.toString(alarm.daysOfWeek.isSaturdayEnabled()))
+                .appendQueryParameter("sunday",
+                        Boolean.toString(alarm.daysOfWeek.isSundayEnabled()))
+                .appendQueryParameter("enabled", Boolean.toString(alarm.enabled))
+                .appendQueryParameter("label", alarm.label);
+        return editAlarmUri;
+    }
+
     private void editServerAlarmCallback(JSONObject jResult) {
         boolean editSuccess;
         long lightuppiId;
@@ -280,15 +285,56 @@ public class LightUpPiSync {
     public void deleteServerAlarm(Alarm alarm) {
         // First check if alarm has an associated LightUpPi server ID
         if (alarm.lightuppiId != Alarm.INVALID_ID) {
-            Uri.Builder deleteAlarmUri= getServerUriBuilder();
-            deleteAlarmUri.appendPath("deleteAlarm")
-                    .appendQueryParameter("id", Long.toString(alarm.lightuppiId));
-            getJsonHandler(deleteAlarmUri, TaskType.DELETE_ALARM, alarm.id);
+            getJsonHandler(getDeleteAlarmUri(alarm), TaskType.DELETE_ALARM, alarm.id);
         } else {
             launchToast(R.string.lightuppi_no_server_ID);
         }
     }
 
+    private Uri.Builder getDeleteAlarmUri(Alarm alarm) {
+        Uri.Builder deleteAlarmUri= getServerUriBuilder();
+        deleteAlarmUri.appendPath("deleteAlarm")
+                .appendQueryParameter("id", Long.toString(alarm.lightuppiId));
+        return deleteAlarmUri;
+    }
+
+    /**
+     * Edits several alarms in the LightUpPi server in one background pass, with a single
+     * progress dialog and result toast. The new server timestamps are stored in one batch.
+     * Alarms without a LightUpPi ID are skipped.
+     *
+     * @param alarms Alarms to edit.
+     */
+    public void editServerAlarms(List<Alarm> alarms) {
+        List<Alarm> serverAlarms = getServerAlarms(alarms);
+        if (serverAlarms.isEmpty()) {
+            return;
+        }
+        if (isConnected()) {
+            new BulkAlarmsTask(TaskType.EDIT_ALARM, serverAlarms).execute();
+        } else {
+            launchToast(R.string.lightuppi_no_connection);
+        }
+    }
+
+    /**
+     * Deletes several alarms from the LightUpPi server in one background pass, with a single
+     * progress dialog and result toast. Alarms without a LightUpPi ID are skipped.
+     *
+     * @param alarms Alarms to delete.
+     */
+    public void deleteServerAlarms(List<Alarm> alarms) {
+        List<Alarm> serverAlarms = getServerAlarms(alarms);
+        if (serverAlarms.isEmpty()) {
+            return;
+        }
+        if (isConnected()) {
+            new BulkAlarmsTask(TaskType.DELETE_ALARM, serverAlarms).execute();
+        } else {
+            launchToast(R.string.lightuppi_no_connection);
+        }
+    }
+
     private void deleteServerAlarmCallback(JSONObject jResult) {
         boolean deleteSuccess;
         try {
@@ -337,10 +383,7 @@ public class LightUpPiSync {
      */
     private void getJsonHandler(Uri.Builder uriBuilder, TaskType taskType, long alarmId) {
         // First check if there is network connectivity
-        ConnectivityManager connMgr = (ConnectivityManager)
-                mActivityContext.getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
-        if (networkInfo != null && networkInfo.isConnected()) {
+        if (isConnected()) {
             String urlString = uriBuilder.build().toString();
             new DownloadJsonTask(taskType, alarmId).execute(urlString);
         } else {
@@ -442,62 +485,142 @@ public class LightUpPiSync {
             // Close the progress dialog if applicable, cases need to be the same as onPreExecute
             progress.dismiss();
         }
+    }
 
-        /**
-         * Given a URL, establishes an HttpUrlConnection and retrieves the content as a
-         * InputStream, which it returns as a string.
-         *
-         * @param urlStr String array containing as the first argument the URL to retrieve data.
-         * @return String with the URL data
-         * @throws IOException
-         */
-        private String getJsonFrom(String urlStr) throws IOException {
-            InputStream is = null;
-            try {
-                URL url = new URL(urlStr);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setReadTimeout(3000);    /* milliseconds */
-                conn.setConnectTimeout(5000); /* milliseconds */
-                conn.setRequestMethod("GET");
-                conn.setDoInput(true);
-
-                // Starts the query
-                conn.connect();
-                int response = conn.getResponseCode();
-                if (response == 500) {
-                    launchToast(R.string.lightuppi_response_500);
-                } else if (response != 200) {
-                    launchToast(String.format(
-                            mActivityContext.getString(R.string.lightuppi_response_not_200),
-                            response));
-                }
+    /**
+     * Given a URL, establishes an HttpUrlConnection and retrieves the content as a
+     * InputStream, which it returns as a string.
+     *
+     * @param urlStr String array containing as the first argument the URL to retrieve data.
+     * @return String with the URL data
+     * @throws IOException
+     */
+    private String getJsonFrom(String urlStr) throws IOException {
+        InputStream is = null;
+        try {
+            URL url = new URL(urlStr);
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setReadTimeout(3000);    /* milliseconds */
+            conn.setConnectTimeout(5000); /* milliseconds */
+            conn.setRequestMethod("GET");
+            conn.setDoInput(true);
+
+            // Starts the query
+            conn.connect();
+            int response = conn.getResponseCode();
+            if (response == 500) {
+                launchToast(R.string.lightuppi_response_500);
+            } else if (response != 200) {
+                launchToast(String.format(
+                        mActivityContext.getString(R.string.lightuppi_response_not_200),
+                        response));
+            }
+
+            // Get and convert the InputStream into a string
+            is = conn.getInputStream();
+            return stringFromStream(is);
+        } finally {
+            // Ensure InputStream is closed after the app is finished using it.
+            if (is != null) is.close();
+        }
+    }
 
-                // Get and convert the InputStream into a string
-                is = conn.getInputStream();
-                return stringFromStream(is);
-            } finally {
-                // Ensure InputStream is closed after the app is finished using it.
-                if (is != null) is.close();
+    /**
+     * Converts the input stream from the web content into an String.
+     *
+     * @param stream InputStream to be converted into String.
+     * @return String with the stream parameter data.
+     * @throws IOException
+     */
+    private String stringFromStream(InputStream stream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+        StringBuilder out = new StringBuilder();
+        String newLine = System.getProperty("line.separator");
+        String line;
+        while ((line = reader.readLine()) != null) {
+            out.append(line);
+            out.append(newLine);
+        }
+        return out.toString();
+    }
+
+    /** @return copies of the alarms that have a LightUpPi ID. */
+    private List<Alarm> getServerAlarms(List<Alarm> alarms) {
+        List<Alarm> serverAlarms = new ArrayList<Alarm>(alarms.size());
+        for (Alarm alarm : alarms) {
+            if (alarm.lightuppiId != Alarm.INVALID_ID) {
+                serverAlarms.add(new Alarm(alarm));
             }
         }
+        return serverAlarms;
+    }
+
+    private boolean isConnected() {
+        ConnectivityManager connMgr = (ConnectivityManager)
+                mActivityContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * Sends the edit or delete requests of several alarms one after the other from a single
+     * background task, as the LightUpPi server takes one alarm per request.
+     */
+    private class BulkAlarmsTask extends AsyncTask<Void, Void, Integer> {
+        private ProgressDialog progress;
+        private final TaskType mTaskType;
+        private final List<Alarm> mAlarms;
+
+        BulkAlarmsTask(TaskType taskType, List<Alarm> alarms) {
+            mTaskType = taskType;
+            mAlarms = alarms;
+        }
+
+        @Override
+        protected void onPreExecute() {
+            progress = ProgressDialog.show(mActivityContext, null,
+                    mActivityContext.getString(R.string.lightuppi_syncing_message), true);
+        }
 
         /**
-         * Converts the input stream from the web content into an String.
-         *
-         * @param stream InputStream to be converted into String.
-         * @return String with the stream parameter data.
-         * @throws IOException
+         * @return the number of alarms the server reported as done.
          */
-        private String stringFromStream(InputStream stream) throws IOException {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-            StringBuilder out = new StringBuilder();
-            String newLine = System.getProperty("line.separator");
-            String line;
-            while ((line = reader.readLine()) != null) {
-                out.append(line);
-                out.append(newLine);
+        @Override
+        protected Integer doInBackground(Void... parameters) {
+            List<Alarm> edited = new ArrayList<Alarm>(mAlarms.size());
+            for (Alarm alarm : mAlarms) {
+                Uri.Builder uri = mTaskType == TaskType.EDIT_ALARM
+                        ? getEditAlarmUri(alarm) : getDeleteAlarmUri(alarm);
+                try {
+                    JSONObject jResult = new JSONObject(getJsonFrom(uri.build().toString()));
+                    if (!jResult.getBoolean("success")) {
+                        continue;
+                    }
+                    if (mTaskType == TaskType.EDIT_ALARM) {
+                        alarm.timestamp = jResult.getLong("timestamp");
+                    }
+                    edited.add(alarm);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG + "IOException: " + e.toString());
+                } catch (JSONException e) {
+                    Log.w(LOG_TAG + "JSONException: " + e.toString());
+                }
             }
-            return out.toString();
+            if (mTaskType == TaskType.EDIT_ALARM && !edited.isEmpty()) {
+                // Only the server timestamps are stored, the alarms may have changed on the phone
+                // while the requests were sent, like a one time alarm disabled after firing
+                Alarm.updateTimestamps(mActivityContext.getContentResolver(), edited);
+            }
+            return edited.size();
+        }
+
+        @Override
+        protected void onPostExecute(Integer done) {
+            progress.dismiss();
+            launchToast(mActivityContext.getResources().getQuantityString(
+                    mTaskType == TaskType.EDIT_ALARM ? R.plurals.lightuppi_bulk_edit_result
+                            : R.plurals.lightuppi_bulk_delete_result,
+                    mAlarms.size(), done, mAlarms.size()));
         }
     }
 
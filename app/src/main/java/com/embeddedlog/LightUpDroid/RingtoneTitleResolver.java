@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Resolves the titles of ringtones for the alarm list without blocking the main thread.
+ *
+ * Looking up a title creates a media player, so lookups are queued and done in batches on a
+ * background thread, and the resolved titles are kept in a preferences file that outlives the
+ * process. A title read from that file is returned straight away, and is looked up again once
+ * per process in case the ringtone has been renamed or removed since.
+ *
+ * All the methods must be called from the main thread, and listeners are called on it.
+ */
+public class RingtoneTitleResolver {
+    private static final String PREFS_NAME = "ringtone_titles";
+
+    public interface OnTitlesResolvedListener {
+        /**
+         * Called on the main thread after a batch of lookups has finished.
+         */
+        void onTitlesResolved();
+    }
+
+    private static RingtoneTitleResolver sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Handler mWorkerHandler;
+    // Key: ringtone uri, value: ringtone title, or an empty string if the ringtone was not found
+    private final HashMap<String, String> mTitles = new HashMap<String, String>();
+    // Uris looked up, or waiting to be looked up, by this process
+    private final HashSet<String> mRequested = new HashSet<String>();
+    // Uris waiting for the next batch, guarded by itself
+    private final ArrayList<String> mPending = new ArrayList<String>();
+    private final ArrayList<OnTitlesResolvedListener> mListeners =
+            new ArrayList<OnTitlesResolvedListener>();
+
+    public static RingtoneTitleResolver getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RingtoneTitleResolver(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private RingtoneTitleResolver(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (entry.getValue() instanceof String) {
+                mTitles.put(entry.getKey(), (String) entry.getValue());
+            }
+        }
+    }
+
+    public void addListener(OnTitlesResolvedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(OnTitlesResolvedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns the last known title of the ringtone, and queues a lookup if it has not been
+     * looked up by this process yet.
+     *
+     * @param uri The uri of the ringtone.
+     * @return The ringtone title, an empty string if no matching ringtone was found, or
+     *         {@literal null} if the title is not known yet.
+     */
+    public String getTitle(Uri uri) {
+        final String key = uri.toString();
+        if (mRequested.add(key)) {
+            final boolean startBatch;
+            synchronized (mPending) {
+                startBatch = mPending.isEmpty();
+                mPending.add(key);
+            }
+            if (startBatch) {
+                getWorkerHandler().post(mResolveBatch);
+            }
+        }
+        return mTitles.get(key);
+    }
+
+    /**
+     * Forgets the title of the ringtone, so it is looked up again the next time it is needed.
+     */
+    public void invalidate(Uri uri) {
+        final String key = uri.toString();
+        mTitles.remove(key);
+        mRequested.remove(key);
+    }
+
+    private Handler getWorkerHandler() {
+        if (mWorkerHandler == null) {
+            HandlerThread thread = new HandlerThread("RingtoneTitleResolver");
+            thread.start();
+            mWorkerHandler = new Handler(thread.getLooper());
+        }
+        return mWorkerHandler;
+    }
+
+    /**
+     * Looks up all the queued uris on the worker thread, then stores and publishes the titles
+     * found in one go.
+     */
+    private final Runnable mResolveBatch = new Runnable() {
+        @Override
+        public void run() {
+            final ArrayList<String> batch;
+            synchronized (mPending) {
+                batch = new ArrayList<String>(mPending);
+                mPending.clear();
+            }
+            final HashMap<String, String> resolved = new HashMap<String, String>(batch.size());
+            SharedPreferences.Editor editor = mPrefs.edit();
+            for (String key : batch) {
+                String title = null;
+                try {
+                    // This is slow because a media player is created during Ringtone creation.
+                    Ringtone ringtone = RingtoneManager.getRingtone(mContext, Uri.parse(key));
+                    if (ringtone != null) {
+                        title = ringtone.getTitle(mContext);
+                    }
+                } catch (RuntimeException e) {
+                    Log.w("Could not get the title of ringtone " + key + ": " + e);
+                }
+                if (title == null) {
+                    title = "";
+                }
+                resolved.put(key, title);
+                editor.putString(key, title);
+            }
+            editor.apply();
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Map.Entry<String, String> entry : resolved.entrySet()) {
+                        // Skip the uris invalidated while they were being looked up
+                        if (mRequested.contains(entry.getKey())) {
+                            mTitles.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    for (int i = mListeners.size() - 1; i >= 0; i--) {
+                        mListeners.get(i).onTitlesResolved();
+                    }
+                }
+            });
+        }
+    };
+}
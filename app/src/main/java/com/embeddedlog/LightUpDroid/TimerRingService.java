@@ -60,7 +60,7 @@ public class TimerRingService extends Service implements AudioManager.OnAudioFoc
                 (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
         mTelephonyManager.listen(
                 mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
-        AlarmAlertWakeLock.acquireScreenCpuWakeLock(this);
+        AlarmAlertWakeLock.acquireScreenCpuWakeLock(this, AlarmAlertWakeLock.TIMER_RING_SERVICE);
     }
 
     @Override
@@ -68,7 +68,7 @@ public class TimerRingService extends Service implements AudioManager.OnAudioFoc
         stop();
         // Stop listening for incoming calls.
         mTelephonyManager.listen(mPhoneStateListener, 0);
-        AlarmAlertWakeLock.releaseCpuLock();
+        AlarmAlertWakeLock.releaseCpuLock(AlarmAlertWakeLock.TIMER_RING_SERVICE);
     }
 
     @Override
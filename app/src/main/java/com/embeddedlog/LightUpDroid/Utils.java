@@ -50,13 +50,12 @@ import android.view.animation.AccelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.TextView;
 
-import com.embeddedlog.LightUpDroid.stopwatch.Stopwatches;
+import com.embeddedlog.LightUpDroid.stopwatch.StopwatchState;
 import com.embeddedlog.LightUpDroid.timer.Timers;
 import com.embeddedlog.LightUpDroid.widget.TextClock;
 import com.embeddedlog.LightUpDroid.worldclock.CityObj;
 
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -192,18 +191,8 @@ public class Utils {
     /**
      * Clears the persistent data of stopwatch (start time, state, laps, etc...).
      */
-    public static void clearSwSharedPref(SharedPreferences prefs) {
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.remove (Stopwatches.PREF_START_TIME);
-        editor.remove (Stopwatches.PREF_ACCUM_TIME);
-        editor.remove (Stopwatches.PREF_STATE);
-        int lapNum = prefs.getInt(Stopwatches.PREF_LAP_NUM, Stopwatches.STOPWATCH_RESET);
-        for (int i = 0; i < lapNum; i++) {
-            String key = Stopwatches.PREF_LAP_TIME + Integer.toString(i);
-            editor.remove(key);
-        }
-        editor.remove(Stopwatches.PREF_LAP_NUM);
-        editor.apply();
+    public static void clearSwSharedPref(Context context) {
+        StopwatchState.getInstance(context).reset();
     }
 
     /**
@@ -347,21 +336,6 @@ public class Utils {
         }
     }
 
-    /** Setup to find out when the quarter-hour changes (e.g. Kathmandu is GMT+5:45) **/
-    public static long getAlarmOnQuarterHour() {
-        Calendar nextQuarter = Calendar.getInstance();
-        //  Set 1 second to ensure quarter-hour threshold passed.
-        nextQuarter.set(Calendar.SECOND, 1);
-        int minute = nextQuarter.get(Calendar.MINUTE);
-        nextQuarter.add(Calendar.MINUTE, 15 - (minute % 15));
-        long alarmOnQuarterHour = nextQuarter.getTimeInMillis();
-        if (0 >= (alarmOnQuarterHour - System.currentTimeMillis())
-                || (alarmOnQuarterHour - System.currentTimeMillis()) > 901000) {
-            Log.wtf("quarterly alarm calculation error");
-        }
-        return alarmOnQuarterHour;
-    }
-
     // Setup a thread that starts at midnight plus one second. The extra second is added to ensure
     // the date has changed.
     public static void setMidnightUpdater(Handler handler, Runnable runnable) {
@@ -385,30 +359,6 @@ public class Utils {
         handler.removeCallbacks(runnable);
     }
 
-    // Setup a thread that starts at the quarter-hour plus one second. The extra second is added to
-    // ensure dates have changed.
-    public static void setQuarterHourUpdater(Handler handler, Runnable runnable) {
-        String timezone = TimeZone.getDefault().getID();
-        if (handler == null || runnable == null || timezone == null) {
-            return;
-        }
-        long runInMillis = getAlarmOnQuarterHour() - System.currentTimeMillis();
-        // Ensure the delay is at least one second.
-        if (runInMillis < 1000) {
-            runInMillis = 1000;
-        }
-        handler.removeCallbacks(runnable);
-        handler.postDelayed(runnable, runInMillis);
-    }
-
-    // Stop the quarter-hour update thread
-    public static void cancelQuarterHourUpdater(Handler handler, Runnable runnable) {
-        if (handler == null || runnable == null) {
-            return;
-        }
-        handler.removeCallbacks(runnable);
-    }
-
     /**
      * For screensavers to set whether the digital or analog clock should be displayed.
      * Returns the view to be displayed.
@@ -544,7 +494,7 @@ public class Utils {
             Log.e("City lists sizes are not the same, truncating");
         }
         CityObj[] tempList = new CityObj[minLength];
-        for (int i = 0; i < cities.length; i++) {
+        for (int i = 0; i < minLength; i++) {
             tempList[i] = new CityObj(cities[i], timezones[i], ids[i]);
         }
         return tempList;
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid;
+
+import android.text.format.DateUtils;
+
+import java.util.HashMap;
+import java.util.TimeZone;
+
+/**
+ * Process wide cache of TimeZone instances and their current offset from GMT.
+ *
+ * Each zone keeps its offset together with the interval in which it is valid, bounded by the
+ * previous and next offset transitions. Within that interval an offset costs a hash lookup, the
+ * zone rules are only consulted again once a transition has passed. Everything is dropped when
+ * the system time zone data may have changed, see {@link #clear()}.
+ *
+ * The returned TimeZone instances are shared and must not be modified.
+ */
+public class ZoneOffsetCache {
+    // Transitions are searched for up to this far, zones without one are checked again then
+    private static final long SEARCH_HORIZON = 400 * DateUtils.DAY_IN_MILLIS;
+    private static final long SEARCH_STEP = 7 * DateUtils.DAY_IN_MILLIS;
+
+    private static class Entry {
+        TimeZone mZone;
+        int mOffset;
+        long mValidFrom;
+        long mValidUntil;
+    }
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    /**
+     * @return the shared TimeZone for the id, unknown ids give GMT like TimeZone.getTimeZone.
+     */
+    public static synchronized TimeZone getTimeZone(String id) {
+        return getEntry(id).mZone;
+    }
+
+    /**
+     * @return the offset from GMT of the zone at the given time, daylight time included.
+     */
+    public static synchronized int getOffset(String id, long time) {
+        Entry entry = getEntry(id);
+        if (time < entry.mValidFrom || time >= entry.mValidUntil) {
+            update(entry, time);
+        }
+        return entry.mOffset;
+    }
+
+    /**
+     * Drops every cached zone. Called on ACTION_TIMEZONE_CHANGED, as the time zone data may have
+     * been updated together with the default zone.
+     */
+    public static synchronized void clear() {
+        sEntries.clear();
+    }
+
+    private static Entry getEntry(String id) {
+        Entry entry = sEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            entry.mZone = TimeZone.getTimeZone(id);
+            // Empty interval, computed on the first offset request
+            entry.mValidFrom = entry.mValidUntil = Long.MIN_VALUE;
+            sEntries.put(id, entry);
+        }
+        return entry;
+    }
+
+    private static void update(Entry entry, long time) {
+        TimeZone zone = entry.mZone;
+        int offset = zone.getOffset(time);
+        entry.mOffset = offset;
+        if (!zone.useDaylightTime() && zone.getOffset(time + SEARCH_HORIZON) == offset
+                && zone.getOffset(time - SEARCH_HORIZON) == offset) {
+            // No daylight time around, keep it until the horizon
+            entry.mValidFrom = time - SEARCH_HORIZON;
+            entry.mValidUntil = time + SEARCH_HORIZON;
+            return;
+        }
+        entry.mValidUntil = findTransition(zone, offset, time, SEARCH_STEP);
+        entry.mValidFrom = findTransition(zone, offset, time, -SEARCH_STEP) + 1;
+    }
+
+    /**
+     * Walks from time in steps until the offset changes, then narrows down to the transition.
+     * @return the first instant with a different offset when going forward, the last one when
+     * going backward, or the horizon if there is none.
+     */
+    private static long findTransition(TimeZone zone, int offset, long time, long step) {
+        long inside = time;
+        long outside = time + step;
+        while (zone.getOffset(outside) == offset) {
+            inside = outside;
+            if (Math.abs(inside - time) >= SEARCH_HORIZON) {
+                return inside;
+            }
+            outside += step;
+        }
+        // About 30 halvings of a step pin the transition to the millisecond
+        while (Math.abs(outside - inside) > 1) {
+            long mid = inside + (outside - inside) / 2;
+            if (zone.getOffset(mid) == offset) {
+                inside = mid;
+            } else {
+                outside = mid;
+            }
+        }
+        return outside;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.alarms;
+
+import com.embeddedlog.LightUpDroid.provider.Alarm;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Finds alarms that overlap within a week: alarms set to the same schedule, alarms ringing
+ * within a few minutes of each other on the same day, and one time alarms that ring right
+ * after a repeating alarm anyway. It also counts how many alarms ring in each hour of the week.
+ *
+ * Every firing of the enabled alarms is placed on a week of minutes, starting on Sunday at
+ * midnight, with a bitmap of the minutes that have firings. The firings are bucketed by minute
+ * and swept in order through the bitmap, so the work grows linearly with the number of alarms,
+ * plus the pairs reported.
+ */
+public class AlarmAnalyzer {
+    public static final int MINUTES_IN_DAY = 24 * 60;
+    public static final int DAYS_IN_WEEK = 7;
+    public static final int MINUTES_IN_WEEK = DAYS_IN_WEEK * MINUTES_IN_DAY;
+    public static final int HOURS_IN_WEEK = DAYS_IN_WEEK * 24;
+
+    /**
+     * Two alarms found to overlap.
+     */
+    public static class AlarmPair {
+        // The alarm ringing first, or the one kept for duplicates
+        public final Alarm first;
+        public final Alarm second;
+        // Calendar day of the week they overlap on, unused for duplicates
+        public final int day;
+        public final int minutesApart;
+
+        AlarmPair(Alarm first, Alarm second, int day, int minutesApart) {
+            this.first = first;
+            this.second = second;
+            this.day = day;
+            this.minutesApart = minutesApart;
+        }
+    }
+
+    public static class Result {
+        // Alarms with the same time and days as an earlier alarm
+        public final List<AlarmPair> duplicates = new ArrayList<AlarmPair>();
+        // Alarms ringing within the window of each other on the same day
+        public final List<AlarmPair> close = new ArrayList<AlarmPair>();
+        // One time alarms, second, ringing within the window after a repeating alarm, first
+        public final List<AlarmPair> shadowed = new ArrayList<AlarmPair>();
+        // Number of firings in each hour of the week, starting on Sunday at midnight
+        public final int[] hourlyFirings = new int[HOURS_IN_WEEK];
+
+        public boolean isEmpty() {
+            return duplicates.isEmpty() && close.isEmpty() && shadowed.isEmpty();
+        }
+
+        /**
+         * @return the hour of the week with the most firings, or -1 if there are none.
+         */
+        public int getBusiestHour() {
+            int busiest = -1;
+            for (int hour = 0; hour < HOURS_IN_WEEK; hour++) {
+                if (hourlyFirings[hour] > 0
+                        && (busiest < 0 || hourlyFirings[hour] > hourlyFirings[busiest])) {
+                    busiest = hour;
+                }
+            }
+            return busiest;
+        }
+    }
+
+    /**
+     * Analyzes the enabled alarms of the list.
+     *
+     * @param alarms the alarms, disabled ones are skipped.
+     * @param now the current time, which places the next firing of the one time alarms.
+     * @param windowMinutes alarms ringing at most this far apart are reported as close.
+     */
+    public static Result analyze(List<Alarm> alarms, Calendar now, int windowMinutes) {
+        final Result result = new Result();
+        final Alarm[] enabled = new Alarm[alarms.size()];
+        int n = 0;
+        for (Alarm alarm : alarms) {
+            if (alarm.enabled) {
+                enabled[n++] = alarm;
+            }
+        }
+
+        // Duplicates take no further part, they would only repeat the findings of their match
+        final boolean[] duplicate = new boolean[n];
+        final HashMap<Long, Integer> schedules = new HashMap<Long, Integer>(n * 2);
+        for (int a = 0; a < n; a++) {
+            final Alarm alarm = enabled[a];
+            final long schedule = ((long) (alarm.hour * 60 + alarm.minutes) << 8)
+                    | alarm.daysOfWeek.getBitSet();
+            final Integer original = schedules.get(schedule);
+            if (original == null) {
+                schedules.put(schedule, a);
+            } else {
+                duplicate[a] = true;
+                result.duplicates.add(new AlarmPair(enabled[original], alarm, 0, 0));
+            }
+        }
+
+        // Firings as week minutes, and which alarm each one belongs to
+        final int nowMinute = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        final int today = now.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        final int[] firingMinutes = new int[n * DAYS_IN_WEEK];
+        final int[] firingAlarms = new int[n * DAYS_IN_WEEK];
+        final long[] occupied = new long[(MINUTES_IN_WEEK + 63) / 64];
+        final int[] bucketStarts = new int[MINUTES_IN_WEEK + 1];
+        int firings = 0;
+        for (int a = 0; a < n; a++) {
+            final Alarm alarm = enabled[a];
+            final int minuteOfDay = alarm.hour * 60 + alarm.minutes;
+            for (int day = 0; day < DAYS_IN_WEEK; day++) {
+                final boolean fires;
+                if (alarm.daysOfWeek.isRepeating()) {
+                    fires = alarm.daysOfWeek.isDaySet(Calendar.SUNDAY + day);
+                } else {
+                    // Rings today if its time has not passed yet, tomorrow otherwise
+                    final int next = minuteOfDay >= nowMinute ? today : today + 1;
+                    fires = day == next % DAYS_IN_WEEK;
+                }
+                if (!fires) {
+                    continue;
+                }
+                final int minute = day * MINUTES_IN_DAY + minuteOfDay;
+                result.hourlyFirings[minute / 60]++;
+                if (!duplicate[a]) {
+                    firingMinutes[firings] = minute;
+                    firingAlarms[firings++] = a;
+                    occupied[minute >> 6] |= 1L << (minute & 63);
+                    bucketStarts[minute + 1]++;
+                }
+            }
+        }
+
+        // Bucket the firings by minute
+        for (int minute = 0; minute < MINUTES_IN_WEEK; minute++) {
+            bucketStarts[minute + 1] += bucketStarts[minute];
+        }
+        final int[] sorted = new int[firings];
+        final int[] next = new int[MINUTES_IN_WEEK];
+        System.arraycopy(bucketStarts, 0, next, 0, MINUTES_IN_WEEK);
+        for (int f = 0; f < firings; f++) {
+            sorted[next[firingMinutes[f]]++] = f;
+        }
+
+        // Sweep the occupied minutes, comparing each firing with the earlier ones in the window
+        final HashSet<Long> reported = new HashSet<Long>();
+        int windowStart = 0;
+        for (int word = 0; word < occupied.length; word++) {
+            long bits = occupied[word];
+            while (bits != 0) {
+                final int minute = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                final int day = minute / MINUTES_IN_DAY;
+                for (int s = bucketStarts[minute]; s < bucketStarts[minute + 1]; s++) {
+                    while (firingMinutes[sorted[windowStart]] < minute - windowMinutes
+                            || firingMinutes[sorted[windowStart]] / MINUTES_IN_DAY != day) {
+                        windowStart++;
+                    }
+                    final int later = firingAlarms[sorted[s]];
+                    for (int w = windowStart; w < s; w++) {
+                        final int earlier = firingAlarms[sorted[w]];
+                        final long pairKey = ((long) Math.min(earlier, later) << 32)
+                                | Math.max(earlier, later);
+                        if (earlier == later || !reported.add(pairKey)) {
+                            continue;
+                        }
+                        final int apart = minute - firingMinutes[sorted[w]];
+                        final Alarm first = enabled[earlier];
+                        final Alarm second = enabled[later];
+                        final boolean firstRepeats = first.daysOfWeek.isRepeating();
+                        final boolean secondRepeats = second.daysOfWeek.isRepeating();
+                        final int calendarDay = Calendar.SUNDAY + day;
+                        if (firstRepeats && !secondRepeats) {
+                            result.shadowed.add(new AlarmPair(first, second, calendarDay, apart));
+                        } else if (apart == 0 && secondRepeats && !firstRepeats) {
+                            result.shadowed.add(new AlarmPair(second, first, calendarDay, 0));
+                        } else {
+                            result.close.add(new AlarmPair(first, second, calendarDay, apart));
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.alarms;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import com.embeddedlog.LightUpDroid.Log;
+import com.embeddedlog.LightUpDroid.provider.Alarm;
+import com.embeddedlog.LightUpDroid.provider.AlarmInstance;
+import com.embeddedlog.LightUpDroid.provider.ClockContract;
+import com.embeddedlog.LightUpDroid.provider.DaysOfWeek;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+
+/**
+ * Exports and imports the alarms as a JSON file, streamed one alarm at a time so the size of
+ * the file does not matter. The alarms keep their LightUpPi IDs and timestamps, so they can be
+ * synchronised with the LightUpPi server again once imported.
+ *
+ * The file is an object with the format name, its version and the list of alarms:
+ * <pre>
+ * {"format": "LightUpDroid alarms", "version": 1, "alarms": [{"hour": 8, "minutes": 30, ...}]}
+ * </pre>
+ * Each alarm is read by field name, fields missing from older files take the default values of a
+ * new alarm and unknown fields are skipped. When the alarms table changes in a way that older
+ * files cannot be read as they are, bump {@link #FORMAT_VERSION} and convert the old fields in
+ * {@link #readAlarm} depending on the version of the file.
+ */
+public class AlarmBackup {
+    public static final String FORMAT_NAME = "LightUpDroid alarms";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final String KEY_FORMAT = "format";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_ALARMS = "alarms";
+
+    private static final String KEY_HOUR = "hour";
+    private static final String KEY_MINUTES = "minutes";
+    private static final String KEY_DAYS_OF_WEEK = "daysOfWeek";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_VIBRATE = "vibrate";
+    private static final String KEY_LABEL = "label";
+    private static final String KEY_RINGTONE = "ringtone";
+    private static final String KEY_DELETE_AFTER_USE = "deleteAfterUse";
+    private static final String KEY_LIGHTUPPI_ID = "lightuppiId";
+    private static final String KEY_TIMESTAMP = "timestamp";
+
+    /**
+     * Number of alarms imported, and of alarms skipped because an alarm with the same LightUpPi
+     * ID is already on the phone.
+     */
+    public static class ImportResult {
+        public int imported;
+        public int skipped;
+    }
+
+    /**
+     * Writes all the alarms to the stream, reading them from the database one at a time.
+     * The stream is closed when done.
+     *
+     * @return the number of alarms exported.
+     */
+    public static int exportAlarms(ContentResolver cr, OutputStream out) throws IOException {
+        final Cursor cursor = Alarm.getAlarmsCursor(cr);
+        final JsonWriter writer = new JsonWriter(
+                new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        int count = 0;
+        try {
+            writer.beginObject();
+            writer.name(KEY_FORMAT).value(FORMAT_NAME);
+            writer.name(KEY_VERSION).value(FORMAT_VERSION);
+            writer.name(KEY_ALARMS).beginArray();
+            while (cursor != null && cursor.moveToNext()) {
+                writeAlarm(writer, new Alarm(cursor));
+                count++;
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            writer.close();
+        }
+        return count;
+    }
+
+    private static void writeAlarm(JsonWriter writer, Alarm alarm) throws IOException {
+        writer.beginObject();
+        writer.name(KEY_HOUR).value(alarm.hour);
+        writer.name(KEY_MINUTES).value(alarm.minutes);
+        writer.name(KEY_DAYS_OF_WEEK).value(alarm.daysOfWeek.getBitSet());
+        writer.name(KEY_ENABLED).value(alarm.enabled);
+        writer.name(KEY_VIBRATE).value(alarm.vibrate);
+        writer.name(KEY_LABEL).value(alarm.label);
+        writer.name(KEY_RINGTONE).value(alarm.alert == null ? null : alarm.alert.toString());
+        writer.name(KEY_DELETE_AFTER_USE).value(alarm.deleteAfterUse);
+        writer.name(KEY_LIGHTUPPI_ID).value(alarm.lightuppiId);
+        writer.name(KEY_TIMESTAMP).value(alarm.timestamp);
+        writer.endObject();
+    }
+
+    /**
+     * Adds the alarms of the stream to the database, all of them and their instances in one
+     * provider batch, and then registers the instances and updates the next alarm once.
+     * Alarms with a LightUpPi ID already on the phone are skipped, as the server keeps them in
+     * sync already. The stream is closed when done.
+     *
+     * @throws IOException if the stream cannot be read, is not an alarms file or is from a newer
+     *         version of the app. Nothing is imported in that case.
+     */
+    public static ImportResult importAlarms(Context context, InputStream in) throws IOException {
+        final ContentResolver cr = context.getContentResolver();
+        final HashSet<Long> lightuppiIds = new HashSet<Long>();
+        for (Alarm alarm : Alarm.getAlarms(cr, Alarm.LIGHTUPPI_ID + "!=" + Alarm.INVALID_ID)) {
+            lightuppiIds.add(alarm.lightuppiId);
+        }
+
+        final ImportResult result = new ImportResult();
+        final ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        // Instances to register, at the same indexes as their insert operations
+        final ArrayList<AlarmInstance> instances = new ArrayList<AlarmInstance>();
+        final Calendar now = Calendar.getInstance();
+
+        final JsonReader reader = new JsonReader(
+                new BufferedReader(new InputStreamReader(in, "UTF-8")));
+        try {
+            int version = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (KEY_FORMAT.equals(name)) {
+                    if (!FORMAT_NAME.equals(reader.nextString())) {
+                        throw new IOException("Not an alarms file");
+                    }
+                } else if (KEY_VERSION.equals(name)) {
+                    version = reader.nextInt();
+                    if (version > FORMAT_VERSION) {
+                        throw new IOException("Alarms file version " + version + " is newer "
+                                + "than the supported version " + FORMAT_VERSION);
+                    }
+                } else if (KEY_ALARMS.equals(name)) {
+                    if (version < 0) {
+                        throw new IOException("Alarms file version missing");
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        final Alarm alarm = readAlarm(reader, version);
+                        if (alarm.lightuppiId != Alarm.INVALID_ID
+                                && !lightuppiIds.add(alarm.lightuppiId)) {
+                            result.skipped++;
+                            continue;
+                        }
+                        addInsertOperations(alarm, now, operations, instances);
+                        result.imported++;
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // Thrown by the reader when the file does not have the expected structure
+            throw new IOException("Malformed alarms file: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed alarms file: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+
+        if (operations.isEmpty()) {
+            return result;
+        }
+        final ContentProviderResult[] results;
+        try {
+            results = cr.applyBatch(ClockContract.AUTHORITY, operations);
+        } catch (RemoteException e) {
+            throw new IOException("Could not store the imported alarms: " + e);
+        } catch (OperationApplicationException e) {
+            throw new IOException("Could not store the imported alarms: " + e);
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            final AlarmInstance instance = instances.get(i);
+            if (instance != null) {
+                instance.mId = AlarmInstance.getId(results[i].uri);
+                // The alarm insert comes right before the insert of its instance
+                instance.mAlarmId = Alarm.getId(results[i - 1].uri);
+                AlarmStateManager.registerInstance(context, instance, false);
+            }
+        }
+        AlarmStateManager.updateNextAlarm(context);
+        Log.i("Imported " + result.imported + " alarms, skipped " + result.skipped);
+        return result;
+    }
+
+    /**
+     * Reads one alarm, converting the fields of older file versions when needed.
+     */
+    private static Alarm readAlarm(JsonReader reader, int version) throws IOException {
+        final Alarm alarm = new Alarm();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                if (KEY_RINGTONE.equals(name)) {
+                    alarm.alert = null;
+                }
+            } else if (KEY_HOUR.equals(name)) {
+                alarm.hour = reader.nextInt();
+            } else if (KEY_MINUTES.equals(name)) {
+                alarm.minutes = reader.nextInt();
+            } else if (KEY_DAYS_OF_WEEK.equals(name)) {
+                alarm.daysOfWeek = new DaysOfWeek(reader.nextInt());
+            } else if (KEY_ENABLED.equals(name)) {
+                alarm.enabled = reader.nextBoolean();
+            } else if (KEY_VIBRATE.equals(name)) {
+                alarm.vibrate = reader.nextBoolean();
+            } else if (KEY_LABEL.equals(name)) {
+                alarm.label = reader.nextString();
+            } else if (KEY_RINGTONE.equals(name)) {
+                alarm.alert = Uri.parse(reader.nextString());
+            } else if (KEY_DELETE_AFTER_USE.equals(name)) {
+                alarm.deleteAfterUse = reader.nextBoolean();
+            } else if (KEY_LIGHTUPPI_ID.equals(name)) {
+                alarm.lightuppiId = reader.nextLong();
+            } else if (KEY_TIMESTAMP.equals(name)) {
+                alarm.timestamp = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (alarm.hour < 0 || alarm.hour > 23 || alarm.minutes < 0 || alarm.minutes > 59) {
+            throw new IOException("Invalid alarm time " + alarm.hour + ":" + alarm.minutes);
+        }
+        if (alarm.timestamp == Alarm.INVALID_TIMESTAMP) {
+            alarm.timestamp = System.currentTimeMillis() / 1000;
+        }
+        return alarm;
+    }
+
+    /**
+     * Adds the insert of the alarm and, if it is enabled, the insert of its next instance right
+     * after it, referencing the alarm id from the result of the alarm insert.
+     */
+    private static void addInsertOperations(Alarm alarm, Calendar now,
+            ArrayList<ContentProviderOperation> operations, ArrayList<AlarmInstance> instances) {
+        final int alarmIndex = operations.size();
+        operations.add(ContentProviderOperation.newInsert(Alarm.CONTENT_URI)
+                .withValues(Alarm.createContentValues(alarm)).build());
+        instances.add(null);
+        if (alarm.enabled) {
+            final AlarmInstance instance = alarm.createInstanceAfter(now);
+            operations.add(ContentProviderOperation.newInsert(AlarmInstance.CONTENT_URI)
+                    .withValues(AlarmInstance.createContentValues(instance))
+                    .withValueBackReference(AlarmInstance.ALARM_ID, alarmIndex).build());
+            instances.add(instance);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import android.provider.Settings;
 
 import com.embeddedlog.LightUpDroid.AlarmClockFragment;
 import com.embeddedlog.LightUpDroid.AlarmUtils;
+import com.embeddedlog.LightUpDroid.BootTrace;
 import com.embeddedlog.LightUpDroid.DeskClock;
 import com.embeddedlog.LightUpDroid.Log;
 import com.embeddedlog.LightUpDroid.R;
@@ -93,6 +94,7 @@ public final class AlarmNotifications {
 
         nm.cancel(instance.hashCode());
         nm.notify(instance.hashCode(), notification.build());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     public static void showHighPriorityNotification(Context context, AlarmInstance instance) {
@@ -129,6 +131,7 @@ public final class AlarmNotifications {
 
         nm.cancel(instance.hashCode());
         nm.notify(instance.hashCode(), notification.build());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     public static void showSnoozeNotification(Context context, AlarmInstance instance) {
@@ -165,6 +168,7 @@ public final class AlarmNotifications {
                 viewAlarmIntent, PendingIntent.FLAG_UPDATE_CURRENT));
         nm.cancel(instance.hashCode());
         nm.notify(instance.hashCode(), notification.build());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     public static void showMissedNotification(Context context, AlarmInstance instance) {
@@ -198,6 +202,7 @@ public final class AlarmNotifications {
 
         nm.cancel(instance.hashCode());
         nm.notify(instance.hashCode(), notification.build());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     public static void showAlarmNotification(Context context, AlarmInstance instance) {
@@ -256,6 +261,7 @@ public final class AlarmNotifications {
 
         nm.cancel(instance.hashCode());
         nm.notify(instance.hashCode(), notification.build());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     public static void clearNotification(Context context, AlarmInstance instance) {
@@ -263,6 +269,7 @@ public final class AlarmNotifications {
         NotificationManager nm = (NotificationManager)
                 context.getSystemService(Context.NOTIFICATION_SERVICE);
         nm.cancel(instance.hashCode());
+        BootTrace.count(BootTrace.NOTIFICATIONS);
     }
 
     private static Intent createViewAlarmIntent(Context context, AlarmInstance instance) {
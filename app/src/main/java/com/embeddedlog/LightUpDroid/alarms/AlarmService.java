@@ -56,7 +56,7 @@ public class AlarmService extends Service {
         intent.setAction(START_ALARM_ACTION);
 
         // Maintain a cpu wake lock until the service can get it
-        AlarmAlertWakeLock.acquireCpuWakeLock(context);
+        AlarmAlertWakeLock.acquireCpuWakeLock(context, AlarmAlertWakeLock.ALARM_SERVICE);
         context.startService(intent);
     }
 
@@ -100,7 +100,7 @@ public class AlarmService extends Service {
             stopCurrentAlarm();
         }
 
-        AlarmAlertWakeLock.acquireCpuWakeLock(this);
+        AlarmAlertWakeLock.acquireCpuWakeLock(this, AlarmAlertWakeLock.ALARM_SERVICE);
         mCurrentAlarm = instance;
         AlarmNotifications.showAlarmNotification(this, mCurrentAlarm);
         mInitialCallState = mTelephonyManager.getCallState();
@@ -121,7 +121,7 @@ public class AlarmService extends Service {
         mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
         sendBroadcast(new Intent(ALARM_DONE_ACTION));
         mCurrentAlarm = null;
-        AlarmAlertWakeLock.releaseCpuLock();
+        AlarmAlertWakeLock.releaseCpuLock(AlarmAlertWakeLock.ALARM_SERVICE);
     }
 
     @Override
@@ -142,7 +142,7 @@ public class AlarmService extends Service {
                 Log.e("No instance found to start alarm: " + instanceId);
                 if (mCurrentAlarm != null) {
                     // Only release lock if we are not firing alarm
-                    AlarmAlertWakeLock.releaseCpuLock();
+                    AlarmAlertWakeLock.releaseCpuLock(AlarmAlertWakeLock.ALARM_SERVICE);
                 }
                 return Service.START_NOT_STICKY;
             } else if (mCurrentAlarm != null && mCurrentAlarm.mId == instanceId) {
@@ -23,7 +23,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
-import android.os.PowerManager;
 import android.preference.PreferenceManager;
 import android.widget.Toast;
 
@@ -31,6 +30,7 @@ import com.embeddedlog.LightUpDroid.AlarmAlertWakeLock;
 import com.embeddedlog.LightUpDroid.AlarmClockFragment;
 import com.embeddedlog.LightUpDroid.AlarmUtils;
 import com.embeddedlog.LightUpDroid.AsyncHandler;
+import com.embeddedlog.LightUpDroid.BootTrace;
 import com.embeddedlog.LightUpDroid.DeskClock;
 import com.embeddedlog.LightUpDroid.Log;
 import com.embeddedlog.LightUpDroid.R;
@@ -227,6 +227,7 @@ public final class AlarmStateManager extends BroadcastReceiver {
                 stateChangeIntent, PendingIntent.FLAG_UPDATE_CURRENT);
 
         AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        BootTrace.count(BootTrace.ALARM_MANAGER_CALLS);
         if (Utils.isKitKatOrLater()) {
             am.setExact(AlarmManager.RTC_WAKEUP, timeInMillis, pendingIntent);
         } else {
@@ -249,6 +250,7 @@ public final class AlarmStateManager extends BroadcastReceiver {
                 PendingIntent.FLAG_UPDATE_CURRENT);
 
         AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        BootTrace.count(BootTrace.ALARM_MANAGER_CALLS);
         am.cancel(pendingIntent);
     }
 
@@ -608,6 +610,30 @@ public final class AlarmStateManager extends BroadcastReceiver {
         updateNextAlarm(context);
     }
 
+    /**
+     * Deletes and unregisters all the instances of several alarms, with one query and one
+     * delete for all of them.
+     *
+     * @param context application context
+     * @param alarmIds to find instances to delete.
+     * @param updateNextAlarm if true, update the next alarm once the instances are deleted.
+     */
+    public static void deleteAllInstances(Context context, long[] alarmIds,
+            boolean updateNextAlarm) {
+        if (alarmIds.length == 0) {
+            return;
+        }
+        ContentResolver cr = context.getContentResolver();
+        String selection = Alarm.getIdSelection(AlarmInstance.ALARM_ID, alarmIds);
+        for (AlarmInstance instance : AlarmInstance.getInstances(cr, selection)) {
+            unregisterInstance(context, instance);
+        }
+        cr.delete(AlarmInstance.CONTENT_URI, selection, null);
+        if (updateNextAlarm) {
+            updateNextAlarm(context);
+        }
+    }
+
     /**
      * Fix and update all alarm instance when a time change event occurs.
      *
@@ -668,7 +694,8 @@ public final class AlarmStateManager extends BroadcastReceiver {
         }
 
         final PendingResult result = goAsync();
-        final PowerManager.WakeLock wl = AlarmAlertWakeLock.createPartialWakeLock(context);
+        final AlarmAlertWakeLock.TrackedWakeLock wl = AlarmAlertWakeLock.createPartialWakeLock(
+                context, AlarmAlertWakeLock.ALARM_STATE_MANAGER);
         wl.acquire();
         AsyncHandler.post(new Runnable() {
             @Override
@@ -16,21 +16,27 @@
 
 package com.embeddedlog.LightUpDroid.provider;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.RemoteException;
 
+import com.embeddedlog.LightUpDroid.BootTrace;
 import com.embeddedlog.LightUpDroid.Log;
 import com.embeddedlog.LightUpDroid.R;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
@@ -51,7 +57,8 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
             MINUTES + " ASC" + ", " +
             _ID + " DESC";
 
-    private static final String[] QUERY_COLUMNS = {
+    // Also used by ClockDatabaseHelper to read the alarms while upgrading the database
+    static final String[] QUERY_COLUMNS = {
             _ID,
             HOUR,
             MINUTES,
@@ -83,6 +90,24 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
 
     private static final int COLUMN_COUNT = TIMESTAMP_INDEX + 1;
 
+    /**
+     * Columns of the alarm list, which only shows a summary of each alarm until it is expanded.
+     * The timestamp changes on every update, so edits to the other columns still change the row.
+     * The first columns share their indexes with the query columns above.
+     */
+    private static final String[] LIST_QUERY_COLUMNS = {
+            _ID,
+            HOUR,
+            MINUTES,
+            DAYS_OF_WEEK,
+            ENABLED,
+            LABEL,
+            TIMESTAMP
+    };
+
+    private static final int LIST_LABEL_INDEX = 5;
+    private static final int LIST_TIMESTAMP_INDEX = 6;
+
     public static ContentValues createContentValues(Alarm alarm) {
         ContentValues values = new ContentValues(COLUMN_COUNT);
         if (alarm.id != INVALID_ID) {
@@ -128,11 +153,12 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
      * Get alarm cursor loader for all alarms.
      *
      * @param context to query the database.
-     * @return cursor loader with all the alarms.
+     * @return cursor loader with the summary of all the alarms, to be read with
+     *         {@link #readSummaryFrom}, and the changes from the last list loaded.
      */
-    public static CursorLoader getAlarmsCursorLoader(Context context) {
-        return new CursorLoader(context, ClockContract.AlarmsColumns.CONTENT_URI,
-                QUERY_COLUMNS, null, null, DEFAULT_SORT_ORDER);
+    public static AlarmListLoader getAlarmsCursorLoader(Context context) {
+        return new AlarmListLoader(context, ClockContract.AlarmsColumns.CONTENT_URI,
+                LIST_QUERY_COLUMNS, DEFAULT_SORT_ORDER);
     }
 
     /**
@@ -219,6 +245,45 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
         return result;
     }
 
+    /**
+     * Get a cursor over all the alarms, for reading them one at a time with
+     * {@link #Alarm(Cursor)} instead of loading them all in a list.
+     *
+     * @param contentResolver to perform the query on.
+     * @return cursor with all the alarm columns, or null. The caller must close it.
+     */
+    public static Cursor getAlarmsCursor(ContentResolver contentResolver) {
+        return contentResolver.query(CONTENT_URI, QUERY_COLUMNS, null, null, DEFAULT_SORT_ORDER);
+    }
+
+    /**
+     * Get the alarms with the given ids.
+     *
+     * @param contentResolver to perform the query on.
+     * @param alarmIds ids of the alarms.
+     * @return list of the alarms found, in no particular order.
+     */
+    public static List<Alarm> getAlarmsById(ContentResolver contentResolver, long[] alarmIds) {
+        if (alarmIds.length == 0) {
+            return new LinkedList<Alarm>();
+        }
+        return getAlarms(contentResolver, getIdSelection(_ID, alarmIds));
+    }
+
+    /**
+     * @return a selection of the rows whose column is one of the ids.
+     */
+    public static String getIdSelection(String column, long[] ids) {
+        final StringBuilder selection = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+        }
+        return selection.append(')').toString();
+    }
+
     public static Alarm addAlarm(ContentResolver contentResolver, Alarm alarm) {
         ContentValues values = createContentValues(alarm);
         // Timestamp is used mostly to be able to synchronised alarms, so if it already contains
@@ -243,6 +308,78 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
         return rowsUpdated == 1;
     }
 
+    /**
+     * Updates several alarms in one transaction.
+     *
+     * @param contentResolver to perform the update on.
+     * @param alarms the alarms to update, they get a new timestamp unless bypassTimestamp.
+     * @param bypassTimestamp true to store the timestamps of the alarms as they are.
+     * @return true if all the alarms were updated.
+     */
+    public static boolean updateAlarms(ContentResolver contentResolver, List<Alarm> alarms,
+            boolean bypassTimestamp) {
+        final long timestamp = System.currentTimeMillis() / 1000;
+        final ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(alarms.size());
+        for (Alarm alarm : alarms) {
+            if (alarm.id == INVALID_ID) continue;
+            if (!bypassTimestamp) {
+                alarm.timestamp = timestamp;
+            }
+            operations.add(ContentProviderOperation.newUpdate(getUri(alarm.id))
+                    .withValues(createContentValues(alarm)).build());
+        }
+        return applyBatch(contentResolver, operations);
+    }
+
+    /**
+     * Stores the timestamps of several alarms in one transaction, leaving the other columns as
+     * they are in the database, as they may have changed since the alarms were read.
+     *
+     * @return true if all the timestamps were updated.
+     */
+    public static boolean updateTimestamps(ContentResolver contentResolver, List<Alarm> alarms) {
+        final ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(alarms.size());
+        for (Alarm alarm : alarms) {
+            if (alarm.id == INVALID_ID) continue;
+            operations.add(ContentProviderOperation.newUpdate(getUri(alarm.id))
+                    .withValue(TIMESTAMP, alarm.timestamp).build());
+        }
+        return applyBatch(contentResolver, operations);
+    }
+
+    /**
+     * Deletes several alarms in one transaction.
+     *
+     * @return true if all the alarms were deleted.
+     */
+    public static boolean deleteAlarms(ContentResolver contentResolver, long[] alarmIds) {
+        final ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(alarmIds.length);
+        for (long alarmId : alarmIds) {
+            operations.add(ContentProviderOperation.newDelete(getUri(alarmId)).build());
+        }
+        return applyBatch(contentResolver, operations);
+    }
+
+    private static boolean applyBatch(ContentResolver contentResolver,
+            ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) return true;
+        try {
+            for (ContentProviderResult result : contentResolver.applyBatch(
+                    ClockContract.AUTHORITY, operations)) {
+                if (result.count == null || result.count != 1) return false;
+            }
+            return true;
+        } catch (RemoteException e) {
+            Log.e("Could not apply alarm batch: " + e);
+        } catch (OperationApplicationException e) {
+            Log.e("Could not apply alarm batch: " + e);
+        }
+        return false;
+    }
+
     public static boolean deleteAlarm(ContentResolver contentResolver, long alarmId) {
         if (alarmId == INVALID_ID) return false;
         int deletedRows = contentResolver.delete(getUri(alarmId), "", null);
@@ -292,6 +429,7 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
     }
 
     public Alarm(Cursor c) {
+        BootTrace.count(BootTrace.ROWS_READ);
         id = c.getLong(ID_INDEX);
         enabled = c.getInt(ENABLED_INDEX) == 1;
         hour = c.getInt(HOUR_INDEX);
@@ -312,6 +450,84 @@ public final class Alarm implements Parcelable, ClockContract.AlarmsColumns {
         }
     }
 
+    public Alarm(Alarm other) {
+        id = other.id;
+        enabled = other.enabled;
+        hour = other.hour;
+        minutes = other.minutes;
+        daysOfWeek = new DaysOfWeek(other.daysOfWeek.getBitSet());
+        vibrate = other.vibrate;
+        label = other.label;
+        alert = other.alert;
+        deleteAfterUse = other.deleteAfterUse;
+        lightuppiId = other.lightuppiId;
+        timestamp = other.timestamp;
+    }
+
+    /**
+     * Reads the summary of the alarm at the current cursor position into this instance, for
+     * lists that reuse one instance per row. The label is copied through the buffer and only
+     * replaced when it differs, so reading an unchanged alarm again does not allocate. The
+     * other fields are left as they were, see {@link #copyDetailsFrom}.
+     *
+     * @param c cursor from {@link #getAlarmsCursorLoader}.
+     * @param buffer scratch buffer for the string columns.
+     */
+    public void readSummaryFrom(Cursor c, CharArrayBuffer buffer) {
+        id = c.getLong(ID_INDEX);
+        enabled = c.getInt(ENABLED_INDEX) == 1;
+        hour = c.getInt(HOUR_INDEX);
+        minutes = c.getInt(MINUTES_INDEX);
+        if (daysOfWeek == null) {
+            daysOfWeek = new DaysOfWeek(c.getInt(DAYS_OF_WEEK_INDEX));
+        } else {
+            daysOfWeek.setBitSet(c.getInt(DAYS_OF_WEEK_INDEX));
+        }
+        timestamp = c.getLong(LIST_TIMESTAMP_INDEX);
+
+        if (c.isNull(LIST_LABEL_INDEX)) {
+            label = null;
+        } else {
+            c.copyStringToBuffer(LIST_LABEL_INDEX, buffer);
+            if (!contentEquals(buffer, label)) {
+                label = new String(buffer.data, 0, buffer.sizeCopied);
+            }
+        }
+    }
+
+    /**
+     * Copies the fields shown in the alarm list summary from another alarm.
+     */
+    public void copySummaryFrom(Alarm other) {
+        enabled = other.enabled;
+        hour = other.hour;
+        minutes = other.minutes;
+        daysOfWeek.setBitSet(other.daysOfWeek.getBitSet());
+        label = other.label;
+    }
+
+    /**
+     * Copies the fields not read by {@link #readSummaryFrom} from another alarm.
+     */
+    public void copyDetailsFrom(Alarm other) {
+        vibrate = other.vibrate;
+        alert = other.alert;
+        deleteAfterUse = other.deleteAfterUse;
+        lightuppiId = other.lightuppiId;
+    }
+
+    private static boolean contentEquals(CharArrayBuffer buffer, String s) {
+        if (s == null || s.length() != buffer.sizeCopied) {
+            return false;
+        }
+        for (int i = 0; i < buffer.sizeCopied; i++) {
+            if (s.charAt(i) != buffer.data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     Alarm(Parcel p) {
         id = p.readLong();
         enabled = p.readInt() == 1;
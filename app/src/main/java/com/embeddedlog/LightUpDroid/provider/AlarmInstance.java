@@ -26,6 +26,7 @@ import android.media.RingtoneManager;
 import android.net.Uri;
 import android.preference.PreferenceManager;
 
+import com.embeddedlog.LightUpDroid.BootTrace;
 import com.embeddedlog.LightUpDroid.Log;
 import com.embeddedlog.LightUpDroid.R;
 import com.embeddedlog.LightUpDroid.SettingsActivity;
@@ -293,6 +294,7 @@ public final class AlarmInstance implements ClockContract.InstancesColumns {
     }
 
     public AlarmInstance(Cursor c) {
+        BootTrace.count(BootTrace.ROWS_READ);
         mId = c.getLong(ID_INDEX);
         mYear = c.getInt(YEAR_INDEX);
         mMonth = c.getInt(MONTH_INDEX);
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.provider;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Cursor loader for the alarm list that also works out, on the loader thread, how the new list
+ * of alarms differs from the one delivered before it. Each result is an {@link AlarmListCursor}
+ * carrying the item changes that turn the previous list into the new one, so the list can
+ * animate and rebind only the alarms that were added, removed, moved or edited.
+ *
+ * Working out the changes reads the id and contents of every row ahead, which goes through all
+ * the windows of the cursor. Lists with more than {@link AlarmListCursor#MAX_COMPARED_COUNT}
+ * alarms are not read ahead or compared, so they keep the paging of the cursor window and are
+ * rebound in full on every change instead.
+ */
+public class AlarmListLoader extends CursorLoader {
+    // The last list delivered, which the next list is compared to
+    private volatile AlarmListCursor mDelivered;
+
+    AlarmListLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        final Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        return new AlarmListCursor(cursor, mDelivered);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isStarted() && cursor instanceof AlarmListCursor) {
+            mDelivered = (AlarmListCursor) cursor;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDelivered = null;
+    }
+
+    /**
+     * Alarms cursor with the ids and contents of its rows read ahead, and the changes from the
+     * list it was compared to. Lists longer than {@link #MAX_COMPARED_COUNT} have neither, their
+     * ids are read from the cursor when asked for. The changes are in the order they have to be
+     * applied, and the positions of each one are those of the list after all the changes before
+     * it.
+     */
+    public static class AlarmListCursor extends CursorWrapper {
+        public static final int CHANGE_INSERT = 0;
+        public static final int CHANGE_REMOVE = 1;
+        public static final int CHANGE_MOVE = 2;
+        public static final int CHANGE_UPDATE = 3;
+
+        // Longest list that is read ahead and compared to the previous one
+        public static final int MAX_COMPARED_COUNT = 500;
+
+        private final int mIdIndex;
+        // Ids and content hashes of the rows, null if the list is too long to be read ahead
+        private final long[] mIds;
+        private final int[] mHashes;
+        // Ids of the list the changes apply to, null if there was none
+        private final long[] mBaseIds;
+        // Type, position and target position of each change
+        private int[] mChanges = new int[0];
+        private int mChangeCount;
+
+        AlarmListCursor(Cursor cursor, AlarmListCursor base) {
+            super(cursor);
+            final int count = cursor.getCount();
+            final int columns = cursor.getColumnCount();
+            final int idIndex = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+            mIdIndex = idIndex;
+            if (count > MAX_COMPARED_COUNT) {
+                mIds = null;
+                mHashes = null;
+                mBaseIds = null;
+                return;
+            }
+            mIds = new long[count];
+            mHashes = new int[count];
+            cursor.moveToPosition(-1);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                mIds[i] = cursor.getLong(idIndex);
+                int hash = 0;
+                for (int c = 0; c < columns; c++) {
+                    final String value = cursor.getString(c);
+                    hash = 31 * hash + (value == null ? 0 : value.hashCode());
+                }
+                mHashes[i] = hash;
+            }
+            cursor.moveToPosition(-1);
+
+            if (base == null || base.mIds == null) {
+                mBaseIds = null;
+            } else {
+                mBaseIds = base.mIds;
+                diff(base.mIds, base.mHashes);
+            }
+        }
+
+        /**
+         * @return true if the changes of this list apply to the given one.
+         */
+        public boolean isChangedFrom(AlarmListCursor previous) {
+            return previous != null && mBaseIds != null && mBaseIds == previous.mIds;
+        }
+
+        public long getId(int position) {
+            if (mIds != null) {
+                return mIds[position];
+            }
+            final int current = getPosition();
+            moveToPosition(position);
+            final long id = getLong(mIdIndex);
+            moveToPosition(current);
+            return id;
+        }
+
+        public int getChangeCount() {
+            return mChangeCount;
+        }
+
+        public int getChangeType(int change) {
+            return mChanges[change * 3];
+        }
+
+        public int getChangePosition(int change) {
+            return mChanges[change * 3 + 1];
+        }
+
+        /**
+         * @return the position a moved alarm is moved to.
+         */
+        public int getChangeToPosition(int change) {
+            return mChanges[change * 3 + 2];
+        }
+
+        /**
+         * Works out the changes on a working copy of the old ids: removals from the end first,
+         * so the positions before them stay valid, then walking the new list in order and
+         * moving or inserting whatever is not in place yet.
+         */
+        private void diff(long[] oldIds, int[] oldHashes) {
+            final HashMap<Long, Integer> oldHashById = new HashMap<Long, Integer>(oldIds.length);
+            for (int i = 0; i < oldIds.length; i++) {
+                oldHashById.put(oldIds[i], oldHashes[i]);
+            }
+            final HashMap<Long, Integer> newPositions = new HashMap<Long, Integer>(mIds.length);
+            for (int i = 0; i < mIds.length; i++) {
+                newPositions.put(mIds[i], i);
+            }
+
+            final long[] work = Arrays.copyOf(oldIds, oldIds.length + mIds.length);
+            int size = oldIds.length;
+            for (int i = size - 1; i >= 0; i--) {
+                if (!newPositions.containsKey(work[i])) {
+                    addChange(CHANGE_REMOVE, i, i);
+                    System.arraycopy(work, i + 1, work, i, size - i - 1);
+                    size--;
+                }
+            }
+
+            for (int i = 0; i < mIds.length; i++) {
+                final long id = mIds[i];
+                if (i >= size || work[i] != id) {
+                    int from = -1;
+                    for (int j = i + 1; j < size; j++) {
+                        if (work[j] == id) {
+                            from = j;
+                            break;
+                        }
+                    }
+                    if (from >= 0) {
+                        addChange(CHANGE_MOVE, from, i);
+                        System.arraycopy(work, i, work, i + 1, from - i);
+                    } else {
+                        addChange(CHANGE_INSERT, i, i);
+                        System.arraycopy(work, i, work, i + 1, size - i);
+                        size++;
+                    }
+                    work[i] = id;
+                }
+                final Integer oldHash = oldHashById.get(id);
+                if (oldHash != null && oldHash != mHashes[i]) {
+                    addChange(CHANGE_UPDATE, i, i);
+                }
+            }
+        }
+
+        private void addChange(int type, int position, int toPosition) {
+            if ((mChangeCount + 1) * 3 > mChanges.length) {
+                mChanges = Arrays.copyOf(mChanges, Math.max(12, mChanges.length * 2));
+            }
+            mChanges[mChangeCount * 3] = type;
+            mChanges[mChangeCount * 3 + 1] = position;
+            mChanges[mChangeCount * 3 + 2] = toPosition;
+            mChangeCount++;
+        }
+    }
+}
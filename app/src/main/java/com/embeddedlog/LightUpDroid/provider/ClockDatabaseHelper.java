@@ -22,9 +22,12 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 import com.embeddedlog.LightUpDroid.Log;
 
+import java.util.Calendar;
+
 /**
  * Helper class for opening the database from multiple providers.  Also provides
  * some common functionality.
@@ -55,6 +58,9 @@ public class ClockDatabaseHelper extends SQLiteOpenHelper {
     private static final int VERSION_LIGHTUPPI_1 = 10;
     private static final int VERSION_LIGHTUPPI_2 = 11;
 
+    // Number of rows each statement of an upgrade goes through at most
+    private static final int MIGRATION_CHUNK_SIZE = 500;
+
     // Database and table names
     static final String DATABASE_NAME = "alarms.db";
     static final String OLD_ALARMS_TABLE_NAME = "alarms";
@@ -150,6 +156,10 @@ public class ClockDatabaseHelper extends SQLiteOpenHelper {
     public ClockDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, VERSION_LIGHTUPPI_2);
         mContext = context;
+        // The alarm list and timeline read while the alarm state changes and LightUpPi syncs are
+        // written in the background. With write-ahead logging the reads run on their own
+        // connections and see the last commit, instead of waiting for the writes to finish.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -166,20 +176,223 @@ public class ClockDatabaseHelper extends SQLiteOpenHelper {
             Log.v("Upgrading alarms database from version " + oldVersion + " to " + currentVersion);
         }
 
-        if (oldVersion < VERSION_LIGHTUPPI_2) {
-            // This is a minor use case and thanks to the LightUp server sync there is little point
-            // to upgrade the database properly, so the tables are dropped and recreated instead.
+        // SQLiteOpenHelper runs the whole upgrade in one transaction, so if any step fails the
+        // database is left as it was and the upgrade is tried again the next time it is opened.
+        if (oldVersion < VERSION_5) {
+            // No release of the app used these versions, so there is no data worth keeping
             db.execSQL("DROP TABLE IF EXISTS " + INSTANCES_TABLE_NAME + ";");
             db.execSQL("DROP TABLE IF EXISTS " + CITIES_TABLE_NAME + ";");
             db.execSQL("DROP TABLE IF EXISTS " + OLD_ALARMS_TABLE_NAME + ";");
             db.execSQL("DROP TABLE IF EXISTS " + ALARMS_TABLE_NAME + ";");
+            onCreate(db);
+            return;
+        }
+        if (oldVersion < VERSION_6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < VERSION_7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < VERSION_LIGHTUPPI_1) {
+            upgradeToVersionLightUpPi1(db);
+        }
+        if (oldVersion < VERSION_LIGHTUPPI_2) {
+            upgradeToVersionLightUpPi2(db);
+        }
+        if (oldVersion < VERSION_6) {
+            // Only now the instances table has all the columns the instances are written with
+            createMissingInstances(db);
+        }
+    }
+
+    /**
+     * Moves the alarms to the new alarms table, which has a label that cannot be null, "silent"
+     * ringtones stored as {@link Alarm#NO_RINGTONE}, and no alarm
+     * time. Creates the instances and cities tables as they were in this version.
+     */
+    private static void upgradeToVersion6(SQLiteDatabase db) {
+        Log.i("Upgrading alarms database to version " + VERSION_6);
+        // These were not used in version 5, so they can just be dropped
+        db.execSQL("DROP TABLE IF EXISTS " + INSTANCES_TABLE_NAME + ";");
+        db.execSQL("DROP TABLE IF EXISTS " + CITIES_TABLE_NAME + ";");
+
+        db.execSQL("CREATE TABLE " + ALARMS_TABLE_NAME + " (" +
+                ClockContract.AlarmsColumns._ID + " INTEGER PRIMARY KEY," +
+                ClockContract.AlarmsColumns.HOUR + " INTEGER NOT NULL, " +
+                ClockContract.AlarmsColumns.MINUTES + " INTEGER NOT NULL, " +
+                ClockContract.AlarmsColumns.DAYS_OF_WEEK + " INTEGER NOT NULL, " +
+                ClockContract.AlarmsColumns.ENABLED + " INTEGER NOT NULL, " +
+                ClockContract.AlarmsColumns.VIBRATE + " INTEGER NOT NULL, " +
+                ClockContract.AlarmsColumns.LABEL + " TEXT NOT NULL, " +
+                ClockContract.AlarmsColumns.RINGTONE + " TEXT, " +
+                ClockContract.AlarmsColumns.DELETE_AFTER_USE + " INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("CREATE TABLE " + INSTANCES_TABLE_NAME + " (" +
+                ClockContract.InstancesColumns._ID + " INTEGER PRIMARY KEY," +
+                ClockContract.InstancesColumns.YEAR + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.MONTH + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.DAY + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.HOUR + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.MINUTES + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.ALARM_STATE + " INTEGER NOT NULL, " +
+                ClockContract.InstancesColumns.ALARM_ID + " INTEGER REFERENCES " +
+                    ALARMS_TABLE_NAME + "(" + ClockContract.AlarmsColumns._ID + ") " +
+                    "ON UPDATE CASCADE ON DELETE CASCADE" +
+                ");");
+        createCitiesTable(db);
+
+        execInChunks(db, OLD_ALARMS_TABLE_NAME, "INSERT INTO " + ALARMS_TABLE_NAME + " (" +
+                ClockContract.AlarmsColumns._ID + ", " +
+                ClockContract.AlarmsColumns.HOUR + ", " +
+                ClockContract.AlarmsColumns.MINUTES + ", " +
+                ClockContract.AlarmsColumns.DAYS_OF_WEEK + ", " +
+                ClockContract.AlarmsColumns.ENABLED + ", " +
+                ClockContract.AlarmsColumns.VIBRATE + ", " +
+                ClockContract.AlarmsColumns.LABEL + ", " +
+                ClockContract.AlarmsColumns.RINGTONE + ") " +
+                "SELECT _id, hour, minutes, daysofweek, enabled, vibrate, " +
+                "IFNULL(message, ''), " +
+                "CASE alert WHEN 'silent' THEN '" + Alarm.NO_RINGTONE +
+                "' WHEN '' THEN NULL ELSE alert END " +
+                "FROM " + OLD_ALARMS_TABLE_NAME);
+        db.execSQL("DROP TABLE " + OLD_ALARMS_TABLE_NAME + ";");
+    }
 
-            // Create tables and set default data
-            createAlarmsTable(db);
-            createInstanceTable(db);
-            createCitiesTable(db);
-            insertDefaultAlarms(db);
+    /**
+     * Adds the alarm settings to the instances, copied from their alarms.
+     */
+    private static void upgradeToVersion7(SQLiteDatabase db) {
+        Log.i("Upgrading alarms database to version " + VERSION_7);
+        addColumn(db, INSTANCES_TABLE_NAME,
+                ClockContract.InstancesColumns.VIBRATE + " INTEGER NOT NULL DEFAULT 0");
+        addColumn(db, INSTANCES_TABLE_NAME,
+                ClockContract.InstancesColumns.LABEL + " TEXT NOT NULL DEFAULT ''");
+        addColumn(db, INSTANCES_TABLE_NAME, ClockContract.InstancesColumns.RINGTONE + " TEXT");
+
+        final String parentAlarm = " FROM " + ALARMS_TABLE_NAME + " WHERE " +
+                ALARMS_TABLE_NAME + "." + ClockContract.AlarmsColumns._ID + " = " +
+                INSTANCES_TABLE_NAME + "." + ClockContract.InstancesColumns.ALARM_ID + ")";
+        execInChunks(db, INSTANCES_TABLE_NAME, "UPDATE " + INSTANCES_TABLE_NAME + " SET " +
+                ClockContract.InstancesColumns.VIBRATE + " = IFNULL((SELECT " +
+                    ClockContract.AlarmsColumns.VIBRATE + parentAlarm + ", 0), " +
+                ClockContract.InstancesColumns.LABEL + " = IFNULL((SELECT " +
+                    ClockContract.AlarmsColumns.LABEL + parentAlarm + ", ''), " +
+                ClockContract.InstancesColumns.RINGTONE + " = (SELECT " +
+                    ClockContract.AlarmsColumns.RINGTONE + parentAlarm);
+    }
+
+    /**
+     * Adds the LightUpPi alarm ID, alarms and instances start without one.
+     */
+    private static void upgradeToVersionLightUpPi1(SQLiteDatabase db) {
+        Log.i("Upgrading alarms database to version " + VERSION_LIGHTUPPI_1);
+        addColumn(db, ALARMS_TABLE_NAME, ClockContract.AlarmsColumns.LIGHTUPPI_ID +
+                " INTEGER NOT NULL DEFAULT " + Alarm.INVALID_ID);
+        addColumn(db, INSTANCES_TABLE_NAME, ClockContract.InstancesColumns.LIGHTUPPI_ID +
+                " INTEGER NOT NULL DEFAULT " + AlarmInstance.INVALID_ID);
+    }
+
+    /**
+     * Adds the timestamps. Existing alarms and instances are stamped with the upgrade time, as
+     * they may have changed since the last LightUpPi sync.
+     */
+    private static void upgradeToVersionLightUpPi2(SQLiteDatabase db) {
+        Log.i("Upgrading alarms database to version " + VERSION_LIGHTUPPI_2);
+        final long timestamp = System.currentTimeMillis() / 1000;
+        addColumn(db, ALARMS_TABLE_NAME,
+                ClockContract.AlarmsColumns.TIMESTAMP + " INTEGER NOT NULL DEFAULT 0");
+        addColumn(db, INSTANCES_TABLE_NAME,
+                ClockContract.InstancesColumns.TIMESTAMP + " INTEGER NOT NULL DEFAULT 0");
+        execInChunks(db, ALARMS_TABLE_NAME, "UPDATE " + ALARMS_TABLE_NAME + " SET " +
+                ClockContract.AlarmsColumns.TIMESTAMP + " = " + timestamp);
+        execInChunks(db, INSTANCES_TABLE_NAME, "UPDATE " + INSTANCES_TABLE_NAME + " SET " +
+                ClockContract.InstancesColumns.TIMESTAMP + " = " + timestamp);
+    }
+
+    /**
+     * Creates the next instance of each enabled alarm that has none, as the alarms moved from
+     * version 5 come without instances. They are registered by AlarmInitReceiver once the
+     * updated app is installed.
+     */
+    private static void createMissingInstances(SQLiteDatabase db) {
+        final Cursor cursor = db.query(ALARMS_TABLE_NAME, Alarm.QUERY_COLUMNS,
+                ClockContract.AlarmsColumns.ENABLED + " = 1 AND " +
+                ClockContract.AlarmsColumns._ID + " NOT IN (SELECT " +
+                ClockContract.InstancesColumns.ALARM_ID + " FROM " + INSTANCES_TABLE_NAME + ")",
+                null, null, null, null);
+        final Calendar currentTime = Calendar.getInstance();
+        try {
+            while (cursor.moveToNext()) {
+                final AlarmInstance instance = new Alarm(cursor).createInstanceAfter(currentTime);
+                db.insert(INSTANCES_TABLE_NAME, null, AlarmInstance.createContentValues(instance));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Adds a column unless the table already has it. The LightUpPi versions only record the
+     * changes to the alarms table, so the instances table of a database at one of them may
+     * already have the columns of a later one, and adding them again would fail the upgrade
+     * every time the database is opened.
+     */
+    private static void addColumn(SQLiteDatabase db, String table, String columnDefinition) {
+        final String column = columnDefinition.substring(0, columnDefinition.indexOf(' '));
+        if (hasColumn(db, table, column)) {
+            Log.i("Table " + table + " already has column " + column);
+            return;
+        }
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition + ";");
+    }
+
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        final Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            final int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs a statement over the rows of a table in ranges of {@link #MIGRATION_CHUNK_SIZE} row
+     * ids, so each statement only goes through part of the table however large it is. The
+     * statement gets the row id range appended, so it must not have a WHERE clause of its own.
+     */
+    private static void execInChunks(SQLiteDatabase db, String table, String statement) {
+        final String idColumn = table + "._id";
+        // Row ids are positive, so -1 means there are no more rows
+        final SQLiteStatement nextId = db.compileStatement(
+                "SELECT IFNULL(MIN(_id), -1) FROM " + table + " WHERE _id >= ?");
+        final SQLiteStatement chunk = db.compileStatement(statement +
+                " WHERE " + idColumn + " >= ? AND " + idColumn + " < ?");
+        int chunks = 0;
+        try {
+            long start = 0;
+            while (true) {
+                // Skips the gaps in the row ids, instead of running on empty ranges
+                nextId.bindLong(1, start);
+                start = nextId.simpleQueryForLong();
+                if (start < 0) {
+                    break;
+                }
+                chunk.bindLong(1, start);
+                chunk.bindLong(2, start + MIGRATION_CHUNK_SIZE);
+                chunk.execute();
+                start += MIGRATION_CHUNK_SIZE;
+                chunks++;
+            }
+        } finally {
+            nextId.close();
+            chunk.close();
         }
+        if (Log.LOGV) Log.v("Migrated " + table + " in " + chunks + " chunks");
     }
 
     long fixAlarmInsert(ContentValues values) {
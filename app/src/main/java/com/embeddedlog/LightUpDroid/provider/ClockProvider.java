@@ -17,20 +17,30 @@
 package com.embeddedlog.LightUpDroid.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.TextUtils;
 
+import com.embeddedlog.LightUpDroid.BootTrace;
 import com.embeddedlog.LightUpDroid.Log;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+
 public class ClockProvider extends ContentProvider {
     private ClockDatabaseHelper mOpenHelper;
+    // Uris changed by the batch running on each thread, notified once the batch is committed
+    private final ThreadLocal<HashSet<Uri>> mBatchChanges = new ThreadLocal<HashSet<Uri>>();
 
     private static final int ALARMS = 1;
     private static final int ALARMS_ID = 2;
@@ -71,16 +81,16 @@ public class ClockProvider extends ContentProvider {
                 break;
             case ALARMS_ID:
                 qb.setTables(ClockDatabaseHelper.ALARMS_TABLE_NAME);
-                qb.appendWhere(ClockContract.AlarmsColumns._ID + "=");
-                qb.appendWhere(uri.getLastPathSegment());
+                qb.appendWhere(ClockContract.AlarmsColumns._ID + "=?");
+                selectionArgs = withIdArg(uri.getLastPathSegment(), selectionArgs);
                 break;
             case INSTANCES:
                 qb.setTables(ClockDatabaseHelper.INSTANCES_TABLE_NAME);
                 break;
             case INSTANCES_ID:
                 qb.setTables(ClockDatabaseHelper.INSTANCES_TABLE_NAME);
-                qb.appendWhere(ClockContract.InstancesColumns._ID + "=");
-                qb.appendWhere(uri.getLastPathSegment());
+                qb.appendWhere(ClockContract.InstancesColumns._ID + "=?");
+                selectionArgs = withIdArg(uri.getLastPathSegment(), selectionArgs);
                 break;
             case CITIES:
                 qb.setTables(ClockDatabaseHelper.CITIES_TABLE_NAME);
@@ -88,7 +98,7 @@ public class ClockProvider extends ContentProvider {
             case CITIES_ID:
                 qb.setTables(ClockDatabaseHelper.CITIES_TABLE_NAME);
                 qb.appendWhere(ClockContract.CitiesColumns.CITY_ID + "=");
-                qb.appendWhere(uri.getLastPathSegment());
+                qb.appendWhereEscapeString(uri.getLastPathSegment());
                 break;
             default:
                 throw new IllegalArgumentException("Unknown URL " + uri);
@@ -137,19 +147,20 @@ public class ClockProvider extends ContentProvider {
             case ALARMS_ID:
                 alarmId = uri.getLastPathSegment();
                 count = db.update(ClockDatabaseHelper.ALARMS_TABLE_NAME, values,
-                        ClockContract.AlarmsColumns._ID + "=" + alarmId,
-                        null);
+                        ClockContract.AlarmsColumns._ID + "=?",
+                        new String[] { alarmId });
                 break;
             case INSTANCES_ID:
                 alarmId = uri.getLastPathSegment();
                 count = db.update(ClockDatabaseHelper.INSTANCES_TABLE_NAME, values,
-                        ClockContract.InstancesColumns._ID + "=" + alarmId,
-                        null);
+                        ClockContract.InstancesColumns._ID + "=?",
+                        new String[] { alarmId });
                 break;
             case CITIES_ID:
                 alarmId = uri.getLastPathSegment();
                 count = db.update(ClockDatabaseHelper.CITIES_TABLE_NAME, values,
-                        ClockContract.CitiesColumns.CITY_ID + "=" + alarmId,
+                        ClockContract.CitiesColumns.CITY_ID + "="
+                                + DatabaseUtils.sqlEscapeString(alarmId),
                         null);
                 break;
             default: {
@@ -158,7 +169,8 @@ public class ClockProvider extends ContentProvider {
             }
         }
         if (Log.LOGV) Log.v("*** notifyChange() id: " + alarmId + " url " + uri);
-        getContext().getContentResolver().notifyChange(uri, null);
+        BootTrace.count(BootTrace.ROWS_WRITTEN, count);
+        notifyChange(uri);
         return count;
     }
 
@@ -174,14 +186,21 @@ public class ClockProvider extends ContentProvider {
                 rowId = db.insert(ClockDatabaseHelper.INSTANCES_TABLE_NAME, null, initialValues);
                 break;
             case CITIES:
-                rowId = db.insert(ClockDatabaseHelper.CITIES_TABLE_NAME, null, initialValues);
-                break;
+                // Cities are keyed by their id, selecting a city again replaces its row
+                rowId = db.insertWithOnConflict(ClockDatabaseHelper.CITIES_TABLE_NAME, null,
+                        initialValues, SQLiteDatabase.CONFLICT_REPLACE);
+                Uri cityUri = City.getContentUriForId(
+                        initialValues.getAsString(ClockContract.CitiesColumns.CITY_ID));
+                BootTrace.count(BootTrace.ROWS_WRITTEN);
+                notifyChange(cityUri);
+                return cityUri;
             default:
                 throw new IllegalArgumentException("Cannot insert from URL: " + uri);
         }
 
+        BootTrace.count(BootTrace.ROWS_WRITTEN);
         Uri uriResult = ContentUris.withAppendedId(ClockContract.AlarmsColumns.CONTENT_URI, rowId);
-        getContext().getContentResolver().notifyChange(uriResult, null);
+        notifyChange(uriResult);
         return uriResult;
     }
 
@@ -197,11 +216,11 @@ public class ClockProvider extends ContentProvider {
             case ALARMS_ID:
                 primaryKey = uri.getLastPathSegment();
                 if (TextUtils.isEmpty(where)) {
-                    where = ClockContract.AlarmsColumns._ID + "=" + primaryKey;
+                    where = ClockContract.AlarmsColumns._ID + "=?";
                 } else {
-                    where = ClockContract.AlarmsColumns._ID + "=" + primaryKey +
-                            " AND (" + where + ")";
+                    where = ClockContract.AlarmsColumns._ID + "=? AND (" + where + ")";
                 }
+                whereArgs = withIdArg(primaryKey, whereArgs);
                 count = db.delete(ClockDatabaseHelper.ALARMS_TABLE_NAME, where, whereArgs);
                 break;
             case INSTANCES:
@@ -210,11 +229,11 @@ public class ClockProvider extends ContentProvider {
             case INSTANCES_ID:
                 primaryKey = uri.getLastPathSegment();
                 if (TextUtils.isEmpty(where)) {
-                    where = ClockContract.InstancesColumns._ID + "=" + primaryKey;
+                    where = ClockContract.InstancesColumns._ID + "=?";
                 } else {
-                    where = ClockContract.InstancesColumns._ID + "=" + primaryKey +
-                            " AND (" + where + ")";
+                    where = ClockContract.InstancesColumns._ID + "=? AND (" + where + ")";
                 }
+                whereArgs = withIdArg(primaryKey, whereArgs);
                 count = db.delete(ClockDatabaseHelper.INSTANCES_TABLE_NAME, where, whereArgs);
                 break;
             case CITIES:
@@ -223,9 +242,11 @@ public class ClockProvider extends ContentProvider {
             case CITIES_ID:
                 primaryKey = uri.getLastPathSegment();
                 if (TextUtils.isEmpty(where)) {
-                    where = ClockContract.CitiesColumns.CITY_ID + "=" + primaryKey;
+                    where = ClockContract.CitiesColumns.CITY_ID + "="
+                            + DatabaseUtils.sqlEscapeString(primaryKey);
                 } else {
-                    where = ClockContract.CitiesColumns.CITY_ID +"=" + primaryKey +
+                    where = ClockContract.CitiesColumns.CITY_ID + "="
+                            + DatabaseUtils.sqlEscapeString(primaryKey) +
                             " AND (" + where + ")";
                 }
                 count = db.delete(ClockDatabaseHelper.CITIES_TABLE_NAME, where, whereArgs);
@@ -234,10 +255,72 @@ public class ClockProvider extends ContentProvider {
                 throw new IllegalArgumentException("Cannot delete from URL: " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        BootTrace.count(BootTrace.ROWS_WRITTEN, count);
+        notifyChange(uri);
         return count;
     }
 
+    /**
+     * Applies all the operations in one transaction, so either all or none of them are stored.
+     * Observers are notified once the transaction is committed, of the changed row if there
+     * was only one, or of the changed tables otherwise.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final HashSet<Uri> changes = new HashSet<Uri>();
+        final ContentProviderResult[] results;
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        mBatchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.set(null);
+        }
+
+        if (changes.size() == 1) {
+            notifyChange(changes.iterator().next());
+        } else {
+            final HashSet<Uri> tables = new HashSet<Uri>();
+            for (Uri uri : changes) {
+                tables.add(new Uri.Builder().scheme(uri.getScheme())
+                        .authority(uri.getAuthority())
+                        .appendPath(uri.getPathSegments().get(0)).build());
+            }
+            for (Uri table : tables) {
+                notifyChange(table);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Adds the row id of a single row uri as the first selection argument. The SQL of the
+     * statements on single rows is then the same for every row, so each connection compiles it
+     * once and reuses it from its statement cache, rather than compiling it on every call.
+     */
+    private static String[] withIdArg(String id, String[] selectionArgs) {
+        if (selectionArgs == null || selectionArgs.length == 0) {
+            return new String[] { id };
+        }
+        final String[] args = new String[selectionArgs.length + 1];
+        args[0] = id;
+        System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        return args;
+    }
+
+    private void notifyChange(Uri uri) {
+        final HashSet<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
     @Override
     public Bundle call(String method, String arg, Bundle extras) {
         if (method.equals("resetAlarmTables")) {
@@ -21,8 +21,10 @@ import android.content.Context;
 import com.embeddedlog.LightUpDroid.R;
 
 import java.text.DateFormatSymbols;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashSet;
+import java.util.Locale;
 
 /*
  * Days of week code as a single int.
@@ -61,6 +63,12 @@ public final class DaysOfWeek {
         return (bitIndex + 1) % DAYS_IN_A_WEEK + 1;
     }
 
+    // Strings of each bitmask for sLocale, built as they are first needed
+    private static final Object sStringsLock = new Object();
+    private static final String[] sStrings = new String[ALL_DAYS_SET + 1];
+    private static final String[] sAccessibilityStrings = new String[ALL_DAYS_SET + 1];
+    private static Locale sLocale;
+
     // Bitmask of all repeating days
     private int mBitSet;
 
@@ -76,13 +84,36 @@ public final class DaysOfWeek {
         return toString(context, false, true);
     }
 
+    /**
+     * Returns the cached string of the days, which is only built the first time it is asked for
+     * in the current locale.
+     */
     private String toString(Context context, boolean showNever, boolean forAccessibility) {
-        StringBuilder ret = new StringBuilder();
-
         // no days
         if (mBitSet == NO_DAYS_SET) {
             return showNever ? context.getText(R.string.never).toString() : "";
         }
+        if (mBitSet < 0 || mBitSet > ALL_DAYS_SET) {
+            return buildString(context, forAccessibility);
+        }
+
+        synchronized (sStringsLock) {
+            final Locale locale = context.getResources().getConfiguration().locale;
+            if (!locale.equals(sLocale)) {
+                sLocale = locale;
+                Arrays.fill(sStrings, null);
+                Arrays.fill(sAccessibilityStrings, null);
+            }
+            final String[] strings = forAccessibility ? sAccessibilityStrings : sStrings;
+            if (strings[mBitSet] == null) {
+                strings[mBitSet] = buildString(context, forAccessibility);
+            }
+            return strings[mBitSet];
+        }
+    }
+
+    private String buildString(Context context, boolean forAccessibility) {
+        StringBuilder ret = new StringBuilder();
 
         // every day
         if (mBitSet == ALL_DAYS_SET) {
@@ -125,6 +156,14 @@ public final class DaysOfWeek {
         }
     }
 
+    /**
+     * @param day Calendar.SUNDAY, Calendar.MONDAY, Calendar.TUESDAY, etc.
+     * @return true if the day is set.
+     */
+    public boolean isDaySet(int day) {
+        return isBitEnabled(convertDayToBitIndex(day));
+    }
+
     private boolean isBitEnabled(int bitIndex) {
         return ((mBitSet & (1 << bitIndex)) > 0);
     }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.stopwatch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.embeddedlog.LightUpDroid.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Append-only log of the stopwatch laps, shared by StopwatchFragment and StopwatchService.
+ *
+ * Entry i holds the total stopwatch time at the end of lap i + 1 as a fixed-width 8 byte long,
+ * so appending a lap and reading any lap are both a single seek in the file. Reads go through a
+ * small cache of pages so that scrolling through the laps list touches the file once per page.
+ * The lap statistics are built once when the log is opened and then updated with each lap.
+ */
+public class LapLog {
+    private static final String FILE_NAME = "stopwatch_laps.bin";
+    private static final int ENTRY_SIZE = 8;
+    private static final int PAGE_SIZE = 128;
+    private static final int MAX_CACHED_PAGES = 4;
+
+    private static LapLog sInstance;
+
+    private final File mFile;
+    private RandomAccessFile mRaf;
+    private int mCount;
+    private final LapStats mStats = new LapStats();
+    private final byte[] mPageBytes = new byte[PAGE_SIZE * ENTRY_SIZE];
+    private final LinkedHashMap<Integer, long[]> mPages =
+            new LinkedHashMap<Integer, long[]>(MAX_CACHED_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, long[]> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+
+    public static synchronized LapLog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LapLog(new File(context.getFilesDir(), FILE_NAME));
+            sInstance.migrateFromSharedPrefs(
+                    PreferenceManager.getDefaultSharedPreferences(context));
+        }
+        return sInstance;
+    }
+
+    private LapLog(File file) {
+        mFile = file;
+        try {
+            mRaf = new RandomAccessFile(mFile, "rw");
+            // A partially written entry can only be the last one, drop it
+            mCount = (int) (mRaf.length() / ENTRY_SIZE);
+            mRaf.setLength((long) mCount * ENTRY_SIZE);
+        } catch (IOException e) {
+            Log.e("LapLog could not open " + mFile, e);
+            mRaf = null;
+            mCount = 0;
+        }
+        long prevTotal = 0;
+        for (int i = 0; i < mCount; i++) {
+            long total = get(i);
+            mStats.add(total - prevTotal);
+            prevTotal = total;
+        }
+    }
+
+    /**
+     * @return the number of completed laps.
+     */
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /**
+     * Adds a completed lap.
+     * @param totalTime stopwatch time at the end of the lap
+     */
+    public synchronized void append(long totalTime) {
+        long lapTime = totalTime - (mCount > 0 ? get(mCount - 1) : 0);
+        if (mRaf != null) {
+            try {
+                mRaf.seek((long) mCount * ENTRY_SIZE);
+                mRaf.writeLong(totalTime);
+            } catch (IOException e) {
+                Log.e("LapLog could not append lap " + (mCount + 1), e);
+                return;
+            }
+        }
+        long[] page = mPages.get(mCount / PAGE_SIZE);
+        if (page != null) {
+            page[mCount % PAGE_SIZE] = totalTime;
+        }
+        mCount++;
+        mStats.add(lapTime);
+    }
+
+    /**
+     * @return the stopwatch time at the end of the lap, lap 0 being the first one.
+     */
+    public synchronized long get(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Lap " + index + " of " + mCount);
+        }
+        int pageIndex = index / PAGE_SIZE;
+        long[] page = mPages.get(pageIndex);
+        if (page == null) {
+            page = readPage(pageIndex);
+            mPages.put(pageIndex, page);
+        }
+        return page[index % PAGE_SIZE];
+    }
+
+    /**
+     * @return the duration of the lap, lap 0 being the first one.
+     */
+    public synchronized long getLapTime(int index) {
+        return get(index) - (index > 0 ? get(index - 1) : 0);
+    }
+
+    /**
+     * @return the statistics of the completed laps, kept up to date as laps are added.
+     */
+    public synchronized LapStats getStats() {
+        return mStats;
+    }
+
+    public synchronized void clear() {
+        if (mRaf != null) {
+            try {
+                mRaf.setLength(0);
+            } catch (IOException e) {
+                Log.e("LapLog could not clear " + mFile, e);
+            }
+        }
+        mPages.clear();
+        mCount = 0;
+        mStats.clear();
+    }
+
+    private long[] readPage(int pageIndex) {
+        long[] page = new long[PAGE_SIZE];
+        if (mRaf == null) {
+            return page;
+        }
+        int first = pageIndex * PAGE_SIZE;
+        int entries = Math.min(PAGE_SIZE, mCount - first);
+        try {
+            mRaf.seek((long) first * ENTRY_SIZE);
+            mRaf.readFully(mPageBytes, 0, entries * ENTRY_SIZE);
+            ByteBuffer.wrap(mPageBytes, 0, entries * ENTRY_SIZE).asLongBuffer()
+                    .get(page, 0, entries);
+        } catch (IOException e) {
+            Log.e("LapLog could not read laps from " + first, e);
+        }
+        return page;
+    }
+
+    /**
+     * Moves the laps stored one key per lap by previous versions into the log.
+     */
+    private void migrateFromSharedPrefs(SharedPreferences prefs) {
+        if (!prefs.contains(Stopwatches.PREF_LAP_NUM)) {
+            return;
+        }
+        // The last key repeats the previous total as the start of the running lap
+        int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, 0);
+        SharedPreferences.Editor editor = prefs.edit();
+        clear();
+        for (int i = 1; i <= numLaps; i++) {
+            String key = Stopwatches.PREF_LAP_TIME + Integer.toString(i);
+            if (i < numLaps) {
+                append(prefs.getLong(key, 0));
+            }
+            editor.remove(key);
+        }
+        editor.remove(Stopwatches.PREF_LAP_NUM);
+        editor.apply();
+    }
+}
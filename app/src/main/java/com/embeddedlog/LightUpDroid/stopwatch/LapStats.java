@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.stopwatch;
+
+/**
+ * Running statistics of the completed stopwatch laps. Every lap is folded in as it is added, so
+ * the fastest and slowest laps, the mean, the standard deviation (Welford's method) and the
+ * moving average over the last laps all cost O(1) per lap, whatever the number of laps.
+ */
+public class LapStats {
+    public static final int MOVING_AVERAGE_LAPS = 5;
+
+    private int mCount;
+    private int mFastestLap;
+    private long mFastestTime;
+    private int mSlowestLap;
+    private long mSlowestTime;
+    private double mMean;
+    private double mSquaredDeviations;
+    // Ring buffer with the last MOVING_AVERAGE_LAPS laps and their sum
+    private final long[] mRecent = new long[MOVING_AVERAGE_LAPS];
+    private long mRecentSum;
+
+    /**
+     * Adds the next completed lap.
+     */
+    public void add(long lapTime) {
+        mCount++;
+        if (mCount == 1 || lapTime < mFastestTime) {
+            mFastestLap = mCount;
+            mFastestTime = lapTime;
+        }
+        if (mCount == 1 || lapTime > mSlowestTime) {
+            mSlowestLap = mCount;
+            mSlowestTime = lapTime;
+        }
+        double delta = lapTime - mMean;
+        mMean += delta / mCount;
+        mSquaredDeviations += delta * (lapTime - mMean);
+
+        int slot = (mCount - 1) % MOVING_AVERAGE_LAPS;
+        mRecentSum += lapTime - mRecent[slot];
+        mRecent[slot] = lapTime;
+    }
+
+    public void clear() {
+        mCount = mFastestLap = mSlowestLap = 0;
+        mFastestTime = mSlowestTime = mRecentSum = 0;
+        mMean = mSquaredDeviations = 0;
+        for (int i = 0; i < MOVING_AVERAGE_LAPS; i++) {
+            mRecent[i] = 0;
+        }
+    }
+
+    /**
+     * @return the number of completed laps.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return the number of the fastest lap, the first one being 1, or 0 without laps.
+     */
+    public int getFastestLap() {
+        return mFastestLap;
+    }
+
+    public long getFastestTime() {
+        return mFastestTime;
+    }
+
+    /**
+     * @return the number of the slowest lap, the first one being 1, or 0 without laps.
+     */
+    public int getSlowestLap() {
+        return mSlowestLap;
+    }
+
+    public long getSlowestTime() {
+        return mSlowestTime;
+    }
+
+    public long getMeanTime() {
+        return Math.round(mMean);
+    }
+
+    /**
+     * @return the population standard deviation of the lap times.
+     */
+    public long getStandardDeviation() {
+        return mCount == 0 ? 0 : Math.round(Math.sqrt(mSquaredDeviations / mCount));
+    }
+
+    /**
+     * @return the number of laps in the moving average, at most MOVING_AVERAGE_LAPS.
+     */
+    public int getMovingAverageLaps() {
+        return Math.min(mCount, MOVING_AVERAGE_LAPS);
+    }
+
+    public long getMovingAverage() {
+        int laps = getMovingAverageLaps();
+        return laps == 0 ? 0 : mRecentSum / laps;
+    }
+}
@@ -5,7 +5,6 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
@@ -45,7 +44,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class StopwatchFragment extends DeskClockFragment
-        implements OnSharedPreferenceChangeListener {
+        implements StopwatchState.Listener {
     private static final boolean DEBUG = false;
 
     private static final String TAG = "StopwatchFragment";
@@ -57,6 +56,7 @@ public class StopwatchFragment extends DeskClockFragment
     private CircleTimerView mTime;
     private CountingTimerView mTimeText;
     private ListView mLapsList;
+    private View mLapStatsView;
     private ImageButton mShareButton;
     private ListPopupWindow mSharePopup;
     private WakeLock mWakeLock;
@@ -69,7 +69,9 @@ public class StopwatchFragment extends DeskClockFragment
     private View mEndSpace;
     private boolean mSpacersUsed;
 
-    // Used for calculating the time from the start taking into account the pause times
+    // Copy of the StopwatchState times, used to draw the running time taking into account the
+    // pause times
+    private StopwatchState mStopwatch;
     long mStartTime = 0;
     long mAccumulatedTime = 0;
 
@@ -91,10 +93,14 @@ public class StopwatchFragment extends DeskClockFragment
         }
     }
 
-    // Adapter for the ListView that shows the lap times.
+    // Adapter for the ListView that shows the lap times. The completed laps are read lazily from
+    // the LapLog, newest first, after the active lap in position 0.
     class LapsListAdapter extends BaseAdapter {
 
-        ArrayList<Lap> mLaps = new ArrayList<Lap>();
+        private final LapLog mLapLog;
+        // Only the active lap is used as a view tag, see Lap.updateView
+        private final Lap mActiveLap = new Lap(0, 0);
+        private final Lap mCompletedLap = new Lap(0, 0);
         private final LayoutInflater mInflater;
         private final int mBackgroundColor;
         private final String[] mFormats;
@@ -110,8 +116,11 @@ public class StopwatchFragment extends DeskClockFragment
         private int mLapIndex = 0;
         private int mTotalIndex = 0;
         private String mLapFormat;
+        // Rows known to the list, only changed together with notifyDataSetChanged()
+        private int mCount = 0;
 
         public LapsListAdapter(Context context) {
+            mLapLog = LapLog.getInstance(context);
             mInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             mBackgroundColor = getResources().getColor(R.color.blackish);
             mFormats = context.getResources().getStringArray(R.array.stopwatch_format_set);
@@ -126,10 +135,10 @@ public class StopwatchFragment extends DeskClockFragment
 
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
-            if (mLaps.size() == 0 || position >= mLaps.size()) {
+            Lap lap = getItem(position);
+            if (lap == null) {
                 return null;
             }
-            Lap lap = getItem(position);
             View lapInfo;
             if (convertView != null) {
                 lapInfo = convertView;
@@ -137,9 +146,9 @@ public class StopwatchFragment extends DeskClockFragment
                 lapInfo = mInflater.inflate(R.layout.lap_view, parent, false);
                 lapInfo.setBackgroundColor(mBackgroundColor);
             }
-            lapInfo.setTag(lap);
+            lapInfo.setTag(lap == mActiveLap ? lap : null);
             TextView count = (TextView)lapInfo.findViewById(R.id.lap_number);
-            count.setText(String.format(mLapFormat, mLaps.size() - position).toUpperCase());
+            count.setText(String.format(mLapFormat, getCount() - position).toUpperCase());
             setTimeText(lapInfo, lap);
 
             return lapInfo;
@@ -152,22 +161,81 @@ public class StopwatchFragment extends DeskClockFragment
             totalTime.setText(Stopwatches.formatTimeText(lap.mTotalTime, mFormats[mTotalIndex]));
         }
 
+        /**
+         * Prints the statistics of the completed laps into the laps list header, using the
+         * format of the lap time column.
+         */
+        protected void setStatsText(View statsView) {
+            LapStats stats = mLapLog.getStats();
+            String format = mFormats[mLapIndex];
+            TextView range = (TextView)statsView.findViewById(R.id.lap_stats_range);
+            TextView mean = (TextView)statsView.findViewById(R.id.lap_stats_mean);
+            range.setText(getString(R.string.sw_lap_stats_range,
+                    stats.getFastestLap(),
+                    Stopwatches.formatTimeText(stats.getFastestTime(), format),
+                    stats.getSlowestLap(),
+                    Stopwatches.formatTimeText(stats.getSlowestTime(), format)));
+            mean.setText(getString(R.string.sw_lap_stats_mean,
+                    Stopwatches.formatTimeText(stats.getMeanTime(), format),
+                    Stopwatches.formatTimeText(stats.getStandardDeviation(), format),
+                    stats.getMovingAverageLaps(),
+                    Stopwatches.formatTimeText(stats.getMovingAverage(), format)));
+        }
+
+        @Override
+        public void notifyDataSetChanged() {
+            if (mLapStatsView != null) {
+                setStatsText(mLapStatsView);
+            }
+            super.notifyDataSetChanged();
+        }
+
         @Override
         public int getCount() {
-            return mLaps.size();
+            return mCount;
         }
 
+        /**
+         * @return true if the log holds laps that are not shown yet.
+         */
+        public boolean hasNewLaps() {
+            return getLogCount() != mCount;
+        }
+
+        private int getLogCount() {
+            int completedLaps = mLapLog.size();
+            return completedLaps == 0 ? 0 : completedLaps + 1;
+        }
+
+        /**
+         * @return the lap shown at the position. Completed laps share a single Lap object that
+         * is only valid until the next call.
+         */
         @Override
         public Lap getItem(int position) {
-            if (mLaps.size() == 0 || position >= mLaps.size()) {
+            int count = getCount();
+            if (count == 0 || position >= count) {
                 return null;
+            } else if (position == 0) {
+                return mActiveLap;
             }
-            return mLaps.get(position);
+            int index = count - 1 - position;
+            mCompletedLap.mTotalTime = mLapLog.get(index);
+            mCompletedLap.mLapTime = mLapLog.getLapTime(index);
+            return mCompletedLap;
+        }
+
+        /**
+         * @return the total time at the end of the last completed lap.
+         */
+        public long getLastLapTotal() {
+            int completedLaps = mLapLog.size();
+            return completedLaps == 0 ? 0 : mLapLog.get(completedLaps - 1);
         }
 
         private void updateLapFormat() {
-            // Note Stopwatches.MAX_LAPS < 100
-            mLapFormat = mLapFormatSet[mLaps.size() < 10 ? 0 : 1];
+            int digits = Integer.toString(getCount()).length();
+            mLapFormat = mLapFormatSet[Math.min(digits, mLapFormatSet.length) - 1];
         }
 
         private void resetTimeFormats() {
@@ -197,52 +265,50 @@ public class StopwatchFragment extends DeskClockFragment
             return formatChanged;
         }
 
-        public void addLap(Lap l) {
-            mLaps.add(0, l);
-            // for efficiency caller also calls notifyDataSetChanged()
+        /**
+         * Shows the lap just completed at the given total time and starts a new active one.
+         * For efficiency caller also calls notifyDataSetChanged().
+         */
+        public void addLap(long totalTime) {
+            mActiveLap.mLapTime = 0;
+            mActiveLap.mTotalTime = totalTime;
+            mCount = getLogCount();
+            updateTimeFormats(mLapLog.size() - 1);
+            updateLapFormat();
         }
 
         public void clearLaps() {
-            mLaps.clear();
+            mActiveLap.mLapTime = mActiveLap.mTotalTime = 0;
+            mCount = 0;
             updateLapFormat();
             resetTimeFormats();
             notifyDataSetChanged();
         }
 
-        // Helper function used to get the lap data to be stored in the activity's bundle
-        public long [] getLapTimes() {
-            int size = mLaps.size();
-            if (size == 0) {
-                return null;
-            }
-            long [] laps = new long[size];
-            for (int i = 0; i < size; i ++) {
-                laps[i] = mLaps.get(i).mTotalTime;
-            }
-            return laps;
-        }
-
-        // Helper function to restore adapter's data from the activity's bundle
-        public void setLapTimes(long [] laps) {
-            if (laps == null || laps.length == 0) {
-                return;
-            }
-
-            int size = laps.length;
-            mLaps.clear();
-            for (long lap : laps) {
-                mLaps.add(new Lap(lap, 0));
-            }
-            long totalTime = 0;
-            for (int i = size -1; i >= 0; i --) {
-                totalTime += laps[i];
-                mLaps.get(i).mTotalTime = totalTime;
-                updateTimeFormats(mLaps.get(i));
+        /**
+         * Picks up laps added to the log from outside the fragment, for example from the
+         * notification, without reading the laps themselves.
+         */
+        public void reloadLaps(long totalTime) {
+            mCount = getLogCount();
+            resetTimeFormats();
+            mActiveLap.mTotalTime = totalTime;
+            mActiveLap.mLapTime = totalTime - getLastLapTotal();
+            updateTimeFormats(mActiveLap);
+            if (mLapLog.size() > 0) {
+                updateTimeFormats(mLapLog.size() - 1);
             }
             updateLapFormat();
             showLaps();
             notifyDataSetChanged();
         }
+
+        // The longest completed lap and the last total bound the widths of all completed laps
+        private void updateTimeFormats(int lastIndex) {
+            mCompletedLap.mLapTime = mLapLog.getStats().getSlowestTime();
+            mCompletedLap.mTotalTime = mLapLog.get(lastIndex);
+            updateTimeFormats(mCompletedLap);
+        }
     }
 
     LapsListAdapter mLapsAdapter;
@@ -252,27 +318,16 @@ public class StopwatchFragment extends DeskClockFragment
 
     private void rightButtonAction() {
         long time = Utils.getTimeNow();
-        Context context = getActivity().getApplicationContext();
-        Intent intent = new Intent(context, StopwatchService.class);
-        intent.putExtra(Stopwatches.MESSAGE_TIME, time);
-        intent.putExtra(Stopwatches.SHOW_NOTIF, false);
+        // The views are updated once the StopwatchState publishes the change
         switch (mState) {
             case Stopwatches.STOPWATCH_RUNNING:
                 // do stop
-                long curTime = Utils.getTimeNow();
-                mAccumulatedTime += (curTime - mStartTime);
-                doStop();
-                intent.setAction(Stopwatches.STOP_STOPWATCH);
-                context.startService(intent);
-                releaseWakeLock();
+                mStopwatch.stop(time);
                 break;
             case Stopwatches.STOPWATCH_RESET:
             case Stopwatches.STOPWATCH_STOPPED:
                 // do start
-                doStart(time);
-                intent.setAction(Stopwatches.START_STOPWATCH);
-                context.startService(intent);
-                acquireWakeLock();
+                mStopwatch.start(time);
                 break;
             default:
                 Log.wtf("Illegal state " + mState
@@ -292,24 +347,14 @@ public class StopwatchFragment extends DeskClockFragment
             @Override
             public void onClick(View v) {
                 long time = Utils.getTimeNow();
-                Context context = getActivity().getApplicationContext();
-                Intent intent = new Intent(context, StopwatchService.class);
-                intent.putExtra(Stopwatches.MESSAGE_TIME, time);
-                intent.putExtra(Stopwatches.SHOW_NOTIF, false);
                 switch (mState) {
                     case Stopwatches.STOPWATCH_RUNNING:
                         // Save lap time
-                        addLapTime(time);
-                        doLap();
-                        intent.setAction(Stopwatches.LAP_STOPWATCH);
-                        context.startService(intent);
+                        mStopwatch.lap(time);
                         break;
                     case Stopwatches.STOPWATCH_STOPPED:
                         // do reset
-                        doReset();
-                        intent.setAction(Stopwatches.RESET_STOPWATCH);
-                        context.startService(intent);
-                        releaseWakeLock();
+                        mStopwatch.reset();
                         break;
                     default:
                         // Happens in monkey tests
@@ -335,6 +380,9 @@ public class StopwatchFragment extends DeskClockFragment
         mTimeText = (CountingTimerView)v.findViewById(R.id.stopwatch_time_text);
         mLapsList = (ListView)v.findViewById(R.id.laps_list);
         mLapsList.setDividerHeight(0);
+        mLapStatsView = inflater.inflate(R.layout.lap_stats_view, mLapsList, false);
+        mLapsList.addHeaderView(mLapStatsView, null, false);
+        mStopwatch = StopwatchState.getInstance(getActivity());
         mLapsAdapter = new LapsListAdapter(getActivity());
         mLapsList.setAdapter(mLapsAdapter);
 
@@ -462,8 +510,8 @@ public class StopwatchFragment extends DeskClockFragment
     @Override
     public void onResume() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        prefs.registerOnSharedPreferenceChangeListener(this);
-        readFromSharedPref(prefs);
+        mStopwatch.addListener(this);
+        readStopwatchState(prefs);
         mTime.readFromSharedPref(prefs, "sw");
         mTime.postInvalidate();
 
@@ -498,12 +546,12 @@ public class StopwatchFragment extends DeskClockFragment
         if (mState == Stopwatches.STOPWATCH_RUNNING) {
             stopUpdateThread();
         }
-        // The stopwatch must keep running even if the user closes the app so save stopwatch state
-        // in shared prefs
+        // The StopwatchState keeps the stopwatch running when the user closes the app, only the
+        // circle view state needs saving
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        prefs.unregisterOnSharedPreferenceChangeListener(this);
-        writeToSharedPref(prefs);
+        mStopwatch.removeListener(this);
         mTime.writeToSharedPref(prefs, "sw");
+        prefs.edit().putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, false).apply();
         mTimeText.blinkTimeStr(false);
         if (mSharePopup != null) {
             mSharePopup.dismiss();
@@ -556,7 +604,6 @@ public class StopwatchFragment extends DeskClockFragment
         if (DEBUG) Log.v("StopwatchFragment.doReset");
         SharedPreferences prefs =
                 PreferenceManager.getDefaultSharedPreferences(getActivity());
-        Utils.clearSwSharedPref(prefs);
         mTime.clearSharedPref(prefs, "sw");
         mAccumulatedTime = 0;
         mLapsAdapter.clearLaps();
@@ -670,28 +717,10 @@ public class StopwatchFragment extends DeskClockFragment
                 Stopwatches.getShareTitle(getActivity().getApplicationContext()));
         intent.putExtra(Intent.EXTRA_TEXT, Stopwatches.buildShareResults(
                 getActivity().getApplicationContext(), mTimeText.getTimeString(),
-                getLapShareTimes(mLapsAdapter.getLapTimes())));
+                mStopwatch.getTotalTime(Utils.getTimeNow()), mStopwatch.getLaps()));
         return intent;
     }
 
-    /** Turn laps as they would be saved in prefs into format for sharing. **/
-    private long[] getLapShareTimes(long[] input) {
-        if (input == null) {
-            return null;
-        }
-
-        int numLaps = input.length;
-        long[] output = new long[numLaps];
-        long prevLapElapsedTime = 0;
-        for (int lap_i = numLaps - 1; lap_i >= 0; lap_i--) {
-            long lap = input[lap_i];
-            Log.v("lap "+lap_i+": "+lap);
-            output[lap_i] = lap - prevLapElapsedTime;
-            prevLapElapsedTime = lap;
-        }
-        return output;
-    }
-
     /***
      * Update the buttons on the stopwatch according to the watch's state
      */
@@ -704,8 +733,8 @@ public class StopwatchFragment extends DeskClockFragment
                 showShareButton(false);
                 break;
             case Stopwatches.STOPWATCH_RUNNING:
-                setButton(mLeftButton, R.string.sw_lap_button, R.drawable.ic_lap,
-                        !reachedMaxLaps(), View.VISIBLE);
+                setButton(mLeftButton, R.string.sw_lap_button, R.drawable.ic_lap, true,
+                        View.VISIBLE);
                 setStartStopText(mCircleLayout, mCenterButton, R.string.sw_stop_button);
                 showShareButton(false);
                 break;
@@ -719,9 +748,6 @@ public class StopwatchFragment extends DeskClockFragment
                 break;
         }
     }
-    private boolean reachedMaxLaps() {
-        return mLapsAdapter.getCount() >= Stopwatches.MAX_LAPS;
-    }
 
     /***
      * Set a single button with the string and states provided.
@@ -780,48 +806,35 @@ public class StopwatchFragment extends DeskClockFragment
     }
 
     /***
-     * Handle action when user presses the lap button
-     * @param time - in hundredth of a second
+     * Shows the lap just added to the StopwatchState
      */
-    private void addLapTime(long time) {
+    private void addLapTime() {
+        LapLog laps = mStopwatch.getLaps();
         // The total elapsed time
-        final long curTime = time - mStartTime + mAccumulatedTime;
-        int size = mLapsAdapter.getCount();
-        if (size == 0) {
-            // Create and add the first lap
-            Lap firstLap = new Lap(curTime, curTime);
-            mLapsAdapter.addLap(firstLap);
-            // Create the first active lap
-            mLapsAdapter.addLap(new Lap(0, curTime));
-            // Update the interval on the clock and check the lap and total time formatting
+        final long curTime = laps.get(laps.size() - 1);
+        final long lapTime = laps.getLapTime(laps.size() - 1);
+        if (mLapsAdapter.getCount() == 0) {
+            // Update the interval on the clock with the first lap
             mTime.setIntervalTime(curTime);
-            mLapsAdapter.updateTimeFormats(firstLap);
         } else {
-            // Finish active lap
-            final long lapTime = curTime - mLapsAdapter.getItem(1).mTotalTime;
-            mLapsAdapter.getItem(0).mLapTime = lapTime;
-            mLapsAdapter.getItem(0).mTotalTime = curTime;
-            // Create a new active lap
-            mLapsAdapter.addLap(new Lap(0, curTime));
-            // Update marker on clock and check that formatting for the lap number
+            // Update marker on clock
             mTime.setMarkerTime(lapTime);
-            mLapsAdapter.updateLapFormat();
         }
+        // Finish the active lap and create a new one
+        mLapsAdapter.addLap(curTime);
         // Repaint the laps list
         mLapsAdapter.notifyDataSetChanged();
 
         // Start lap animation starting from the second lap
         mTime.stopIntervalAnimation();
-        if (!reachedMaxLaps()) {
-            mTime.startIntervalAnimation();
-        }
+        mTime.startIntervalAnimation();
     }
 
     private void updateCurrentLap(long totalTime) {
         // There are either 0, 2 or more Laps in the list See {@link #addLapTime}
         if (mLapsAdapter.getCount() > 0) {
             Lap curLap = mLapsAdapter.getItem(0);
-            curLap.mLapTime = totalTime - mLapsAdapter.getItem(1).mTotalTime;
+            curLap.mLapTime = totalTime - mLapsAdapter.getLastLapTotal();
             curLap.mTotalTime = totalTime;
             // If this lap has caused a change in the format for total and/or lap time, all of
             // the rows need a fresh print. The simplest way to refresh all of the rows is
@@ -902,56 +915,16 @@ public class StopwatchFragment extends DeskClockFragment
         }
     };
 
-    private void writeToSharedPref(SharedPreferences prefs) {
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putLong (Stopwatches.PREF_START_TIME, mStartTime);
-        editor.putLong (Stopwatches.PREF_ACCUM_TIME, mAccumulatedTime);
-        editor.putInt (Stopwatches.PREF_STATE, mState);
-        if (mLapsAdapter != null) {
-            long [] laps = mLapsAdapter.getLapTimes();
-            if (laps != null) {
-                editor.putInt (Stopwatches.PREF_LAP_NUM, laps.length);
-                for (int i = 0; i < laps.length; i++) {
-                    String key = Stopwatches.PREF_LAP_TIME + Integer.toString(laps.length - i);
-                    editor.putLong (key, laps[i]);
-                }
-            }
-        }
-        if (mState == Stopwatches.STOPWATCH_RUNNING) {
-            editor.putLong(Stopwatches.NOTIF_CLOCK_BASE, mStartTime-mAccumulatedTime);
-            editor.putLong(Stopwatches.NOTIF_CLOCK_ELAPSED, -1);
-            editor.putBoolean(Stopwatches.NOTIF_CLOCK_RUNNING, true);
-        } else if (mState == Stopwatches.STOPWATCH_STOPPED) {
-            editor.putLong(Stopwatches.NOTIF_CLOCK_ELAPSED, mAccumulatedTime);
-            editor.putLong(Stopwatches.NOTIF_CLOCK_BASE, -1);
-            editor.putBoolean(Stopwatches.NOTIF_CLOCK_RUNNING, false);
-        } else if (mState == Stopwatches.STOPWATCH_RESET) {
-            editor.remove(Stopwatches.NOTIF_CLOCK_BASE);
-            editor.remove(Stopwatches.NOTIF_CLOCK_RUNNING);
-            editor.remove(Stopwatches.NOTIF_CLOCK_ELAPSED);
-        }
-        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, false);
-        editor.apply();
-    }
-
-    private void readFromSharedPref(SharedPreferences prefs) {
-        mStartTime = prefs.getLong(Stopwatches.PREF_START_TIME, 0);
-        mAccumulatedTime = prefs.getLong(Stopwatches.PREF_ACCUM_TIME, 0);
-        mState = prefs.getInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_RESET);
-        int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, Stopwatches.STOPWATCH_RESET);
-        if (mLapsAdapter != null) {
-            long[] oldLaps = mLapsAdapter.getLapTimes();
-            if (oldLaps == null || oldLaps.length < numLaps) {
-                long[] laps = new long[numLaps];
-                long prevLapElapsedTime = 0;
-                for (int lap_i = 0; lap_i < numLaps; lap_i++) {
-                    String key = Stopwatches.PREF_LAP_TIME + Integer.toString(lap_i + 1);
-                    long lap = prefs.getLong(key, 0);
-                    laps[numLaps - lap_i - 1] = lap - prevLapElapsedTime;
-                    prevLapElapsedTime = lap;
-                }
-                mLapsAdapter.setLapTimes(laps);
-            }
+    /**
+     * Copies the StopwatchState into the fragment, and if the notification changed it while the
+     * fragment was away (PREF_UPDATE_CIRCLE), updates the views to match.
+     */
+    private void readStopwatchState(SharedPreferences prefs) {
+        mStartTime = mStopwatch.getStartTime();
+        mAccumulatedTime = mStopwatch.getAccumulatedTime();
+        mState = mStopwatch.getState();
+        if (mLapsAdapter != null && mLapsAdapter.hasNewLaps()) {
+            mLapsAdapter.reloadLaps(mStopwatch.getTotalTime(Utils.getTimeNow()));
         }
         if (prefs.getBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true)) {
             if (mState == Stopwatches.STOPWATCH_STOPPED) {
@@ -1019,15 +992,28 @@ public class StopwatchFragment extends DeskClockFragment
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
-        if (prefs.equals(PreferenceManager.getDefaultSharedPreferences(getActivity()))) {
-            if (! (key.equals(Stopwatches.PREF_LAP_NUM) ||
-                    key.startsWith(Stopwatches.PREF_LAP_TIME))) {
-                readFromSharedPref(prefs);
-                if (prefs.getBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true)) {
-                    mTime.readFromSharedPref(prefs, "sw");
-                }
-            }
+    public void onStopwatchChanged(StopwatchState stopwatch, int change) {
+        mStartTime = stopwatch.getStartTime();
+        mAccumulatedTime = stopwatch.getAccumulatedTime();
+        switch (change) {
+            case StopwatchState.CHANGE_START:
+                doStart(mStartTime);
+                acquireWakeLock();
+                break;
+            case StopwatchState.CHANGE_STOP:
+                doStop();
+                releaseWakeLock();
+                break;
+            case StopwatchState.CHANGE_LAP:
+                addLapTime();
+                doLap();
+                break;
+            case StopwatchState.CHANGE_RESET:
+                doReset();
+                releaseWakeLock();
+                break;
+            default:
+                break;
         }
     }
 
@@ -1,4 +1,3 @@
-
 package com.embeddedlog.LightUpDroid.stopwatch;
 
 import android.app.Notification;
@@ -21,16 +20,24 @@ import com.embeddedlog.LightUpDroid.R;
 import com.embeddedlog.LightUpDroid.Utils;
 
 /**
- * TODO: Insert description here. (generated by sblitz)
+ * Shows the stopwatch notification while the app is closed and applies its button actions to
+ * the StopwatchState. The notification listens to the StopwatchState and is only posted again
+ * when its content changes, the chronometer in it keeps counting on its own.
  */
-public class StopwatchService extends Service {
+public class StopwatchService extends Service implements StopwatchState.Listener {
     // Member fields
-    private int mNumLaps;
-    private long mElapsedTime;
-    private long mStartTime;
+    private StopwatchState mStopwatch;
     private boolean mLoadApp;
     private NotificationManager mNotificationManager;
 
+    // Content of the posted notification, to skip updates that would not change it
+    private boolean mNotificationShown;
+    private int mShownState;
+    private int mShownLapNumber;
+    private long mShownClockBase;
+    private int mLapTextNumber;
+    private String mLapText;
+
     // Constants for intent information
     // Make this a large number to avoid the alarm ID's which seem to be 1, 2, ...
     // Must also be different than TimerReceiver.IN_USE_NOTIFICATION_ID
@@ -43,11 +50,11 @@ public class StopwatchService extends Service {
 
     @Override
     public void onCreate() {
-        mNumLaps = 0;
-        mElapsedTime = 0;
-        mStartTime = 0;
         mLoadApp = false;
+        mNotificationShown = false;
         mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        mStopwatch = StopwatchState.getInstance(this);
+        mStopwatch.addListener(this);
     }
 
     @Override
@@ -56,49 +63,26 @@ public class StopwatchService extends Service {
             return Service.START_NOT_STICKY;
         }
 
-        if (mStartTime == 0 || mElapsedTime == 0 || mNumLaps == 0) {
-            // May not have the most recent values.
-            readFromSharedPrefs();
-        }
-
         String actionType = intent.getAction();
         long actionTime = intent.getLongExtra(Stopwatches.MESSAGE_TIME, Utils.getTimeNow());
-        boolean showNotif = intent.getBooleanExtra(Stopwatches.SHOW_NOTIF, true);
-        boolean updateCircle = showNotif; // Don't save updates to the cirle if we're in the app.
         if (actionType.equals(Stopwatches.START_STOPWATCH)) {
-            mStartTime = actionTime;
-            writeSharedPrefsStarted(mStartTime, updateCircle);
-            if (showNotif) {
-                setNotification(mStartTime - mElapsedTime, true, mNumLaps);
-            } else {
-                saveNotification(mStartTime - mElapsedTime, true, mNumLaps);
-            }
+            mStopwatch.start(actionTime);
+            writeSharedPrefsStarted();
         } else if (actionType.equals(Stopwatches.LAP_STOPWATCH)) {
-            mNumLaps++;
-            long lapTimeElapsed = actionTime - mStartTime + mElapsedTime;
-            writeSharedPrefsLap(lapTimeElapsed, updateCircle);
-            if (showNotif) {
-                setNotification(mStartTime - mElapsedTime, true, mNumLaps);
-            } else {
-                saveNotification(mStartTime - mElapsedTime, true, mNumLaps);
-            }
+            mStopwatch.lap(actionTime);
+            writeSharedPrefsLap();
         } else if (actionType.equals(Stopwatches.STOP_STOPWATCH)) {
-            mElapsedTime = mElapsedTime + (actionTime - mStartTime);
-            writeSharedPrefsStopped(mElapsedTime, updateCircle);
-            if (showNotif) {
-                setNotification(actionTime - mElapsedTime, false, mNumLaps);
-            } else {
-                saveNotification(mElapsedTime, false, mNumLaps);
-            }
+            mStopwatch.stop(actionTime);
+            writeSharedPrefsStopped();
         } else if (actionType.equals(Stopwatches.RESET_STOPWATCH)) {
             mLoadApp = false;
-            writeSharedPrefsReset(updateCircle);
-            clearSavedNotification();
+            mStopwatch.reset();
+            writeSharedPrefsReset();
             stopSelf();
         } else if (actionType.equals(Stopwatches.RESET_AND_LAUNCH_STOPWATCH)) {
             mLoadApp = true;
-            writeSharedPrefsReset(updateCircle);
-            clearSavedNotification();
+            mStopwatch.reset();
+            writeSharedPrefsReset();
             closeNotificationShade();
             stopSelf();
         } else if (actionType.equals(Stopwatches.SHARE_STOPWATCH)) {
@@ -108,18 +92,20 @@ public class StopwatchService extends Service {
             shareIntent.putExtra(
                     Intent.EXTRA_SUBJECT, Stopwatches.getShareTitle(getApplicationContext()));
             shareIntent.putExtra(Intent.EXTRA_TEXT, Stopwatches.buildShareResults(
-                    getApplicationContext(), mElapsedTime, readLapsFromPrefs()));
+                    getApplicationContext(), mStopwatch.getTotalTime(actionTime),
+                    mStopwatch.getLaps()));
             Intent chooserIntent = Intent.createChooser(shareIntent, null);
             chooserIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
             getApplication().startActivity(chooserIntent);
         } else if (actionType.equals(Stopwatches.SHOW_NOTIF)) {
             // SHOW_NOTIF sent from the DeskClock.onPause
             // If a notification is not displayed, this service's work is over
-            if (!showSavedNotification()) {
+            if (!updateNotification(true)) {
                 stopSelf();
             }
         } else if (actionType.equals(Stopwatches.KILL_NOTIF)) {
             mNotificationManager.cancel(NOTIFICATION_ID);
+            mNotificationShown = false;
         }
 
         // We want this service to continue running until it is explicitly
@@ -129,11 +115,9 @@ public class StopwatchService extends Service {
 
     @Override
     public void onDestroy() {
+        mStopwatch.removeListener(this);
         mNotificationManager.cancel(NOTIFICATION_ID);
-        clearSavedNotification();
-        mNumLaps = 0;
-        mElapsedTime = 0;
-        mStartTime = 0;
+        mNotificationShown = false;
         if (mLoadApp) {
             Intent activityIntent = new Intent(getApplicationContext(), DeskClock.class);
             activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
@@ -144,6 +128,53 @@ public class StopwatchService extends Service {
         }
     }
 
+    @Override
+    public void onStopwatchChanged(StopwatchState stopwatch, int change) {
+        // Only keep a notification that is already displayed up to date
+        if (mNotificationShown) {
+            updateNotification(false);
+        }
+    }
+
+    /**
+     * Posts the notification for the current stopwatch state, unless the one displayed already
+     * shows it.
+     * @param force post even if the displayed notification looks the same
+     * @return false if the stopwatch is reset and there is nothing to show
+     */
+    private boolean updateNotification(boolean force) {
+        int state = mStopwatch.getState();
+        if (state == Stopwatches.STOPWATCH_RESET) {
+            mNotificationManager.cancel(NOTIFICATION_ID);
+            mNotificationShown = false;
+            return false;
+        }
+        boolean clockRunning = state == Stopwatches.STOPWATCH_RUNNING;
+        int lapNumber = mStopwatch.getLapNumber();
+        long clockBaseTime = clockRunning
+                ? mStopwatch.getStartTime() - mStopwatch.getAccumulatedTime()
+                : Utils.getTimeNow() - mStopwatch.getAccumulatedTime();
+        // A stopped chronometer shows the same time whatever the base it was posted with
+        if (!force && mNotificationShown && state == mShownState && lapNumber == mShownLapNumber
+                && (!clockRunning || clockBaseTime == mShownClockBase)) {
+            return true;
+        }
+        setNotification(clockBaseTime, clockRunning, lapNumber);
+        mNotificationShown = true;
+        mShownState = state;
+        mShownLapNumber = lapNumber;
+        mShownClockBase = clockBaseTime;
+        return true;
+    }
+
+    private String getLapText(int lapNumber) {
+        if (mLapText == null || mLapTextNumber != lapNumber) {
+            mLapText = String.format(getString(R.string.sw_notification_lap_number), lapNumber);
+            mLapTextNumber = lapNumber;
+        }
+        return mLapText;
+    }
+
     private void setNotification(long clockBaseTime, boolean clockRunning, int numLaps) {
         Context context = getApplicationContext();
         // Intent to load the app for a non-button click.
@@ -200,8 +231,7 @@ public class StopwatchService extends Service {
 
             // Show the laps if applicable.
             if (numLaps > 0) {
-                String lapText = String.format(
-                        context.getString(R.string.sw_notification_lap_number), numLaps);
+                String lapText = getLapText(numLaps);
                 remoteViewsCollapsed.setTextViewText(R.id.swn_collapsed_laps, lapText);
                 remoteViewsCollapsed.setViewVisibility(R.id.swn_collapsed_laps, View.VISIBLE);
                 remoteViewsExpanded.setTextViewText(R.id.swn_expanded_laps, lapText);
@@ -263,191 +293,75 @@ public class StopwatchService extends Service {
         mNotificationManager.notify(NOTIFICATION_ID, notification);
     }
 
-    /** Save the notification to be shown when the app is closed. **/
-    private void saveNotification(long clockTime, boolean clockRunning, int numLaps) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                getApplicationContext());
-        SharedPreferences.Editor editor = prefs.edit();
-        if (clockRunning) {
-            editor.putLong(Stopwatches.NOTIF_CLOCK_BASE, clockTime);
-            editor.putLong(Stopwatches.NOTIF_CLOCK_ELAPSED, -1);
-            editor.putBoolean(Stopwatches.NOTIF_CLOCK_RUNNING, true);
-        } else {
-            editor.putLong(Stopwatches.NOTIF_CLOCK_ELAPSED, clockTime);
-            editor.putLong(Stopwatches.NOTIF_CLOCK_BASE, -1);
-            editor.putBoolean(Stopwatches.NOTIF_CLOCK_RUNNING, false);
-        }
-        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, false);
-        editor.apply();
-    }
-
-    /** Show the most recently saved notification. **/
-    private boolean showSavedNotification() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                getApplicationContext());
-        long clockBaseTime = prefs.getLong(Stopwatches.NOTIF_CLOCK_BASE, -1);
-        long clockElapsedTime = prefs.getLong(Stopwatches.NOTIF_CLOCK_ELAPSED, -1);
-        boolean clockRunning = prefs.getBoolean(Stopwatches.NOTIF_CLOCK_RUNNING, false);
-        int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, -1);
-        if (clockBaseTime == -1) {
-            if (clockElapsedTime == -1) {
-                return false;
-            } else {
-                // We don't have a clock base time, so the clock is stopped.
-                // Use the elapsed time to figure out what time to show.
-                mElapsedTime = clockElapsedTime;
-                clockBaseTime = Utils.getTimeNow() - clockElapsedTime;
-            }
-        }
-        setNotification(clockBaseTime, clockRunning, numLaps);
-        return true;
-    }
-
-    private void clearSavedNotification() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                getApplicationContext());
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.remove(Stopwatches.NOTIF_CLOCK_BASE);
-        editor.remove(Stopwatches.NOTIF_CLOCK_RUNNING);
-        editor.remove(Stopwatches.NOTIF_CLOCK_ELAPSED);
-        editor.apply();
-    }
-
     private void closeNotificationShade() {
         Intent intent = new Intent();
         intent.setAction(Intent.ACTION_CLOSE_SYSTEM_DIALOGS);
         sendBroadcast(intent);
     }
 
-    private void readFromSharedPrefs() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                getApplicationContext());
-        mStartTime = prefs.getLong(Stopwatches.PREF_START_TIME, 0);
-        mElapsedTime = prefs.getLong(Stopwatches.PREF_ACCUM_TIME, 0);
-        mNumLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, Stopwatches.STOPWATCH_RESET);
-    }
+    // The circle view of the fragment is restored from these preferences when the app opens, and
+    // PREF_UPDATE_CIRCLE tells the fragment that the state changed while it was away.
 
-    private long[] readLapsFromPrefs() {
+    private void writeSharedPrefsStarted() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
                 getApplicationContext());
-        int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, Stopwatches.STOPWATCH_RESET);
-        long[] laps = new long[numLaps];
-        long prevLapElapsedTime = 0;
-        for (int lap_i = 0; lap_i < numLaps; lap_i++) {
-            String key = Stopwatches.PREF_LAP_TIME + Integer.toString(lap_i + 1);
-            long lap = prefs.getLong(key, 0);
-            if (lap == prevLapElapsedTime && lap_i == numLaps - 1) {
-                lap = mElapsedTime;
-            }
-            laps[numLaps - lap_i - 1] = lap - prevLapElapsedTime;
-            prevLapElapsedTime = lap;
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true);
+        long intervalStartTime = prefs.getLong(
+                Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, -1);
+        if (intervalStartTime != -1) {
+            intervalStartTime = Utils.getTimeNow();
+            editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START,
+                    intervalStartTime);
+            editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, false);
         }
-        return laps;
+        editor.apply();
     }
 
-    private void writeToSharedPrefs(Long startTime, Long lapTimeElapsed, Long elapsedTime,
-            Integer state, boolean updateCircle) {
+    private void writeSharedPrefsLap() {
+        LapLog laps = mStopwatch.getLaps();
+        int numLaps = laps.size();
+        if (numLaps == 0) {
+            return;
+        }
+        long time = Utils.getTimeNow();
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
                 getApplicationContext());
         SharedPreferences.Editor editor = prefs.edit();
-        if (startTime != null) {
-            editor.putLong(Stopwatches.PREF_START_TIME, startTime);
-            mStartTime = startTime;
-        }
-        if (lapTimeElapsed != null) {
-            int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, 0);
-            if (numLaps == 0) {
-                mNumLaps++;
-                numLaps++;
-            }
-            editor.putLong(Stopwatches.PREF_LAP_TIME + Integer.toString(numLaps), lapTimeElapsed);
-            numLaps++;
-            editor.putLong(Stopwatches.PREF_LAP_TIME + Integer.toString(numLaps), lapTimeElapsed);
-            editor.putInt(Stopwatches.PREF_LAP_NUM, numLaps);
-        }
-        if (elapsedTime != null) {
-            editor.putLong(Stopwatches.PREF_ACCUM_TIME, elapsedTime);
-            mElapsedTime = elapsedTime;
-        }
-        if (state != null) {
-            if (state == Stopwatches.STOPWATCH_RESET) {
-                editor.putInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_RESET);
-            } else if (state == Stopwatches.STOPWATCH_RUNNING) {
-                editor.putInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_RUNNING);
-            } else if (state == Stopwatches.STOPWATCH_STOPPED) {
-                editor.putInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_STOPPED);
-            }
+        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true);
+        long lapTime = laps.getLapTime(numLaps - 1);
+        if (numLaps == 1) { // Have only hit lap once.
+            editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL, lapTime);
+        } else {
+            editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_MARKER_TIME, lapTime);
         }
-        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, updateCircle);
+        editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, 0);
+        editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, time);
+        editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, false);
         editor.apply();
     }
 
-    private void writeSharedPrefsStarted(long startTime, boolean updateCircle) {
-        writeToSharedPrefs(startTime, null, null, Stopwatches.STOPWATCH_RUNNING, updateCircle);
-        if (updateCircle) {
-            long time = Utils.getTimeNow();
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                    getApplicationContext());
-            long intervalStartTime = prefs.getLong(
-                    Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, -1);
-            if (intervalStartTime != -1) {
-                intervalStartTime = time;
-                SharedPreferences.Editor editor = prefs.edit();
-                editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START,
-                        intervalStartTime);
-                editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, false);
-                editor.apply();
-            }
-        }
-    }
-
-    private void writeSharedPrefsLap(long lapTimeElapsed, boolean updateCircle) {
-        writeToSharedPrefs(null, lapTimeElapsed, null, null, updateCircle);
-        if (updateCircle) {
-            long time = Utils.getTimeNow();
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                    getApplicationContext());
-            SharedPreferences.Editor editor = prefs.edit();
-            long laps[] = readLapsFromPrefs();
-            int numLaps = laps.length;
-            long lapTime = laps[1];
-            if (numLaps == 2) { // Have only hit lap once.
-                editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL, lapTime);
-            } else {
-                editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_MARKER_TIME, lapTime);
-            }
-            editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, 0);
-            if (numLaps < Stopwatches.MAX_LAPS) {
-                editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, time);
-                editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, false);
-            } else {
-                editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, -1);
-            }
-            editor.apply();
-        }
-    }
-
-    private void writeSharedPrefsStopped(long elapsedTime, boolean updateCircle) {
-        writeToSharedPrefs(null, null, elapsedTime, Stopwatches.STOPWATCH_STOPPED, updateCircle);
-        if (updateCircle) {
-            long time = Utils.getTimeNow();
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
-                    getApplicationContext());
-            long accumulatedTime = prefs.getLong(
-                    Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, 0);
-            long intervalStartTime = prefs.getLong(
-                    Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, -1);
-            accumulatedTime += time - intervalStartTime;
-            SharedPreferences.Editor editor = prefs.edit();
-            editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, accumulatedTime);
-            editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, true);
-            editor.putLong(
-                    Stopwatches.KEY + CircleTimerView.PREF_CTV_CURRENT_INTERVAL, accumulatedTime);
-            editor.apply();
-        }
+    private void writeSharedPrefsStopped() {
+        long time = Utils.getTimeNow();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
+                getApplicationContext());
+        long accumulatedTime = prefs.getLong(
+                Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, 0);
+        long intervalStartTime = prefs.getLong(
+                Stopwatches.KEY + CircleTimerView.PREF_CTV_INTERVAL_START, -1);
+        accumulatedTime += time - intervalStartTime;
+        SharedPreferences.Editor editor = prefs.edit();
+        editor.putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true);
+        editor.putLong(Stopwatches.KEY + CircleTimerView.PREF_CTV_ACCUM_TIME, accumulatedTime);
+        editor.putBoolean(Stopwatches.KEY + CircleTimerView.PREF_CTV_PAUSED, true);
+        editor.putLong(
+                Stopwatches.KEY + CircleTimerView.PREF_CTV_CURRENT_INTERVAL, accumulatedTime);
+        editor.apply();
     }
 
-    private void writeSharedPrefsReset(boolean updateCircle) {
-        writeToSharedPrefs(null, null, null, Stopwatches.STOPWATCH_RESET, updateCircle);
+    private void writeSharedPrefsReset() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(
+                getApplicationContext());
+        prefs.edit().putBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true).apply();
     }
 }
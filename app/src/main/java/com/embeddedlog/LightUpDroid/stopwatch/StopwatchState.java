@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.stopwatch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import java.util.ArrayList;
+
+/**
+ * Single in-process owner of the stopwatch clock, shared by StopwatchFragment and
+ * StopwatchService. Start, stop, lap and reset are applied here and published to the registered
+ * listeners, so the UI and the notification never derive the time on their own. The state is
+ * written to the shared preferences only on start, stop and reset, to survive the process.
+ */
+public class StopwatchState {
+
+    public interface Listener {
+        /**
+         * Called on the main thread after the stopwatch changed.
+         * @param change one of the CHANGE_* constants
+         */
+        void onStopwatchChanged(StopwatchState stopwatch, int change);
+    }
+
+    public static final int CHANGE_START = 0;
+    public static final int CHANGE_STOP = 1;
+    public static final int CHANGE_LAP = 2;
+    public static final int CHANGE_RESET = 3;
+
+    private static StopwatchState sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final LapLog mLaps;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+    private int mState;
+    private long mStartTime;
+    private long mAccumulatedTime;
+
+    public static synchronized StopwatchState getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StopwatchState(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private StopwatchState(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mLaps = LapLog.getInstance(context);
+        mState = mPrefs.getInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_RESET);
+        mStartTime = mPrefs.getLong(Stopwatches.PREF_START_TIME, 0);
+        mAccumulatedTime = mPrefs.getLong(Stopwatches.PREF_ACCUM_TIME, 0);
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    public synchronized long getStartTime() {
+        return mStartTime;
+    }
+
+    public synchronized long getAccumulatedTime() {
+        return mAccumulatedTime;
+    }
+
+    /**
+     * @return the stopwatch time at the given elapsed realtime.
+     */
+    public synchronized long getTotalTime(long now) {
+        if (mState == Stopwatches.STOPWATCH_RUNNING) {
+            return mAccumulatedTime + (now - mStartTime);
+        }
+        return mAccumulatedTime;
+    }
+
+    public LapLog getLaps() {
+        return mLaps;
+    }
+
+    /**
+     * @return the number of the running lap, 0 while no lap has been taken.
+     */
+    public int getLapNumber() {
+        int completedLaps = mLaps.size();
+        return completedLaps == 0 ? 0 : completedLaps + 1;
+    }
+
+    public void start(long time) {
+        synchronized (this) {
+            if (mState == Stopwatches.STOPWATCH_RUNNING) {
+                return;
+            }
+            mStartTime = time;
+            mState = Stopwatches.STOPWATCH_RUNNING;
+            writeToSharedPrefs();
+        }
+        notifyListeners(CHANGE_START);
+    }
+
+    public void stop(long time) {
+        synchronized (this) {
+            if (mState != Stopwatches.STOPWATCH_RUNNING) {
+                return;
+            }
+            mAccumulatedTime += time - mStartTime;
+            mState = Stopwatches.STOPWATCH_STOPPED;
+            writeToSharedPrefs();
+        }
+        notifyListeners(CHANGE_STOP);
+    }
+
+    /**
+     * Completes the running lap at the given elapsed realtime. The lap goes to the LapLog, the
+     * shared preferences are left untouched.
+     */
+    public void lap(long time) {
+        synchronized (this) {
+            if (mState != Stopwatches.STOPWATCH_RUNNING) {
+                return;
+            }
+            mLaps.append(getTotalTime(time));
+        }
+        notifyListeners(CHANGE_LAP);
+    }
+
+    public void reset() {
+        synchronized (this) {
+            mStartTime = 0;
+            mAccumulatedTime = 0;
+            mState = Stopwatches.STOPWATCH_RESET;
+            mLaps.clear();
+            SharedPreferences.Editor editor = mPrefs.edit();
+            editor.remove(Stopwatches.PREF_START_TIME);
+            editor.remove(Stopwatches.PREF_ACCUM_TIME);
+            editor.remove(Stopwatches.PREF_STATE);
+            editor.apply();
+        }
+        notifyListeners(CHANGE_RESET);
+    }
+
+    public void addListener(Listener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void writeToSharedPrefs() {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putLong(Stopwatches.PREF_START_TIME, mStartTime);
+        editor.putLong(Stopwatches.PREF_ACCUM_TIME, mAccumulatedTime);
+        editor.putInt(Stopwatches.PREF_STATE, mState);
+        editor.apply();
+    }
+
+    private void notifyListeners(final int change) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListeners(change);
+                }
+            });
+            return;
+        }
+        // Listeners may unregister themselves while being notified
+        for (Listener listener : new ArrayList<Listener>(mListeners)) {
+            listener.onStopwatchChanged(this, change);
+        }
+    }
+}
@@ -40,19 +40,16 @@ public class Stopwatches {
     public static final String PREF_START_TIME  = "sw_start_time";
     public static final String PREF_ACCUM_TIME = "sw_accum_time";
     public static final String PREF_STATE = "sw_state";
+    // Laps used to be stored one key per lap, now only read to migrate them into the LapLog
     public static final String PREF_LAP_NUM = "sw_lap_num";
     public static final String PREF_LAP_TIME = "sw_lap_time_";
     public static final String PREF_UPDATE_CIRCLE = "sw_update_circle";
-    public static final String NOTIF_CLOCK_BASE = "notif_clock_base";
-    public static final String NOTIF_CLOCK_ELAPSED = "notif_clock_elapsed";
-    public static final String NOTIF_CLOCK_RUNNING = "notif_clock_running";
     public static final String KEY = "sw";
 
     public static final int STOPWATCH_RESET = 0;
     public static final int STOPWATCH_RUNNING = 1;
     public static final int STOPWATCH_STOPPED = 2;
 
-    public static final int MAX_LAPS = 99;
     public static final int NO_LAP_NUMBER = -1;
 
     /**
@@ -68,25 +65,44 @@ public class Stopwatches {
     /**
      * Create a multi-line text with the stopwatch lap data
      * @param context context with resources
-     * @param time total elapsed time
-     * @param laps array of times
+     * @param timeText formatted total elapsed time
+     * @param time total elapsed time, used to close the running lap
+     * @param laps log of the completed laps
      * @return formatted text
      */
-    public static String buildShareResults(Context context, String time, long[] laps) {
-        StringBuilder b = new StringBuilder (context.getString(R.string.sw_share_main, time));
+    public static String buildShareResults(
+            Context context, String timeText, long time, LapLog laps) {
+        StringBuilder b = new StringBuilder (context.getString(R.string.sw_share_main, timeText));
         b.append("\n");
 
-        int lapsNum = laps == null? 0 : laps.length;
+        int lapsNum = laps.size();
         if (lapsNum == 0) {
             return b.toString();
         }
 
         b.append(context.getString(R.string.sw_share_laps));
         b.append("\n");
-        for (int i = 1; i <= lapsNum; i ++) {
-            b.append(getTimeText(context, laps[lapsNum-i], i));
+        for (int i = 0; i < lapsNum; i ++) {
+            b.append(getTimeText(context, laps.getLapTime(i), i + 1));
             b.append("\n");
         }
+        // The running lap ends at the shared time
+        b.append(getTimeText(context, time - laps.get(lapsNum - 1), lapsNum + 1));
+        b.append("\n");
+
+        LapStats stats = laps.getStats();
+        b.append(context.getString(R.string.sw_lap_stats_range,
+                stats.getFastestLap(),
+                getTimeText(context, stats.getFastestTime(), NO_LAP_NUMBER),
+                stats.getSlowestLap(),
+                getTimeText(context, stats.getSlowestTime(), NO_LAP_NUMBER)));
+        b.append("\n");
+        b.append(context.getString(R.string.sw_lap_stats_mean,
+                getTimeText(context, stats.getMeanTime(), NO_LAP_NUMBER),
+                getTimeText(context, stats.getStandardDeviation(), NO_LAP_NUMBER),
+                stats.getMovingAverageLaps(),
+                getTimeText(context, stats.getMovingAverage(), NO_LAP_NUMBER)));
+        b.append("\n");
         return b.toString();
     }
 
@@ -94,11 +110,12 @@ public class Stopwatches {
      * Create a multi-line text with the stopwatch lap data
      * @param context context with resources
      * @param time total elapsed time
-     * @param laps array of times
+     * @param laps log of the completed laps
      * @return formatted text
      */
-    public static String buildShareResults(Context context, long time, long[] laps) {
-        return buildShareResults(context, getTimeText(context, time, NO_LAP_NUMBER), laps);
+    public static String buildShareResults(Context context, long time, LapLog laps) {
+        return buildShareResults(
+                context, getTimeText(context, time, NO_LAP_NUMBER), time, laps);
     }
 
     /***
@@ -76,6 +76,7 @@ public class TimerFragment extends DeskClockFragment
     private Button mCancel, mStart;
     private View mSeperator;
     private ImageButton mAddTimer;
+    private Button mPresets;
     private View mTimerFooter;
     private TimerSetupView mTimerSetup;
     private TimersListAdapter mAdapter;
@@ -288,6 +289,11 @@ public class TimerFragment extends DeskClockFragment
             sort();
         }
 
+        public void addTimers(ArrayList<TimerObj> timers) {
+            mTimers.addAll(0, timers);
+            sort();
+        }
+
         public void onSaveInstanceState(Bundle outState) {
             TimerObj.putTimersInSharedPrefs(mmPrefs, mTimers);
         }
@@ -387,6 +393,7 @@ public class TimerFragment extends DeskClockFragment
             boolean visible = Utils.getTimeNow() % TIME_PERIOD_MS < SPLIT;
             boolean toggle = mVisible != visible;
             mVisible = visible;
+            boolean programStepChanged = false;
             for (int i = 0; i < mAdapter.getCount(); i ++) {
                 TimerObj t = mAdapter.getItem(i);
                 if (t.mState == TimerObj.STATE_RUNNING || t.mState == TimerObj.STATE_TIMESUP) {
@@ -401,7 +408,12 @@ public class TimerFragment extends DeskClockFragment
                         }
                     }
                 }
-                if (t.mTimeLeft <= 0 && t.mState != TimerObj.STATE_DONE
+                if (t.mTimeLeft <= 0 && t.mState == TimerObj.STATE_RUNNING
+                        && t.mProgram != null && t.mProgram.advance(t, Utils.getTimeNow())) {
+                    // Interval programs go on with their next step instead of times up, the
+                    // views are rebuilt to show the length and label of the new step
+                    programStepChanged = true;
+                } else if (t.mTimeLeft <= 0 && t.mState != TimerObj.STATE_DONE
                         && t.mState != TimerObj.STATE_RESTART) {
                     t.mState = TimerObj.STATE_TIMESUP;
                     TimerFragment.this.setTimerButtons(t);
@@ -420,6 +432,9 @@ public class TimerFragment extends DeskClockFragment
                     }
                 }
             }
+            if (programStepChanged) {
+                mAdapter.notifyDataSetChanged();
+            }
             mTimersList.postDelayed(mClockTick, 20);
         }
     };
@@ -506,6 +521,15 @@ public class TimerFragment extends DeskClockFragment
 
         });
 
+        mPresets = (Button)v.findViewById(R.id.timer_presets);
+        mPresets.setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                onPresetsPressed();
+            }
+
+        });
+
         // Put it on the right for landscape, left for portrait.
         FrameLayout.LayoutParams layoutParams =
                 (FrameLayout.LayoutParams) mAddTimer.getLayoutParams();
@@ -791,7 +815,11 @@ public class TimerFragment extends DeskClockFragment
                  updateTimersState(t, Timers.TIMER_UPDATE);
                 break;
             case TimerObj.STATE_TIMESUP:
-                // +1 min when the time is up will restart the timer with 1 minute left.
+                // +1 min when the time is up will restart the timer with 1 minute left, as a
+                // plain timer if it runs a program
+                if (t.mProgram != null) {
+                    t.mProgram.finish();
+                }
                 t.mState = TimerObj.STATE_RUNNING;
                 t.mStartTime = Utils.getTimeNow();
                 t.mTimeLeft = t. mOriginalLength = TimerObj.MINUTE_IN_MILLIS;
@@ -806,6 +834,9 @@ public class TimerFragment extends DeskClockFragment
             case TimerObj.STATE_STOPPED:
             case TimerObj.STATE_DONE:
                 t.mState = TimerObj.STATE_RESTART;
+                if (t.mProgram != null) {
+                    t.mProgram.reset(t);
+                }
                 t.mTimeLeft = t. mOriginalLength = t.mSetupLength;
                 ((TimerListItem)t.mView).stop();
                 ((TimerListItem)t.mView).setTime(t.mTimeLeft, false);
@@ -892,6 +923,51 @@ public class TimerFragment extends DeskClockFragment
         newFragment.show(ft, "label_dialog");
     }
 
+    private void onPresetsPressed() {
+        final FragmentTransaction ft = getFragmentManager().beginTransaction();
+        final Fragment prev = getFragmentManager().findFragmentByTag("presets_dialog");
+        if (prev != null) {
+            ft.remove(prev);
+        }
+        ft.addToBackStack(null);
+
+        // Create and show the dialog.
+        final TimerPresetsDialogFragment newFragment = new TimerPresetsDialogFragment();
+        newFragment.setTargetFragment(this, 0);
+        newFragment.show(ft, "presets_dialog");
+    }
+
+    public int getTimersCount() {
+        return mAdapter == null ? 0 : mAdapter.getCount();
+    }
+
+    /**
+     * Starts all the timers of the preset with a single write and shows them in the list.
+     */
+    public void startPreset(TimerPresets.Preset preset) {
+        ArrayList<TimerObj> timers = preset.createTimers(Utils.getTimeNow(), false);
+        Timers.startTimers(getActivity(), mPrefs, timers);
+        mAdapter.addTimers(timers);
+        gotoTimersView();
+        mTimersList.setFirstPositionAndOffsets(
+                mAdapter.findTimerPositionById(timers.get(0).mTimerId), 0);
+    }
+
+    public void saveTimersAsPreset(String name, int type, int rounds) {
+        ArrayList<TimerObj> timers = new ArrayList<TimerObj>(mAdapter.getCount());
+        for (int i = 0; i < mAdapter.getCount(); i++) {
+            timers.add(mAdapter.getItem(i));
+        }
+        // The list is sorted by time left, presets keep the order in which timers were created
+        Collections.sort(timers, new Comparator<TimerObj>() {
+            @Override
+            public int compare(TimerObj timerObj1, TimerObj timerObj2) {
+                return timerObj1.mTimerId - timerObj2.mTimerId;
+            }
+        });
+        TimerPresets.savePreset(mPrefs, TimerPresets.fromTimers(name, type, rounds, timers));
+    }
+
     public void setLabel(TimerObj timer, String label) {
         mAdapter.getItem(mAdapter.findTimerPositionById(timer.mTimerId)).mLabel = label;
         updateTimersState(timer, Timers.TIMER_UPDATE);
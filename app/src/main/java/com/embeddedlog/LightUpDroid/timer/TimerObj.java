@@ -49,6 +49,7 @@ public class TimerObj implements Parcelable {
     public int mState;
     public String mLabel;
     public boolean mDeleteAfterUse;
+    public TimerProgram mProgram;    // Interval program run by this timer, null if none
 
     public static final int STATE_RUNNING = 1;
     public static final int STATE_STOPPED = 2;
@@ -65,6 +66,7 @@ public class TimerObj implements Parcelable {
     private static final String PREF_STATE = "timer_state_";
     private static final String PREF_LABEL = "timer_label_";
     private static final String PREF_DELETE_AFTER_USE = "delete_after_use_";
+    private static final String PREF_PROGRAM = "timer_program_";
 
     private static final String PREF_TIMERS_LIST = "timers_list";
 
@@ -82,6 +84,18 @@ public class TimerObj implements Parcelable {
 
     public void writeToSharedPref(SharedPreferences prefs) {
         SharedPreferences.Editor editor = prefs.edit();
+        Set <String> timersList = new HashSet<String>(
+                prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>()));
+        writeToEditor(editor, timersList);
+        editor.putStringSet(PREF_TIMERS_LIST, timersList);
+        editor.apply();
+    }
+
+    /**
+     * Stages this timer in the editor and adds its id to timersList. The caller is responsible
+     * for storing timersList and applying the editor, so several timers share one write.
+     */
+    private void writeToEditor(SharedPreferences.Editor editor, Set<String> timersList) {
         String key = PREF_TIMER_ID + Integer.toString(mTimerId);
         String id = Integer.toString(mTimerId);
         editor.putInt (key, mTimerId);
@@ -95,17 +109,19 @@ public class TimerObj implements Parcelable {
         editor.putLong (key, mSetupLength);
         key = PREF_STATE + id;
         editor.putInt (key, mState);
-        Set <String> timersList = prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>());
         timersList.add(id);
-        editor.putStringSet(PREF_TIMERS_LIST, timersList);
         key = PREF_LABEL + id;
         editor.putString(key, mLabel);
         key = PREF_DELETE_AFTER_USE + id;
         editor.putBoolean(key, mDeleteAfterUse);
-        editor.apply();
+        key = PREF_PROGRAM + id;
+        if (mProgram != null) {
+            editor.putString(key, mProgram.serialize());
+        } else {
+            editor.remove(key);
+        }
     }
 
-
     public void readFromSharedPref(SharedPreferences prefs) {
         String id = Integer.toString(mTimerId);
         String key = PREF_START_TIME + id;
@@ -122,6 +138,9 @@ public class TimerObj implements Parcelable {
         mLabel = prefs.getString(key, "");
         key = PREF_DELETE_AFTER_USE + id;
         mDeleteAfterUse = prefs.getBoolean(key, false);
+        key = PREF_PROGRAM + id;
+        String program = prefs.getString(key, null);
+        mProgram = program == null ? null : TimerProgram.deserialize(program);
     }
 
     public void deleteFromSharedPref(SharedPreferences prefs) {
@@ -146,6 +165,8 @@ public class TimerObj implements Parcelable {
         editor.remove(key);
         key = PREF_DELETE_AFTER_USE + id;
         editor.remove(key);
+        key = PREF_PROGRAM + id;
+        editor.remove(key);
         editor.commit();
         //dumpTimersFromSharedPrefs(prefs);
     }
@@ -165,6 +186,7 @@ public class TimerObj implements Parcelable {
         dest.writeLong(mSetupLength);
         dest.writeInt(mState);
         dest.writeString(mLabel);
+        dest.writeString(mProgram == null ? null : mProgram.serialize());
     }
 
     public TimerObj(Parcel p) {
@@ -175,6 +197,8 @@ public class TimerObj implements Parcelable {
         mSetupLength = p.readLong();
         mState = p.readInt();
         mLabel = p.readString();
+        String program = p.readString();
+        mProgram = program == null ? null : TimerProgram.deserialize(program);
     }
 
     public TimerObj() {
@@ -203,7 +227,8 @@ public class TimerObj implements Parcelable {
     public long updateTimeLeft(boolean forceUpdate) {
         if (isTicking() || forceUpdate) {
             long millis = Utils.getTimeNow();
-            mTimeLeft = mOriginalLength - (millis - mStartTime);
+            // Timers queued in a sequence start in the future, until then they show full length
+            mTimeLeft = mOriginalLength - Math.max(0, millis - mStartTime);
         }
         return mTimeLeft;
     }
@@ -237,6 +262,14 @@ public class TimerObj implements Parcelable {
         return mStartTime + mOriginalLength;
     }
 
+    /**
+     * Attaches an interval program and sets the timer up for its first step.
+     */
+    public void setProgram(TimerProgram program) {
+        mProgram = program;
+        program.reset(this);
+    }
+
 
     public static void getTimersFromSharedPrefs(
             SharedPreferences prefs, ArrayList<TimerObj> timers) {
@@ -277,10 +310,30 @@ public class TimerObj implements Parcelable {
     public static void putTimersInSharedPrefs(
             SharedPreferences prefs, ArrayList<TimerObj> timers) {
         if (timers.size() > 0) {
+            SharedPreferences.Editor editor = prefs.edit();
+            Set <String> timersList = new HashSet<String>(
+                    prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>()));
             for (int i = 0; i < timers.size(); i++) {
-                TimerObj t = timers.get(i);
-                timers.get(i).writeToSharedPref(prefs);
+                timers.get(i).writeToEditor(editor, timersList);
+            }
+            editor.putStringSet(PREF_TIMERS_LIST, timersList);
+            editor.apply();
+        }
+    }
+
+    /**
+     * Gives every timer in the list an id that is not used by any stored timer nor by any other
+     * timer in the list. Timers created in the same millisecond would otherwise share the id
+     * derived from the creation time.
+     */
+    public static void assignUniqueIds(SharedPreferences prefs, ArrayList<TimerObj> timers) {
+        Set<String> usedIds = new HashSet<String>(
+                prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>()));
+        for (TimerObj t : timers) {
+            while (usedIds.contains(Integer.toString(t.mTimerId))) {
+                t.mTimerId++;
             }
+            usedIds.add(Integer.toString(t.mTimerId));
         }
     }
 
@@ -304,6 +357,9 @@ public class TimerObj implements Parcelable {
         while(i.hasNext()) {
             TimerObj t = i.next();
             t.mState = TimerObj.STATE_RESTART;
+            if (t.mProgram != null) {
+                t.mProgram.reset(t);
+            }
             t.mTimeLeft = t. mOriginalLength = t.mSetupLength;
             t.writeToSharedPref(prefs);
         }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.timer;
+
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Named timer presets stored in the shared preferences. A preset is a list of labelled timer
+ * lengths that is either started as a group (all timers count down together), as a sequence
+ * (each timer starts exactly when the previous one expires) or as an interval program (a single
+ * timer running the lengths one after the other for a number of rounds).
+ */
+public class TimerPresets {
+    private static final String TAG = "TimerPresets";
+
+    public static final int TYPE_GROUP = 0;
+    public static final int TYPE_SEQUENCE = 1;
+    public static final int TYPE_PROGRAM = 2;
+
+    private static final String PREF_PRESET = "timer_preset_";
+    private static final String PREF_PRESETS_LIST = "timer_presets_list";
+
+    // Serialized as "type|length:label,length:label,...[|rounds]" with the labels Uri encoded
+    private static final char TYPE_SEPARATOR = '|';
+    private static final char ENTRY_SEPARATOR = ',';
+    private static final char FIELD_SEPARATOR = ':';
+
+    public static class Preset {
+        public final String mName;
+        public final int mType;
+        public final long[] mLengths;
+        public final String[] mLabels;
+        public final int mRounds;
+
+        public Preset(String name, int type, long[] lengths, String[] labels) {
+            this(name, type, lengths, labels, 1);
+        }
+
+        public Preset(String name, int type, long[] lengths, String[] labels, int rounds) {
+            if (lengths.length != labels.length) {
+                throw new IllegalArgumentException("Each timer length needs a label");
+            }
+            mName = name;
+            mType = type;
+            mLengths = lengths;
+            mLabels = labels;
+            mRounds = Math.max(1, rounds);
+        }
+
+        public int size() {
+            return mLengths.length;
+        }
+
+        /**
+         * Creates the timers of this preset, all in running state. For a sequence the start
+         * times are chained from startTime so that each timer begins at the previous expiry,
+         * a program is run by a single timer.
+         */
+        public ArrayList<TimerObj> createTimers(long startTime, boolean deleteAfterUse) {
+            ArrayList<TimerObj> timers = new ArrayList<TimerObj>(mLengths.length);
+            if (mType == TYPE_PROGRAM) {
+                TimerObj t = new TimerObj(mLengths[0]);
+                t.setProgram(new TimerProgram(mLengths, mLabels, mRounds));
+                t.mState = TimerObj.STATE_RUNNING;
+                t.mDeleteAfterUse = deleteAfterUse;
+                t.mStartTime = startTime;
+                timers.add(t);
+                return timers;
+            }
+            long nextStart = startTime;
+            for (int i = 0; i < mLengths.length; i++) {
+                TimerObj t = new TimerObj(mLengths[i], mLabels[i]);
+                t.mState = TimerObj.STATE_RUNNING;
+                t.mDeleteAfterUse = deleteAfterUse;
+                t.mStartTime = nextStart;
+                if (mType == TYPE_SEQUENCE) {
+                    nextStart += mLengths[i];
+                }
+                timers.add(t);
+            }
+            return timers;
+        }
+
+        private String serialize() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(mType).append(TYPE_SEPARATOR);
+            for (int i = 0; i < mLengths.length; i++) {
+                if (i > 0) {
+                    sb.append(ENTRY_SEPARATOR);
+                }
+                sb.append(mLengths[i]).append(FIELD_SEPARATOR).append(Uri.encode(mLabels[i]));
+            }
+            if (mRounds > 1) {
+                sb.append(TYPE_SEPARATOR).append(mRounds);
+            }
+            return sb.toString();
+        }
+
+        private static Preset deserialize(String name, String value) {
+            int typeEnd = value.indexOf(TYPE_SEPARATOR);
+            int type = Integer.parseInt(value.substring(0, typeEnd));
+            int bodyEnd = value.indexOf(TYPE_SEPARATOR, typeEnd + 1);
+            int rounds = 1;
+            if (bodyEnd < 0) {
+                bodyEnd = value.length();
+            } else {
+                rounds = Integer.parseInt(value.substring(bodyEnd + 1));
+            }
+            String body = value.substring(typeEnd + 1, bodyEnd);
+            String[] entries = body.isEmpty()
+                    ? new String[0] : TextUtils.split(body, String.valueOf(ENTRY_SEPARATOR));
+            long[] lengths = new long[entries.length];
+            String[] labels = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                int fieldEnd = entries[i].indexOf(FIELD_SEPARATOR);
+                lengths[i] = Long.parseLong(entries[i].substring(0, fieldEnd));
+                labels[i] = Uri.decode(entries[i].substring(fieldEnd + 1));
+            }
+            return new Preset(name, type, lengths, labels, rounds);
+        }
+    }
+
+    private static final Comparator<Preset> sNameComparator = new Comparator<Preset>() {
+        @Override
+        public int compare(Preset p1, Preset p2) {
+            return p1.mName.compareToIgnoreCase(p2.mName);
+        }
+    };
+
+    /**
+     * Creates a preset out of the setup lengths and labels of existing timers.
+     */
+    public static Preset fromTimers(
+            String name, int type, int rounds, ArrayList<TimerObj> timers) {
+        long[] lengths = new long[timers.size()];
+        String[] labels = new String[timers.size()];
+        for (int i = 0; i < timers.size(); i++) {
+            lengths[i] = timers.get(i).mSetupLength;
+            labels[i] = timers.get(i).mLabel == null ? "" : timers.get(i).mLabel;
+        }
+        return new Preset(name, type, lengths, labels, rounds);
+    }
+
+    public static ArrayList<Preset> getPresets(SharedPreferences prefs) {
+        Set<String> names = prefs.getStringSet(PREF_PRESETS_LIST, new HashSet<String>());
+        ArrayList<Preset> presets = new ArrayList<Preset>(names.size());
+        for (String name : names) {
+            Preset preset = getPreset(prefs, name);
+            if (preset != null) {
+                presets.add(preset);
+            }
+        }
+        Collections.sort(presets, sNameComparator);
+        return presets;
+    }
+
+    public static Preset getPreset(SharedPreferences prefs, String name) {
+        String value = prefs.getString(PREF_PRESET + name, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Preset.deserialize(name, value);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not read timer preset " + name, e);
+            return null;
+        }
+    }
+
+    public static void savePreset(SharedPreferences prefs, Preset preset) {
+        Set<String> names = new HashSet<String>(
+                prefs.getStringSet(PREF_PRESETS_LIST, new HashSet<String>()));
+        names.add(preset.mName);
+        prefs.edit()
+                .putString(PREF_PRESET + preset.mName, preset.serialize())
+                .putStringSet(PREF_PRESETS_LIST, names)
+                .apply();
+    }
+
+    public static void deletePreset(SharedPreferences prefs, String name) {
+        Set<String> names = new HashSet<String>(
+                prefs.getStringSet(PREF_PRESETS_LIST, new HashSet<String>()));
+        names.remove(name);
+        prefs.edit()
+                .remove(PREF_PRESET + name)
+                .putStringSet(PREF_PRESETS_LIST, names)
+                .apply();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.timer;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.text.InputType;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+
+import com.embeddedlog.LightUpDroid.R;
+
+import java.util.ArrayList;
+
+/**
+ * DialogFragment listing the stored timer presets. Selecting a preset starts all its timers,
+ * a long press deletes it once confirmed, and the last entries save the current timers as a new
+ * preset.
+ * The target fragment must be the TimerFragment that shows the timers.
+ */
+public class TimerPresetsDialogFragment extends DialogFragment {
+
+    private static final int[] SAVE_TYPES = {
+            TimerPresets.TYPE_GROUP, TimerPresets.TYPE_SEQUENCE, TimerPresets.TYPE_PROGRAM };
+    private static final int[] SAVE_TITLES = {
+            R.string.timer_preset_save_group, R.string.timer_preset_save_sequence,
+            R.string.timer_preset_save_program };
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final Context context = getActivity();
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final ArrayList<TimerPresets.Preset> presets = TimerPresets.getPresets(prefs);
+        final boolean canSave = ((TimerFragment) getTargetFragment()).getTimersCount() > 0;
+
+        final int itemCount = presets.size() + (canSave ? SAVE_TYPES.length : 0);
+        final String[] items = new String[itemCount];
+        for (int i = 0; i < presets.size(); i++) {
+            TimerPresets.Preset preset = presets.get(i);
+            if (preset.mType == TimerPresets.TYPE_PROGRAM) {
+                items[i] = context.getResources().getQuantityString(
+                        R.plurals.timer_preset_program, preset.mRounds, preset.mName,
+                        preset.mRounds);
+            } else {
+                items[i] = context.getResources().getQuantityString(
+                        preset.mType == TimerPresets.TYPE_SEQUENCE
+                                ? R.plurals.timer_preset_sequence : R.plurals.timer_preset_group,
+                        preset.size(), preset.mName, preset.size());
+            }
+        }
+        if (canSave) {
+            for (int i = 0; i < SAVE_TYPES.length; i++) {
+                items[presets.size() + i] = context.getString(SAVE_TITLES[i]);
+            }
+        }
+
+        final AlertDialog dialog = new AlertDialog.Builder(context)
+                .setTitle(R.string.timer_presets)
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final TimerFragment fragment = (TimerFragment) getTargetFragment();
+                        if (which < presets.size()) {
+                            fragment.startPreset(presets.get(which));
+                        } else {
+                            showSaveDialog(context, fragment, which - presets.size());
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.timer_cancel, null)
+                .create();
+        dialog.getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> parent, View view, int position,
+                    long id) {
+                if (position >= presets.size()) {
+                    return false;
+                }
+                dialog.dismiss();
+                showDeleteDialog(context, prefs, presets.get(position).mName);
+                return true;
+            }
+        });
+        return dialog;
+    }
+
+    private static void showDeleteDialog(
+            final Context context, final SharedPreferences prefs, final String name) {
+        new AlertDialog.Builder(context)
+                .setMessage(context.getString(R.string.timer_preset_delete_confirm, name))
+                .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        TimerPresets.deletePreset(prefs, name);
+                    }
+                })
+                .setNegativeButton(R.string.timer_cancel, null)
+                .show();
+    }
+
+    private static void showSaveDialog(
+            final Context context, final TimerFragment fragment, final int saveIndex) {
+        final int type = SAVE_TYPES[saveIndex];
+        final LinearLayout layout = new LinearLayout(context);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        final EditText nameBox = new EditText(context);
+        nameBox.setSingleLine();
+        nameBox.setHint(R.string.timer_preset_name_hint);
+        layout.addView(nameBox);
+        final EditText roundsBox = new EditText(context);
+        roundsBox.setSingleLine();
+        roundsBox.setInputType(InputType.TYPE_CLASS_NUMBER);
+        roundsBox.setHint(R.string.timer_preset_rounds_hint);
+        if (type == TimerPresets.TYPE_PROGRAM) {
+            layout.addView(roundsBox);
+        }
+        new AlertDialog.Builder(context)
+                .setTitle(SAVE_TITLES[saveIndex])
+                .setView(layout)
+                .setPositiveButton(R.string.done, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        String name = nameBox.getText().toString().trim();
+                        int rounds = 1;
+                        try {
+                            rounds = Integer.parseInt(roundsBox.getText().toString());
+                        } catch (NumberFormatException e) {
+                            // Keep a single round
+                        }
+                        if (name.length() > 0) {
+                            fragment.saveTimersAsPreset(name, type, rounds);
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.timer_cancel, null)
+                .show();
+    }
+}
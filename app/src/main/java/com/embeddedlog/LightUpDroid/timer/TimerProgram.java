@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.timer;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Interval program run by a single TimerObj, like work/rest repeated for a number of rounds.
+ *
+ * The timer always counts down the current step, and the only progress kept is the step index.
+ * The start of the program is derived from the expiry of the timer minus the offset of the end
+ * of the current step, so every step boundary is computed from the elapsed realtime of that
+ * start rather than from when the expiry was handled. Late or missed wake-ups, including a
+ * process restart, land on the right step without accumulating drift, and time added to the
+ * current step with "+1 min" pushes the later steps back by the same amount.
+ */
+public class TimerProgram {
+
+    // Serialized as "rounds;step;length:label,length:label,..." with the labels Uri encoded
+    private static final char PART_SEPARATOR = ';';
+    private static final char ENTRY_SEPARATOR = ',';
+    private static final char FIELD_SEPARATOR = ':';
+
+    private final long[] mLengths;
+    private final String[] mLabels;
+    private final int mRounds;
+    // mOffsets[i] is the start of step i within a round, mOffsets[n] is the round length
+    private final long[] mOffsets;
+    private int mStep;
+
+    public TimerProgram(long[] lengths, String[] labels, int rounds) {
+        if (lengths.length == 0 || lengths.length != labels.length || rounds < 1) {
+            throw new IllegalArgumentException("Invalid timer program");
+        }
+        mLengths = lengths;
+        mLabels = labels;
+        mRounds = rounds;
+        mOffsets = new long[lengths.length + 1];
+        for (int i = 0; i < lengths.length; i++) {
+            mOffsets[i + 1] = mOffsets[i] + lengths[i];
+        }
+        mStep = 0;
+    }
+
+    public int getStep() {
+        return mStep;
+    }
+
+    public int getStepCount() {
+        return mLengths.length * mRounds;
+    }
+
+    public long getStepLength(int step) {
+        return mLengths[step % mLengths.length];
+    }
+
+    public String getStepLabel(int step) {
+        return mLabels[step % mLabels.length];
+    }
+
+    public long getTotalLength() {
+        return mOffsets[mLengths.length] * mRounds;
+    }
+
+    /**
+     * @return offset of the start of the step from the start of the program.
+     */
+    public long getStepOffset(int step) {
+        int n = mLengths.length;
+        return (step / n) * mOffsets[n] + mOffsets[step % n];
+    }
+
+    /**
+     * @return the step running at the given offset from the start of the program, or the step
+     * count if the program is over by then.
+     */
+    public int getStepAt(long offset) {
+        if (offset >= getTotalLength()) {
+            return getStepCount();
+        } else if (offset < 0) {
+            return 0;
+        }
+        int n = mLengths.length;
+        long roundLength = mOffsets[n];
+        int round = (int) (offset / roundLength);
+        int index = Arrays.binarySearch(mOffsets, offset - round * roundLength);
+        // Exact hits start that step, otherwise take the step whose start precedes the offset
+        int stepInRound = index >= 0 ? index : -index - 2;
+        return round * n + stepInRound;
+    }
+
+    /**
+     * Sets the timer up to run the first step of the program.
+     */
+    public void reset(TimerObj t) {
+        mStep = 0;
+        t.mTimeLeft = t.mOriginalLength = t.mSetupLength = getStepLength(0);
+        t.mLabel = getStepLabel(0);
+    }
+
+    /**
+     * Ends the program, leaving the timer to run as a plain timer until the program is reset.
+     * Used when "+1 min" restarts a timer whose program is over.
+     */
+    public void finish() {
+        mStep = getStepCount();
+    }
+
+    /**
+     * Moves a running timer whose current step has expired on to the step running at now. The
+     * new step starts exactly at the expiry of the previous one.
+     *
+     * @return true if the timer moved on to a later step, false if the program is over or the
+     * timer is still on the same step, in which case it should go to times up.
+     */
+    public boolean advance(TimerObj t, long now) {
+        if (mStep >= getStepCount()) {
+            return false;
+        }
+        long programStart = t.getTimesupTime() - getStepOffset(mStep + 1);
+        int step = getStepAt(now - programStart);
+        if (step >= getStepCount() || step <= mStep) {
+            return false;
+        }
+        mStep = step;
+        t.mStartTime = programStart + getStepOffset(step);
+        t.mOriginalLength = getStepLength(step);
+        t.mLabel = getStepLabel(step);
+        t.updateTimeLeft(true);
+        return true;
+    }
+
+    String serialize() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mRounds).append(PART_SEPARATOR).append(mStep).append(PART_SEPARATOR);
+        for (int i = 0; i < mLengths.length; i++) {
+            if (i > 0) {
+                sb.append(ENTRY_SEPARATOR);
+            }
+            sb.append(mLengths[i]).append(FIELD_SEPARATOR).append(Uri.encode(mLabels[i]));
+        }
+        return sb.toString();
+    }
+
+    static TimerProgram deserialize(String value) {
+        String[] parts = TextUtils.split(value, String.valueOf(PART_SEPARATOR));
+        String[] entries = TextUtils.split(parts[2], String.valueOf(ENTRY_SEPARATOR));
+        long[] lengths = new long[entries.length];
+        String[] labels = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            int fieldEnd = entries[i].indexOf(FIELD_SEPARATOR);
+            lengths[i] = Long.parseLong(entries[i].substring(0, fieldEnd));
+            labels[i] = Uri.decode(entries[i].substring(fieldEnd + 1));
+        }
+        TimerProgram program = new TimerProgram(lengths, labels, Integer.parseInt(parts[0]));
+        program.mStep = Math.min(Integer.parseInt(parts[1]), program.getStepCount());
+        return program;
+    }
+}
@@ -74,6 +74,10 @@ public class TimerReceiver extends BroadcastReceiver {
         } else if (Timers.NOTIF_TIMES_UP_CANCEL.equals(actionType)) {
             cancelTimesUpNotification(context);
             return;
+        } else if (Timers.START_TIMER_GROUP.equals(actionType)) {
+            // The timers are already stored, only the next "Times up" alarm needs updating
+            updateNextTimesup(context);
+            return;
         }
 
         // Remaining actions provide a timer Id
@@ -98,6 +102,25 @@ public class TimerReceiver extends BroadcastReceiver {
                 return;
             }
 
+            if (t.mState == TimerObj.STATE_RUNNING && t.mProgram != null
+                    && t.getTimesupTime() > Utils.getTimeNow()) {
+                // The step was extended with "+1 min" after this alarm was set
+                updateNextTimesup(context);
+                return;
+            }
+
+            if (t.mState == TimerObj.STATE_RUNNING && t.mProgram != null
+                    && t.mProgram.advance(t, Utils.getTimeNow())) {
+                // The program moved on to its next step, which keeps the timer running
+                t.writeToSharedPref(prefs);
+                // Flag to tell DeskClock to re-sync with the database
+                prefs.edit().putBoolean(Timers.FROM_NOTIFICATION, true).apply();
+                showProgramStepNotification(context, t);
+                showInUseNotification(context);
+                updateNextTimesup(context);
+                return;
+            }
+
             t.mState = TimerObj.STATE_TIMESUP;
             t.writeToSharedPref(prefs);
             // Play ringtone by using TimerRingService service with a default alarm.
@@ -161,7 +184,10 @@ public class TimerReceiver extends BroadcastReceiver {
                 return;
             }
 
-            // Restarting the timer with 1 minute left.
+            // Restarting the timer with 1 minute left, as a plain timer if it runs a program
+            if (t.mProgram != null) {
+                t.mProgram.finish();
+            }
             t.mState = TimerObj.STATE_RUNNING;
             t.mStartTime = Utils.getTimeNow();
             t.mTimeLeft = t. mOriginalLength = TimerObj.MINUTE_IN_MILLIS;
@@ -462,6 +488,30 @@ public class TimerReceiver extends BroadcastReceiver {
         }
     }
 
+    private void showProgramStepNotification(final Context context, TimerObj timerObj) {
+        // Content Intent. When clicked will show the timers tab
+        Intent activityIntent = new Intent(context, DeskClock.class);
+        activityIntent.putExtra(DeskClock.SELECT_TAB_INTENT_EXTRA, DeskClock.TIMER_TAB_INDEX);
+        PendingIntent contentIntent = PendingIntent.getActivity(context, timerObj.mTimerId,
+                activityIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        TimerProgram program = timerObj.mProgram;
+        Notification notification = new NotificationCompat.Builder(context)
+                .setContentIntent(contentIntent)
+                .setContentTitle(timerObj.getLabelOrDefault(context))
+                .setContentText(context.getString(R.string.timer_program_step,
+                        program.getStep() + 1, program.getStepCount()))
+                .setSmallIcon(R.drawable.stat_notify_timer)
+                .setAutoCancel(true)
+                .setPriority(Notification.PRIORITY_MAX)
+                .setDefaults(Notification.DEFAULT_ALL)
+                .build();
+
+        // Each step replaces the notification of the previous one
+        ((NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE)).notify(
+                timerObj.mTimerId, notification);
+    }
+
     private void cancelTimesUpNotification(final Context context) {
         for (TimerObj timerObj : Timers.timersInTimesUp(mTimers) ) {
             cancelTimesUpNotification(context, timerObj);
@@ -16,6 +16,10 @@
 
 package com.embeddedlog.LightUpDroid.timer;
 
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 
@@ -31,6 +35,7 @@ public class Timers {
     public static final String TIMER_STOP = "timer_stop";
     public static final String TIMER_DONE = "timer_done";
     public static final String TIMER_UPDATE = "timer_update";
+    public static final String START_TIMER_GROUP = "start_timer_group";
 
     public static final String TIMER_INTENT_EXTRA = "timer.intent.extra";
 
@@ -46,6 +51,33 @@ public class Timers {
 
     public static final String TIMESUP_MODE = "times_up";
 
+    // Public API to start several timers at once, from a stored preset or from the extras
+    public static final String ACTION_START_TIMER_GROUP =
+            "com.embeddedlog.LightUpDroid.START_TIMER_GROUP";
+    public static final String EXTRA_PRESET_NAME = "com.embeddedlog.LightUpDroid.extra.PRESET";
+    public static final String EXTRA_LENGTHS = "com.embeddedlog.LightUpDroid.extra.LENGTHS";
+    public static final String EXTRA_LABELS = "com.embeddedlog.LightUpDroid.extra.LABELS";
+    public static final String EXTRA_SEQUENCE = "com.embeddedlog.LightUpDroid.extra.SEQUENCE";
+    public static final String EXTRA_ROUNDS = "com.embeddedlog.LightUpDroid.extra.ROUNDS";
+
+    /**
+     * Starts all the timers in the list. They are stored with a single preferences write and
+     * TimerReceiver is told once, so only one "times up" wake-up gets armed for the whole group.
+     */
+    public static void startTimers(
+            Context context, SharedPreferences prefs, ArrayList<TimerObj> timers) {
+        if (timers.isEmpty()) {
+            return;
+        }
+        TimerObj.assignUniqueIds(prefs, timers);
+        TimerObj.putTimersInSharedPrefs(prefs, timers);
+        Intent i = new Intent();
+        i.setAction(START_TIMER_GROUP);
+        // Make sure the receiver is getting the intent ASAP.
+        i.addFlags(Intent.FLAG_RECEIVER_FOREGROUND);
+        context.sendBroadcast(i);
+    }
+
     public static TimerObj findTimer(ArrayList<TimerObj> timers, int timerId) {
         Iterator<TimerObj> i = timers.iterator();
         while(i.hasNext()) {
@@ -16,21 +16,20 @@
 
 package com.embeddedlog.LightUpDroid.widget;
 
-import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
-import android.os.SystemClock;
 import android.provider.Settings;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
+import android.view.View;
 import android.widget.TextView;
 
+import com.embeddedlog.LightUpDroid.ClockTicker;
+
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -117,6 +116,7 @@ public class TextClock extends TextView {
     private boolean mHasSeconds;
 
     private boolean mAttached;
+    private boolean mTicking;
 
     private Calendar mTime;
     private String mTimeZone;
@@ -135,28 +135,16 @@ public class TextClock extends TextView {
         }
     };
 
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
+    private final ClockTicker.OnTickListener mTickListener = new ClockTicker.OnTickListener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (mTimeZone == null && Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
-                final String timeZone = intent.getStringExtra("time-zone");
-                createTime(timeZone);
+        public void onTick(boolean timeZoneChanged) {
+            if (mTimeZone == null && timeZoneChanged) {
+                createTime(null);
             }
             onTimeChanged();
         }
     };
 
-    private final Runnable mTicker = new Runnable() {
-        public void run() {
-            onTimeChanged();
-
-            long now = SystemClock.uptimeMillis();
-            long next = now + (1000 - now % 1000);
-
-            getHandler().postAtTime(mTicker, next);
-        }
-    };
-
     /**
      * Creates a new clock using the default patterns
      * {@link #DEFAULT_FORMAT_24_HOUR} and {@link #DEFAULT_FORMAT_12_HOUR}
@@ -433,14 +421,30 @@ public class TextClock extends TextView {
         }
 
         boolean hadSeconds = mHasSeconds;
-        mHasSeconds = true;
+        mHasSeconds = hasSeconds(mFormat);
 
-        if (handleTicker && mAttached && hadSeconds != mHasSeconds) {
-            if (hadSeconds) getHandler().removeCallbacks(mTicker);
-            else mTicker.run();
+        if (handleTicker && mTicking && hadSeconds != mHasSeconds) {
+            updateTicking();
         }
     }
 
+    /**
+     * @return true if the format pattern shows the seconds, false if the text only changes
+     * once a minute.
+     */
+    private static boolean hasSeconds(CharSequence format) {
+        boolean quoted = false;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == 's' && !quoted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns a if not null, else return b if not null, else return c.
      */
@@ -455,16 +459,10 @@ public class TextClock extends TextView {
         if (!mAttached) {
             mAttached = true;
 
-            registerReceiver();
             registerObserver();
 
             createTime(mTimeZone);
-
-            if (mHasSeconds) {
-                mTicker.run();
-            } else {
-                onTimeChanged();
-            }
+            updateTicking();
         }
     }
 
@@ -473,23 +471,42 @@ public class TextClock extends TextView {
         super.onDetachedFromWindow();
 
         if (mAttached) {
-            unregisterReceiver();
             unregisterObserver();
 
-            getHandler().removeCallbacks(mTicker);
-
             mAttached = false;
+            updateTicking();
         }
     }
 
-    private void registerReceiver() {
-        final IntentFilter filter = new IntentFilter();
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateTicking();
+    }
 
-        filter.addAction(Intent.ACTION_TIME_TICK);
-        filter.addAction(Intent.ACTION_TIME_CHANGED);
-        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateTicking();
+    }
 
-        getContext().registerReceiver(mIntentReceiver, filter, null, getHandler());
+    /**
+     * Subscribes to the shared clock ticker while the clock can be seen, every second if the
+     * format shows the seconds and every minute otherwise.
+     */
+    private void updateTicking() {
+        boolean tick = mAttached && getWindowVisibility() == VISIBLE && isShown();
+        if (tick) {
+            if (!mTicking) {
+                // The time may have moved on while not ticking
+                onTimeChanged();
+            }
+            ClockTicker.getInstance(getContext()).register(mTickListener, mHasSeconds
+                    ? ClockTicker.GRANULARITY_SECOND : ClockTicker.GRANULARITY_MINUTE);
+        } else if (mTicking) {
+            ClockTicker.getInstance(getContext()).unregister(mTickListener);
+        }
+        mTicking = tick;
     }
 
     private void registerObserver() {
@@ -497,10 +514,6 @@ public class TextClock extends TextView {
         resolver.registerContentObserver(Settings.System.CONTENT_URI, true, mFormatChangeObserver);
     }
 
-    private void unregisterReceiver() {
-        getContext().unregisterReceiver(mIntentReceiver);
-    }
-
     private void unregisterObserver() {
         final ContentResolver resolver = getContext().getContentResolver();
         resolver.unregisterContentObserver(mFormatChangeObserver);
@@ -37,6 +37,7 @@ public class TextTime extends TextView {
 
     private int mHour;
     private int mMinute;
+    private boolean mTimeSet;
 
     private final ContentObserver mFormatChangeObserver = new ContentObserver(new Handler()) {
         @Override
@@ -147,6 +148,11 @@ public class TextTime extends TextView {
     }
 
     public void setTime(int hour, int minute) {
+        // Rebinding a list row to the same time does not need to format it again
+        if (mTimeSet && hour == mHour && minute == mMinute) {
+            return;
+        }
+        mTimeSet = true;
         mHour = hour;
         mMinute = minute;
         updateTime();
@@ -16,59 +16,109 @@
 
 package com.embeddedlog.LightUpDroid.worldclock;
 
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.CursorLoader;
 import android.content.SharedPreferences;
-import android.util.Log;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.preference.PreferenceManager;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import com.embeddedlog.LightUpDroid.Log;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
+import com.embeddedlog.LightUpDroid.provider.City;
 
+/**
+ * The cities selected for the world clock, stored one row per city in the selected_cities table
+ * of the ClockProvider. Selecting or removing a city writes only that row.
+ */
 public class Cities {
 
     public static final String WORLDCLOCK_UPDATE_INTENT = "com.android.deskclock.worldclock.update";
+    // Key of the city count used by the versions that stored the cities in the shared prefs
     private static final String NUMBER_OF_CITIES = "number_of_cities";
 
-    public static void saveCitiesToSharedPrefs(
-            SharedPreferences prefs, HashMap<String, CityObj> cities) {
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putInt(NUMBER_OF_CITIES, cities.size());
-        Collection<CityObj> col = cities.values();
-        Iterator<CityObj> i = col.iterator();
-        int count = 0;
-        while (i.hasNext()) {
-            CityObj c = i.next();
-            c.saveCityToSharedPrefs(editor, count);
-            count++;
-        }
-        editor.apply();
+    private static final String[] QUERY_COLUMNS = {
+            City.CITY_ID,
+            City.CITY_NAME,
+            City.TIMEZONE_NAME
+    };
+    private static final int CITY_ID_INDEX = 0;
+    private static final int CITY_NAME_INDEX = 1;
+    private static final int TIMEZONE_NAME_INDEX = 2;
+
+    /**
+     * @return a loader of the selected cities that first moves any cities left in the shared
+     * prefs by previous versions into the provider.
+     */
+    public static CursorLoader getCitiesCursorLoader(final Context context) {
+        final Context appContext = context.getApplicationContext();
+        return new CursorLoader(context, City.CONTENT_URI, QUERY_COLUMNS, null, null, null) {
+            @Override
+            public Cursor loadInBackground() {
+                migrateFromSharedPrefs(appContext);
+                return super.loadInBackground();
+            }
+        };
     }
 
-    public static  HashMap<String, CityObj> readCitiesFromSharedPrefs(SharedPreferences prefs) {
-        int size = prefs.getInt(NUMBER_OF_CITIES, -1);
-        HashMap<String, CityObj> c = new HashMap<String, CityObj>();
-        if (size > 0) {
-            for (int i = 0; i < size; i++) {
-                CityObj o = new CityObj(prefs, i);
-                if (o.mCityName != null && o.mTimeZone != null) {
-                    c.put(o.mCityId, o);
-                }
+    public static CityObj getCity(Cursor c) {
+        return new CityObj(c.getString(CITY_NAME_INDEX), c.getString(TIMEZONE_NAME_INDEX),
+                c.getString(CITY_ID_INDEX));
+    }
+
+    /**
+     * Adds the city to the selected cities in a background thread.
+     */
+    public static void asyncAddCity(Context context, final CityObj city) {
+        final ContentResolver cr = context.getContentResolver();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                addCity(cr, city);
             }
-        }
-        return c;
+        });
+    }
+
+    /**
+     * Removes the city from the selected cities in a background thread. Runs after any add
+     * queued before it, so toggling a city quickly leaves the last state.
+     */
+    public static void asyncRemoveCity(Context context, final String cityId) {
+        final ContentResolver cr = context.getContentResolver();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                City.deleteCity(cr, cityId);
+            }
+        });
     }
 
-    private static void dumpCities(SharedPreferences prefs, String title) {
+    private static void addCity(ContentResolver cr, CityObj city) {
+        int offset = ZoneOffsetCache.getOffset(city.mTimeZone, System.currentTimeMillis());
+        City.addCity(cr, new City(city.mCityId, city.mCityName, city.mTimeZone, offset));
+    }
+
+    /**
+     * Moves the cities stored one key per field by previous versions into the provider.
+     */
+    private static synchronized void migrateFromSharedPrefs(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!prefs.contains(NUMBER_OF_CITIES)) {
+            return;
+        }
         int size = prefs.getInt(NUMBER_OF_CITIES, -1);
-        Log.d("Cities", "Selected Cities List " + title);
-        Log.d("Cities", "Number of cities " + size);
-        HashMap<String, CityObj> c = new HashMap<String, CityObj>();
-        if (size > 0) {
-            for (int i = 0; i < size; i++) {
-                CityObj o = new CityObj(prefs, i);
-                if (o.mCityName != null && o.mTimeZone != null) {
-                    Log.d("Cities", "Name " + o.mCityName + " tz " + o.mTimeZone);
-                }
+        ContentResolver cr = context.getContentResolver();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < size; i++) {
+            CityObj o = new CityObj(prefs, i);
+            if (o.mCityId != null && o.mCityName != null && o.mTimeZone != null) {
+                addCity(cr, o);
             }
+            CityObj.removeCityFromSharedPrefs(editor, i);
         }
+        editor.remove(NUMBER_OF_CITIES);
+        editor.commit();
+        Log.i("Moved " + size + " selected cities to the provider");
     }
 }
@@ -18,10 +18,13 @@ package com.embeddedlog.LightUpDroid.worldclock;
 
 import android.app.ActionBar;
 import android.app.Activity;
+import android.app.LoaderManager;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
+import android.content.Loader;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
@@ -50,6 +53,7 @@ import com.embeddedlog.LightUpDroid.DeskClock;
 import com.embeddedlog.LightUpDroid.R;
 import com.embeddedlog.LightUpDroid.SettingsActivity;
 import com.embeddedlog.LightUpDroid.Utils;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -57,13 +61,12 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
-import java.util.TimeZone;
 
 /**
  * Cities chooser for the world clock
  */
 public class CitiesActivity extends Activity implements OnCheckedChangeListener,
-        View.OnClickListener, OnQueryTextListener {
+        View.OnClickListener, OnQueryTextListener, LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final String KEY_SEARCH_QUERY = "search_query";
     private static final String KEY_SEARCH_MODE = "search_mode";
@@ -85,6 +88,8 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     private ListView mCitiesList;
     private CityAdapter mAdapter;
     private HashMap<String, CityObj> mUserSelectedCities;
+    // The selected cities are loaded once, later changes are made on mUserSelectedCities
+    private boolean mSelectedCitiesLoaded;
     private Calendar mCalendar;
 
     private SearchView mSearchView;
@@ -109,7 +114,9 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
 
         private List<CityObj> mDisplayedCitiesList;
 
+        private final CityCatalog mCatalog;
         private CityObj[] mCities;
+        private int mCitiesSortType = -1;
         private CityObj[] mSelectedCities;
 
         // A map that caches names of cities in local memory.  The names in this map are
@@ -118,8 +125,13 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         // language's city strings are read from the xml file.
         private HashMap<String, String> mCityNameMap = new HashMap<String, String>();
 
-        private String[] mSectionHeaders;
-        private Integer[] mSectionPositions;
+        // Cities without deleted entries and their sections, loaded once for each order
+        private CityObj[] mCitiesByName;
+        private CitySectionIndex mSectionsByName;
+        private CityObj[] mCitiesByGmtOffset;
+        private CitySectionIndex mSectionsByGmtOffset;
+        private CitySectionIndex mSectionIndex;
+        private DisplayedCities mDisplayedCities;
 
         private CityNameComparator mSortByNameComparator = new CityNameComparator();
         private CityGmtOffsetComparator mSortByTimeComparator = new CityGmtOffsetComparator();
@@ -132,99 +144,97 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
 
         private int mSelectedEndPosition = 0;
 
+        // Only used on the filter thread, rebuilt when the cities are reloaded in another order
+        private CitySearchIndex mSearchIndex;
+        private CityObj[] mSearchIndexCities;
+
+        /**
+         * Cities listed by a filter pass and how its fast scroll sections map to list positions.
+         */
+        private class DisplayedCities {
+            final ArrayList<CityObj> mCities = new ArrayList<CityObj>();
+            // Sections of the catalog cities, null while searching
+            CitySectionIndex mSections;
+            String[] mSectionTitles = new String[0];
+            // True if the selected cities are listed first as their own section
+            boolean mSelectedSection;
+            int mCatalogStart;
+        }
+
         private Filter mFilter = new Filter() {
 
             @Override
-            protected synchronized FilterResults performFiltering(CharSequence constraint) {
+            protected FilterResults performFiltering(CharSequence constraint) {
                 FilterResults results = new FilterResults();
-                String modifiedQuery = constraint.toString().trim().toUpperCase();
+                String modifiedQuery = constraint.toString().trim();
+                final CityObj[] cities = mCities;
+                final CitySectionIndex sections = mSectionIndex;
+                int[] matches = null;
+                if (!TextUtils.isEmpty(modifiedQuery)) {
+                    if (mSearchIndex == null || mSearchIndexCities != cities) {
+                        mSearchIndex = new CitySearchIndex(cities);
+                        mSearchIndexCities = cities;
+                    }
+                    matches = mSearchIndex.search(modifiedQuery);
+                }
 
-                ArrayList<CityObj> filteredList = new ArrayList<CityObj>();
-                ArrayList<String> sectionHeaders = new ArrayList<String>();
-                ArrayList<Integer> sectionPositions = new ArrayList<Integer>();
+                final DisplayedCities displayed = new DisplayedCities();
+                ArrayList<CityObj> filteredList = displayed.mCities;
 
                 // If the search query is empty, add in the selected cities
                 if (TextUtils.isEmpty(modifiedQuery) && mSelectedCities != null) {
                     if (mSelectedCities.length > 0) {
-                        sectionHeaders.add("+");
-                        sectionPositions.add(0);
+                        displayed.mSelectedSection = true;
                         filteredList.add(new CityObj(mSelectedCitiesHeaderString,
                                 mSelectedCitiesHeaderString,
                                 null));
                     }
                     for (CityObj city : mSelectedCities) {
-                        city.isHeader = false;
                         filteredList.add(city);
                     }
                 }
 
-                mSelectedEndPosition = filteredList.size();
-
-                long currentTime = System.currentTimeMillis();
-                String val = null;
-                int offset = -100000; //some value that cannot be a real offset
-                for (CityObj city : mCities) {
+                displayed.mCatalogStart = filteredList.size();
 
-                    // If the city is a deleted entry, ignore it.
-                    if (city.mCityId.equals(DELETED_ENTRY)) {
-                        continue;
+                // A search only lists the matching cities, in the current order
+                if (matches != null) {
+                    filteredList.ensureCapacity(matches.length);
+                    for (int position : matches) {
+                        filteredList.add(cities[position]);
                     }
-
-                    // If the search query is empty, add section headers.
-                    if (TextUtils.isEmpty(modifiedQuery)) {
-
-
-                        // If the list is sorted by name, and the city begins with a letter
-                        // different than the previous city's letter, insert a section header.
-                        if (mSortType == SORT_BY_NAME
-                                    && !city.mCityName.substring(0, 1).equals(val)) {
-                                val = city.mCityName.substring(0, 1).toUpperCase();
-                                sectionHeaders.add(val);
-                                sectionPositions.add(filteredList.size());
-                                filteredList.add(new CityObj(val, null, null));
-                                city.isHeader = true;
-                        } else {
-                                city.isHeader = false;
-                        }
-
-                        // If the list is sorted by time, and the gmt offset is different than
-                        // the previous city's gmt offset, insert a section header.
-                        if (mSortType == SORT_BY_GMT_OFFSET) {
-                            TimeZone timezone = TimeZone.getTimeZone(city.mTimeZone);
-                            int newOffset = timezone.getOffset(currentTime);
-                            if (offset != newOffset) {
-                                offset = newOffset;
-                                String offsetString = Utils.getGMTHourOffset(timezone, true);
-                                sectionHeaders.add(offsetString);
-                                sectionPositions.add(filteredList.size());
-                                filteredList.add(new CityObj(null, offsetString, null));
-                                city.isHeader = true;
-                            } else {
-                                city.isHeader = false;
-                            }
+                } else {
+                    // The query is empty, list all the cities with the precomputed headers
+                    displayed.mSections = sections;
+                    filteredList.ensureCapacity(
+                            filteredList.size() + cities.length + sections.getSectionCount());
+                    int section = 0;
+                    for (int i = 0; i < cities.length; i++) {
+                        if (sections.isSectionStart(i, section)) {
+                            filteredList.add(sections.getHeader(section++));
                         }
+                        filteredList.add(cities[i]);
                     }
-
-                    // If the city name begins with the query, add the city into the list.
-                    // If the query is empty, the city will automatically be added to the list.
-                    String cityName = city.mCityName.trim().toUpperCase();
-                    if (city.mCityId != null && cityName.startsWith(modifiedQuery)) {
-                        city.isHeader = false;
-                        filteredList.add(city);
+                    String[] titles = sections.getTitles();
+                    if (displayed.mSelectedSection) {
+                        displayed.mSectionTitles = new String[titles.length + 1];
+                        displayed.mSectionTitles[0] = "+";
+                        System.arraycopy(titles, 0, displayed.mSectionTitles, 1, titles.length);
+                    } else {
+                        displayed.mSectionTitles = titles;
                     }
                 }
 
-                mSectionHeaders = sectionHeaders.toArray(new String[sectionHeaders.size()]);
-                mSectionPositions = sectionPositions.toArray(new Integer[sectionPositions.size()]);
-
-                results.values = filteredList;
+                results.values = displayed;
                 results.count = filteredList.size();
                 return results;
             }
 
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
-                mDisplayedCitiesList = (ArrayList<CityObj>) results.values;
+                DisplayedCities displayed = (DisplayedCities) results.values;
+                mDisplayedCitiesList = displayed.mCities;
+                mSelectedEndPosition = displayed.mCatalogStart;
+                mDisplayedCities = displayed;
                 if (mPosition >= 0) {
                     mCitiesList.setSelectionFromTop(mPosition, 0);
                     mPosition = -1;
@@ -240,8 +250,9 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
             mCalendar.setTimeInMillis(System.currentTimeMillis());
             mInflater = factory;
 
-            // Load the cities from xml.
-            mCities = Utils.loadCitiesFromXml(context);
+            // Load the cities from the catalog, already in the order they are shown.
+            mCatalog = CityCatalog.getInstance(context);
+            loadCities(mSortType);
 
             // Reload the city name map with the recently parsed city names of the currently
             // selected language for use with selected cities.
@@ -250,19 +261,7 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
                 mCityNameMap.put(city.mCityId, city.mCityName);
             }
 
-            // Re-organize the selected cities into an array.
-            Collection<CityObj> selectedCities = mUserSelectedCities.values();
-            mSelectedCities = selectedCities.toArray(new CityObj[selectedCities.size()]);
-
-            // Override the selected city names in the shared preferences with the
-            // city names in the updated city name map, which will always reflect the
-            // current language.
-            for (CityObj city : mSelectedCities) {
-                String newCityName = mCityNameMap.get(city.mCityId);
-                if (newCityName != null) {
-                    city.mCityName = newCityName;
-                }
-            }
+            updateSelectedCities();
 
             mPattern24 = "kk:mm";
 
@@ -277,9 +276,23 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         }
 
         public void refreshSelectedCities() {
+            updateSelectedCities();
+            sortCities(mSortType);
+        }
+
+        private void updateSelectedCities() {
+            // Re-organize the selected cities into an array.
             Collection<CityObj> selectedCities = mUserSelectedCities.values();
             mSelectedCities = selectedCities.toArray(new CityObj[selectedCities.size()]);
-            sortCities(mSortType);
+
+            // Override the stored city names with the city names in the updated city name
+            // map, which will always reflect the current language.
+            for (CityObj city : mSelectedCities) {
+                String newCityName = mCityNameMap.get(city.mCityId);
+                if (newCityName != null) {
+                    city.mCityName = newCityName;
+                }
+            }
         }
 
         public void toggleSort() {
@@ -290,10 +303,48 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
             }
         }
 
+        /**
+         * Reads the cities from the catalog in the given order, the catalog keeps them presorted
+         * so that they do not need sorting here. Each order and its sections are only built the
+         * first time it is shown.
+         */
+        private void loadCities(int sortType) {
+            if (mCitiesSortType == sortType) {
+                return;
+            }
+            if (sortType == SORT_BY_NAME) {
+                if (mCitiesByName == null) {
+                    mCitiesByName = withoutDeletedEntries(mCatalog.getCitiesSortedByName());
+                    mSectionsByName = new CitySectionIndex(mCitiesByName, true, 0);
+                }
+                mCities = mCitiesByName;
+                mSectionIndex = mSectionsByName;
+            } else {
+                if (mCitiesByGmtOffset == null) {
+                    long now = System.currentTimeMillis();
+                    mCitiesByGmtOffset = withoutDeletedEntries(
+                            mCatalog.getCitiesSortedByGmtOffset(now));
+                    mSectionsByGmtOffset = new CitySectionIndex(mCitiesByGmtOffset, false, now);
+                }
+                mCities = mCitiesByGmtOffset;
+                mSectionIndex = mSectionsByGmtOffset;
+            }
+            mCitiesSortType = sortType;
+        }
+
+        private CityObj[] withoutDeletedEntries(CityObj[] cities) {
+            ArrayList<CityObj> kept = new ArrayList<CityObj>(cities.length);
+            for (CityObj city : cities) {
+                if (city.mCityId != null && !city.mCityId.equals(DELETED_ENTRY)) {
+                    kept.add(city);
+                }
+            }
+            return kept.toArray(new CityObj[kept.size()]);
+        }
+
         private void sortCities(final int sortType) {
             mSortType = sortType;
-            Arrays.sort(mCities, sortType == SORT_BY_NAME ? mSortByNameComparator
-                    : mSortByTimeComparator);
+            loadCities(sortType);
             if (mSelectedCities != null) {
                 Arrays.sort(mSelectedCities, sortType == SORT_BY_NAME ? mSortByNameComparator
                         : mSortByTimeComparator);
@@ -388,7 +439,7 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         }
 
         private CharSequence getTimeCharSequence(String timeZone) {
-            mCalendar.setTimeZone(TimeZone.getTimeZone(timeZone));
+            mCalendar.setTimeZone(ZoneOffsetCache.getTimeZone(timeZone));
             return DateFormat.format(mIs24HoursMode ? mPattern24 : mPattern12, mCalendar);
         }
 
@@ -418,40 +469,40 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
 
         @Override
         public int getPositionForSection(int section) {
-            return !isEmpty(mSectionPositions) ? mSectionPositions[section] : 0;
+            final DisplayedCities displayed = mDisplayedCities;
+            if (displayed == null || displayed.mSections == null) {
+                return 0;
+            }
+            if (displayed.mSelectedSection) {
+                if (section <= 0) {
+                    return 0;
+                }
+                section--;
+            }
+            return displayed.mCatalogStart + displayed.mSections.getPositionForSection(section);
         }
 
-
         @Override
         public int getSectionForPosition(int p) {
-            final Integer[] positions = mSectionPositions;
-            if (!isEmpty(positions)) {
-                for (int i = 0; i < positions.length - 1; i++) {
-                    if (p >= positions[i]
-                            && p < positions[i + 1]) {
-                        return i;
-                    }
-                }
-                if (p >= positions[positions.length - 1]) {
-                    return positions.length - 1;
-                }
+            final DisplayedCities displayed = mDisplayedCities;
+            if (displayed == null || displayed.mSections == null
+                    || p < displayed.mCatalogStart) {
+                return 0;
             }
-            return 0;
+            return (displayed.mSelectedSection ? 1 : 0)
+                    + displayed.mSections.getSectionForPosition(p - displayed.mCatalogStart);
         }
 
         @Override
         public Object[] getSections() {
-            return mSectionHeaders;
+            final DisplayedCities displayed = mDisplayedCities;
+            return displayed != null ? displayed.mSectionTitles : null;
         }
 
         @Override
         public Filter getFilter() {
             return mFilter;
         }
-
-        private boolean isEmpty(Object[] array) {
-            return array == null || array.length == 0;
-        }
     }
 
     @Override
@@ -483,10 +534,13 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         setFastScroll(TextUtils.isEmpty(mQueryTextBuffer.toString().trim()));
         mCitiesList.setScrollBarStyle(View.SCROLLBARS_INSIDE_INSET);
         mCitiesList.setFastScrollEnabled(true);
-        mUserSelectedCities = Cities.readCitiesFromSharedPrefs(
-                PreferenceManager.getDefaultSharedPreferences(this));
+        if (mUserSelectedCities == null) {
+            mUserSelectedCities = new HashMap<String, CityObj>();
+        }
         mAdapter = new CityAdapter(this, mFactory);
         mCitiesList.setAdapter(mAdapter);
+        // The selected cities are read in the background and checked in the list once loaded
+        getLoaderManager().initLoader(0, null, this);
         ActionBar actionBar = getActionBar();
         if (actionBar != null) {
             actionBar.setDisplayOptions(ActionBar.DISPLAY_HOME_AS_UP, ActionBar.DISPLAY_HOME_AS_UP);
@@ -511,8 +565,6 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     @Override
     public void onPause() {
         super.onPause();
-        Cities.saveCitiesToSharedPrefs(PreferenceManager.getDefaultSharedPreferences(this),
-                mUserSelectedCities);
         Intent i = new Intent(Cities.WORLDCLOCK_UPDATE_INTENT);
         sendBroadcast(i);
     }
@@ -598,13 +650,42 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         return super.onPrepareOptionsMenu(menu);
     }
 
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return Cities.getCitiesCursorLoader(this);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        // Later loads only come from the changes made in this screen, which are already shown
+        if (mSelectedCitiesLoaded || data == null) {
+            return;
+        }
+        mSelectedCitiesLoaded = true;
+        data.moveToPosition(-1);
+        while (data.moveToNext()) {
+            CityObj city = Cities.getCity(data);
+            // Cities checked before the load are already in the map
+            if (!mUserSelectedCities.containsKey(city.mCityId)) {
+                mUserSelectedCities.put(city.mCityId, city);
+            }
+        }
+        mAdapter.refreshSelectedCities();
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+    }
+
     @Override
     public void onCheckedChanged(CompoundButton b, boolean checked) {
         CityObj c = (CityObj) b.getTag();
         if (checked) {
-            mUserSelectedCities.put(c.mCityId, c);
-        } else {
-            mUserSelectedCities.remove(c.mCityId);
+            if (mUserSelectedCities.put(c.mCityId, c) == null) {
+                Cities.asyncAddCity(this, c);
+            }
+        } else if (mUserSelectedCities.remove(c.mCityId) != null) {
+            Cities.asyncRemoveCity(this, c.mCityId);
         }
     }
 
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.worldclock;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import com.embeddedlog.LightUpDroid.Log;
+import com.embeddedlog.LightUpDroid.Utils;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Compact binary copy of the cities string arrays, built once per locale and app version and
+ * then read through a memory-mapped buffer. Time zone ids are interned, the cities are stored
+ * presorted by name (with the locale collator) and by id, and CityObj instances are only created
+ * for the cities that are asked for.
+ *
+ * The string arrays are translated, so rather than a single file generated at build time the
+ * catalog is generated from the resources the first time a locale is used.
+ *
+ * File layout, all ints big endian:
+ *   header:     MAGIC, FORMAT_VERSION, app version code, city count, zone count, pool offset
+ *   zones:      zone count x pool offset of the zone id
+ *   cities:     city count x (pool offset of the name, pool offset of the id, zone index)
+ *   name order: city count x city index, sorted by name
+ *   id order:   city count x city index, sorted by id
+ *   pool:       strings as an unsigned short length followed by the UTF-8 bytes
+ */
+public class CityCatalog {
+    private static final int MAGIC = 0x43495459; // "CITY"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_INTS = 6;
+    private static final int CITY_INTS = 3;
+    private static final String FILE_PREFIX = "cities_";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static CityCatalog sInstance;
+
+    private final String mLocale;
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mZoneCount;
+    private final int mZonesStart;
+    private final int mCitiesStart;
+    private final int mNameOrderStart;
+    private final int mIdOrderStart;
+    private final int mPoolStart;
+    private final String[] mZones;
+
+    /**
+     * @return the catalog for the current locale, building it if needed.
+     */
+    public static synchronized CityCatalog getInstance(Context context) {
+        String locale = Locale.getDefault().toString();
+        if (sInstance == null || !sInstance.mLocale.equals(locale)) {
+            sInstance = open(context, locale);
+        }
+        return sInstance;
+    }
+
+    private static CityCatalog open(Context context, String locale) {
+        int versionCode = getVersionCode(context);
+        File file = new File(context.getFilesDir(), FILE_PREFIX + locale + FILE_SUFFIX);
+        try {
+            ByteBuffer buffer = map(file);
+            if (buffer == null || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != FORMAT_VERSION || buffer.getInt(8) != versionCode) {
+                build(context, file, versionCode);
+                buffer = map(file);
+            }
+            return new CityCatalog(locale, buffer);
+        } catch (IOException e) {
+            Log.e("CityCatalog could not be built for " + locale, e);
+        }
+        // Keep working from the resources, without the file
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(serialize(Utils.loadCitiesFromXml(context), 0));
+            return new CityCatalog(locale, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private CityCatalog(String locale, ByteBuffer buffer) {
+        mLocale = locale;
+        mBuffer = buffer;
+        mCount = buffer.getInt(12);
+        mZoneCount = buffer.getInt(16);
+        mPoolStart = buffer.getInt(20);
+        mZonesStart = HEADER_INTS * 4;
+        mCitiesStart = mZonesStart + mZoneCount * 4;
+        mNameOrderStart = mCitiesStart + mCount * CITY_INTS * 4;
+        mIdOrderStart = mNameOrderStart + mCount * 4;
+        mZones = new String[mZoneCount];
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return a new CityObj for the city at the given index, in the order of the resources.
+     */
+    public CityObj getCity(int index) {
+        int record = mCitiesStart + index * CITY_INTS * 4;
+        return new CityObj(readString(mBuffer.getInt(record)),
+                getZone(mBuffer.getInt(record + 8)), readString(mBuffer.getInt(record + 4)));
+    }
+
+    /**
+     * @return a new CityObj for the city with the given id, or null if there is none.
+     */
+    public CityObj findCity(String id) {
+        if (id == null) {
+            return null;
+        }
+        int low = 0;
+        int high = mCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = mBuffer.getInt(mIdOrderStart + mid * 4);
+            int cmp = readString(mBuffer.getInt(mCitiesStart + index * CITY_INTS * 4 + 4))
+                    .compareTo(id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return getCity(index);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return new CityObj instances for all the cities, sorted by name.
+     */
+    public CityObj[] getCitiesSortedByName() {
+        CityObj[] cities = new CityObj[mCount];
+        for (int i = 0; i < mCount; i++) {
+            cities[i] = getCity(mBuffer.getInt(mNameOrderStart + i * 4));
+        }
+        return cities;
+    }
+
+    /**
+     * @return new CityObj instances for all the cities, sorted by their offset from GMT at the
+     * given time and then by name. The offset is computed once per time zone.
+     */
+    public CityObj[] getCitiesSortedByGmtOffset(long time) {
+        int[] zoneOffsets = new int[mZoneCount];
+        for (int z = 0; z < mZoneCount; z++) {
+            zoneOffsets[z] = ZoneOffsetCache.getOffset(getZone(z), time);
+        }
+        // Sort the distinct offsets, then bucket the cities in name order
+        int[] offsets = zoneOffsets.clone();
+        Arrays.sort(offsets);
+        int buckets = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (i == 0 || offsets[i] != offsets[i - 1]) {
+                offsets[buckets++] = offsets[i];
+            }
+        }
+        int[] bucketStarts = new int[buckets + 1];
+        int[] cityBuckets = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            int zone = mBuffer.getInt(mCitiesStart + i * CITY_INTS * 4 + 8);
+            cityBuckets[i] = Arrays.binarySearch(offsets, 0, buckets, zoneOffsets[zone]);
+            bucketStarts[cityBuckets[i] + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        CityObj[] cities = new CityObj[mCount];
+        for (int i = 0; i < mCount; i++) {
+            int index = mBuffer.getInt(mNameOrderStart + i * 4);
+            cities[bucketStarts[cityBuckets[index]]++] = getCity(index);
+        }
+        return cities;
+    }
+
+    private String getZone(int zone) {
+        if (mZones[zone] == null) {
+            mZones[zone] = readString(mBuffer.getInt(mZonesStart + zone * 4));
+        }
+        return mZones[zone];
+    }
+
+    private String readString(int offset) {
+        int position = mPoolStart + offset;
+        int length = mBuffer.getShort(position) & 0xffff;
+        byte[] bytes = new byte[length];
+        // Duplicate so that concurrent readers do not share the buffer position
+        ByteBuffer source = mBuffer.duplicate();
+        source.position(position + 2);
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_INTS * 4) {
+            return null;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void build(Context context, File file, int versionCode) throws IOException {
+        byte[] data = serialize(Utils.loadCitiesFromXml(context), versionCode);
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not rename " + tmp);
+        }
+    }
+
+    private static byte[] serialize(final CityObj[] cities, int versionCode) throws IOException {
+        // Intern the zone ids and fill the string pool
+        ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        DataOutputStream pool = new DataOutputStream(poolBytes);
+        HashMap<String, Integer> zoneIndexes = new HashMap<String, Integer>();
+        ArrayList<Integer> zoneOffsets = new ArrayList<Integer>();
+        int[] cityRecords = new int[cities.length * CITY_INTS];
+        for (int i = 0; i < cities.length; i++) {
+            Integer zone = zoneIndexes.get(cities[i].mTimeZone);
+            if (zone == null) {
+                zone = zoneOffsets.size();
+                zoneIndexes.put(cities[i].mTimeZone, zone);
+                zoneOffsets.add(writeString(pool, cities[i].mTimeZone));
+            }
+            cityRecords[i * CITY_INTS] = writeString(pool, cities[i].mCityName);
+            cityRecords[i * CITY_INTS + 1] = writeString(pool, cities[i].mCityId);
+            cityRecords[i * CITY_INTS + 2] = zone;
+        }
+
+        Integer[] nameOrder = new Integer[cities.length];
+        Integer[] idOrder = new Integer[cities.length];
+        for (int i = 0; i < cities.length; i++) {
+            nameOrder[i] = idOrder[i] = i;
+        }
+        final CityNameComparator nameComparator = new CityNameComparator();
+        Arrays.sort(nameOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return nameComparator.compare(cities[i1], cities[i2]);
+            }
+        });
+        Arrays.sort(idOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return cities[i1].mCityId.compareTo(cities[i2].mCityId);
+            }
+        });
+
+        int zoneCount = zoneOffsets.size();
+        int poolStart = (HEADER_INTS + zoneCount + cities.length * (CITY_INTS + 2)) * 4;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(poolStart + poolBytes.size());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(versionCode);
+        out.writeInt(cities.length);
+        out.writeInt(zoneCount);
+        out.writeInt(poolStart);
+        for (int offset : zoneOffsets) {
+            out.writeInt(offset);
+        }
+        for (int value : cityRecords) {
+            out.writeInt(value);
+        }
+        for (int index : nameOrder) {
+            out.writeInt(index);
+        }
+        for (int index : idOrder) {
+            out.writeInt(index);
+        }
+        poolBytes.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static int writeString(DataOutputStream pool, String value) throws IOException {
+        int offset = pool.size();
+        byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+        pool.writeShort(bytes.length);
+        pool.write(bytes);
+        return offset;
+    }
+
+    private static int getVersionCode(Context context) {
+        try {
+            return context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.worldclock;
+
+import android.app.ActionBar;
+import android.app.Activity;
+import android.app.LoaderManager;
+import android.content.Loader;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.view.MenuItem;
+
+import com.embeddedlog.LightUpDroid.R;
+import com.embeddedlog.LightUpDroid.SettingsActivity;
+import com.embeddedlog.LightUpDroid.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.TimeZone;
+
+/**
+ * Shows the day and working hours of the selected cities next to each other, aligned to the
+ * day of the home time zone.
+ */
+public class CityHoursActivity extends Activity implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private CityHoursView mCityHours;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.city_hours_activity);
+        mCityHours = (CityHoursView) findViewById(R.id.city_hours);
+        ActionBar actionBar = getActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayOptions(ActionBar.DISPLAY_HOME_AS_UP, ActionBar.DISPLAY_HOME_AS_UP);
+        }
+        getLoaderManager().initLoader(0, null, this);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return Cities.getCitiesCursorLoader(this);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        ArrayList<CityObj> cities = new ArrayList<CityObj>();
+        if (data != null && data.moveToFirst()) {
+            do {
+                cities.add(Cities.getCity(data));
+            } while (data.moveToNext());
+        }
+        Collections.sort(cities, new CityGmtOffsetComparator());
+
+        // The home time zone comes first, the bands of all the cities are aligned to its day
+        String homeTimeZone = PreferenceManager.getDefaultSharedPreferences(this).getString(
+                SettingsActivity.KEY_HOME_TZ, TimeZone.getDefault().getID());
+        String[] names = new String[cities.size() + 1];
+        String[] timeZones = new String[cities.size() + 1];
+        names[0] = getString(R.string.home_label);
+        timeZones[0] = homeTimeZone;
+        CityCatalog catalog = CityCatalog.getInstance(this);
+        for (int i = 0; i < cities.size(); i++) {
+            CityObj city = cities.get(i);
+            CityObj cityInDb = catalog.findCity(city.mCityId);
+            names[i + 1] = Utils.getCityName(city, cityInDb);
+            timeZones[i + 1] = cityInDb != null ? cityInDb.mTimeZone : city.mTimeZone;
+        }
+        mCityHours.setCities(names, timeZones, homeTimeZone);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mCityHours.setCities(new String[0], new String[0], TimeZone.getDefault().getID());
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.worldclock;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.embeddedlog.LightUpDroid.ClockTicker;
+import com.embeddedlog.LightUpDroid.R;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the 24 hours of the current day in the home time zone as one band per city, each hour
+ * shaded as night, day or working hours in the local time of the city. All the rows are drawn
+ * by this single view in one pass.
+ *
+ * The shading of each hour is worked out with the zone offsets when the cities or the day change,
+ * so offsets that change during the day are shown from the hour they apply. Drawing only merges
+ * runs of hours with the same shading into rectangles.
+ */
+public class CityHoursView extends View {
+    private static final int HOURS = 24;
+    private static final int HOUR_LABEL_STEP = 3;
+    private static final long HOUR = DateUtils.HOUR_IN_MILLIS;
+
+    // Local hours of the city, night runs from NIGHT_START_HOUR to NIGHT_END_HOUR
+    private static final int NIGHT_END_HOUR = 7;
+    private static final int WORK_START_HOUR = 9;
+    private static final int WORK_END_HOUR = 17;
+    private static final int NIGHT_START_HOUR = 22;
+
+    private static final byte KIND_NIGHT = 0;
+    private static final byte KIND_DAY = 1;
+    private static final byte KIND_WORK = 2;
+
+    private String[] mNames = new String[0];
+    private String[] mTimeZones = new String[0];
+    private CharSequence[] mLabels = new CharSequence[0];
+    // Shading of hour h of row r at mKinds[r * HOURS + h]
+    private byte[] mKinds = new byte[0];
+    private String mHomeTimeZone = TimeZone.getDefault().getID();
+    private long mDayStart;
+    private long mNextDayStart;
+
+    private final int[] mKindColors = new int[3];
+    private final String[] mHourLabels = new String[HOURS / HOUR_LABEL_STEP];
+    private final Paint mBandPaint = new Paint();
+    private final Paint mNowPaint = new Paint();
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mHourTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final int mRowHeight;
+    private final int mRowGap;
+    private final int mLabelPadding;
+    private int mLabelWidth;
+
+    private boolean mAttached;
+    private boolean mTicking;
+
+    public CityHoursView(Context context) {
+        this(context, null);
+    }
+
+    public CityHoursView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        final Resources res = context.getResources();
+        mKindColors[KIND_NIGHT] = res.getColor(R.color.city_hours_night);
+        mKindColors[KIND_DAY] = res.getColor(R.color.city_hours_day);
+        mKindColors[KIND_WORK] = res.getColor(R.color.city_hours_work);
+        mNowPaint.setColor(res.getColor(R.color.accent));
+        mNowPaint.setStrokeWidth(res.getDimension(R.dimen.city_hours_now_width));
+        mTextPaint.setColor(res.getColor(R.color.clock_white));
+        mTextPaint.setTextSize(res.getDimension(R.dimen.city_hours_text_size));
+        mHourTextPaint.setColor(res.getColor(R.color.clock_gray));
+        mHourTextPaint.setTextSize(res.getDimension(R.dimen.city_hours_hour_text_size));
+        mRowHeight = res.getDimensionPixelSize(R.dimen.city_hours_row_height);
+        mRowGap = res.getDimensionPixelSize(R.dimen.city_hours_row_gap);
+        mLabelPadding = res.getDimensionPixelSize(R.dimen.city_hours_label_padding);
+        for (int i = 0; i < mHourLabels.length; i++) {
+            mHourLabels[i] = String.format(Locale.getDefault(), "%d", i * HOUR_LABEL_STEP);
+        }
+        updateHours();
+    }
+
+    /**
+     * Sets the rows to show, the hours are aligned to the day of the home time zone.
+     */
+    public void setCities(String[] names, String[] timeZones, String homeTimeZone) {
+        if (names.length != timeZones.length) {
+            throw new IllegalArgumentException("Each city needs a time zone");
+        }
+        mNames = names;
+        mTimeZones = timeZones;
+        mHomeTimeZone = homeTimeZone;
+        updateHours();
+        updateLabels();
+        setContentDescription(TextUtils.join(", ", names));
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Works out the home day being shown and the shading of every hour of every row.
+     */
+    private void updateHours() {
+        Calendar dayStart = Calendar.getInstance(ZoneOffsetCache.getTimeZone(mHomeTimeZone));
+        dayStart.set(Calendar.HOUR_OF_DAY, 0);
+        dayStart.set(Calendar.MINUTE, 0);
+        dayStart.set(Calendar.SECOND, 0);
+        dayStart.set(Calendar.MILLISECOND, 0);
+        mDayStart = dayStart.getTimeInMillis();
+        dayStart.add(Calendar.DAY_OF_MONTH, 1);
+        mNextDayStart = dayStart.getTimeInMillis();
+
+        if (mKinds.length != mTimeZones.length * HOURS) {
+            mKinds = new byte[mTimeZones.length * HOURS];
+        }
+        for (int r = 0; r < mTimeZones.length; r++) {
+            for (int h = 0; h < HOURS; h++) {
+                // Shade the hour by the city time at its middle
+                long time = mDayStart + h * HOUR + HOUR / 2;
+                long local = time + ZoneOffsetCache.getOffset(mTimeZones[r], time);
+                int localHour = (int) ((local / HOUR) % HOURS);
+                byte kind;
+                if (localHour < NIGHT_END_HOUR || localHour >= NIGHT_START_HOUR) {
+                    kind = KIND_NIGHT;
+                } else if (localHour >= WORK_START_HOUR && localHour < WORK_END_HOUR) {
+                    kind = KIND_WORK;
+                } else {
+                    kind = KIND_DAY;
+                }
+                mKinds[r * HOURS + h] = kind;
+            }
+        }
+    }
+
+    /**
+     * Sizes the city name column to the longest name, up to a third of the width, and shortens
+     * the names that do not fit.
+     */
+    private void updateLabels() {
+        int available = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (available <= 0) {
+            return;
+        }
+        float widest = 0;
+        for (String name : mNames) {
+            widest = Math.max(widest, mTextPaint.measureText(name));
+        }
+        mLabelWidth = (int) Math.min(widest + mLabelPadding, available / 3);
+        mLabels = new CharSequence[mNames.length];
+        for (int i = 0; i < mNames.length; i++) {
+            mLabels[i] = TextUtils.ellipsize(mNames[i], mTextPaint,
+                    mLabelWidth - mLabelPadding, TextUtils.TruncateAt.END);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int height = getPaddingTop() + getPaddingBottom() + getHeaderHeight()
+                + mNames.length * (mRowHeight + mRowGap);
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLabels();
+    }
+
+    private int getHeaderHeight() {
+        return (int) Math.ceil(mHourTextPaint.getFontSpacing()) + mRowGap;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mLabels.length != mNames.length) {
+            return;
+        }
+
+        final float bandLeft = getPaddingLeft() + mLabelWidth;
+        final float bandRight = getWidth() - getPaddingRight();
+        final float cellWidth = (bandRight - bandLeft) / HOURS;
+        float top = getPaddingTop();
+
+        // Hours of the home day above the bands
+        final float hourBaseline = top - mHourTextPaint.ascent();
+        for (int i = 0; i < mHourLabels.length; i++) {
+            canvas.drawText(mHourLabels[i], bandLeft + i * HOUR_LABEL_STEP * cellWidth,
+                    hourBaseline, mHourTextPaint);
+        }
+        top += getHeaderHeight();
+        final float bandsTop = top;
+
+        final float textOffset = (mRowHeight - mTextPaint.ascent() - mTextPaint.descent()) / 2;
+        for (int r = 0; r < mLabels.length; r++) {
+            canvas.drawText(mLabels[r], 0, mLabels[r].length(), getPaddingLeft(),
+                    top + textOffset, mTextPaint);
+            final int row = r * HOURS;
+            int runStart = 0;
+            for (int h = 1; h <= HOURS; h++) {
+                if (h == HOURS || mKinds[row + h] != mKinds[row + runStart]) {
+                    mBandPaint.setColor(mKindColors[mKinds[row + runStart]]);
+                    canvas.drawRect(bandLeft + runStart * cellWidth, top,
+                            bandLeft + h * cellWidth, top + mRowHeight, mBandPaint);
+                    runStart = h;
+                }
+            }
+            top += mRowHeight + mRowGap;
+        }
+
+        // Current time across all the bands
+        final float now = (float) (System.currentTimeMillis() - mDayStart) / HOUR;
+        if (now >= 0 && now <= HOURS && mLabels.length > 0) {
+            final float x = bandLeft + now * cellWidth;
+            canvas.drawLine(x, bandsTop, x, top - mRowGap, mNowPaint);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        updateTicking();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mAttached = false;
+        updateTicking();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateTicking();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateTicking();
+    }
+
+    /**
+     * Moves the current time marker every minute while the view can be seen.
+     */
+    private void updateTicking() {
+        boolean tick = mAttached && getWindowVisibility() == VISIBLE && isShown();
+        if (tick && !mTicking) {
+            mTickListener.onTick(false);
+            ClockTicker.getInstance(getContext()).register(
+                    mTickListener, ClockTicker.GRANULARITY_MINUTE);
+        } else if (!tick && mTicking) {
+            ClockTicker.getInstance(getContext()).unregister(mTickListener);
+        }
+        mTicking = tick;
+    }
+
+    private final ClockTicker.OnTickListener mTickListener = new ClockTicker.OnTickListener() {
+        @Override
+        public void onTick(boolean timeZoneChanged) {
+            long now = System.currentTimeMillis();
+            if (timeZoneChanged || now < mDayStart || now >= mNextDayStart) {
+                updateHours();
+            }
+            invalidate();
+        }
+    };
+}
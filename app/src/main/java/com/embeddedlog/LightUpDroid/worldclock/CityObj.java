@@ -27,7 +27,6 @@ public class CityObj {
     public String mCityName;
     public String mTimeZone;
     public String mCityId;
-    public boolean isHeader;
 
     public CityObj(String name, String timezone, String id) {
         mCityName = name;
@@ -50,9 +49,9 @@ public class CityObj {
         mCityId = prefs.getString(CITY_ID + index, null);
     }
 
-    public void saveCityToSharedPrefs(SharedPreferences.Editor editor, int index) {
-        editor.putString (CITY_NAME + index, mCityName);
-        editor.putString (CITY_TIME_ZONE + index, mTimeZone);
-        editor.putString (CITY_ID + index, mCityId);
+    public static void removeCityFromSharedPrefs(SharedPreferences.Editor editor, int index) {
+        editor.remove(CITY_NAME + index);
+        editor.remove(CITY_TIME_ZONE + index);
+        editor.remove(CITY_ID + index);
     }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.worldclock;
+
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * Search index over an array of cities, built once and then queried on every keystroke of the
+ * city picker search box. Every city is searchable by its name, by the regions of its time zone
+ * id (for example "America", "Argentina" or "Buenos Aires") and by the long name of its time
+ * zone, all folded to upper case without accents.
+ *
+ * Word prefixes are answered from a sorted array of all the keys starting at a word, which works
+ * as a flattened prefix trie: the matches are one contiguous range found by binary search.
+ * Queries of N_GRAM characters or more also match anywhere inside a name, using the
+ * intersection of the postings of the query n-grams. When the query extends the previous one,
+ * only the previous matches are checked again.
+ *
+ * Matches are returned as ascending positions in the indexed array, so they keep its order.
+ * An index instance is meant to be queried from a single thread.
+ */
+public class CitySearchIndex {
+    private static final int N_GRAM = 3;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    // Folded searchable text of each city, the terms separated by '\n'
+    private final String[] mTexts;
+    // Keys starting at every word of every term, sorted, with the city of each key
+    private final String[] mPrefixKeys;
+    private final int[] mPrefixCities;
+    // Ascending cities containing each n-gram
+    private final HashMap<String, int[]> mNGrams = new HashMap<String, int[]>();
+
+    private String mLastQuery;
+    private int[] mLastMatches;
+
+    public CitySearchIndex(CityObj[] cities) {
+        mTexts = new String[cities.length];
+        HashMap<String, String> zoneTerms = new HashMap<String, String>();
+        final ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<Integer> keyCities = new ArrayList<Integer>();
+        HashMap<String, ArrayList<Integer>> nGrams = new HashMap<String, ArrayList<Integer>>();
+        for (int i = 0; i < cities.length; i++) {
+            CityObj city = cities[i];
+            String zone = zoneTerms.get(city.mTimeZone);
+            if (zone == null) {
+                zone = getZoneTerms(city.mTimeZone);
+                zoneTerms.put(city.mTimeZone, zone);
+            }
+            String text = fold(city.mCityName) + '\n' + zone;
+            mTexts[i] = text;
+            for (int start = 0; start < text.length(); start++) {
+                if (isWordStart(text, start)) {
+                    int end = text.indexOf('\n', start);
+                    keys.add(text.substring(start, end < 0 ? text.length() : end));
+                    keyCities.add(i);
+                }
+            }
+            for (int start = 0; start + N_GRAM <= text.length(); start++) {
+                String gram = text.substring(start, start + N_GRAM);
+                if (gram.indexOf('\n') >= 0) {
+                    continue;
+                }
+                ArrayList<Integer> postings = nGrams.get(gram);
+                if (postings == null) {
+                    postings = new ArrayList<Integer>();
+                    nGrams.put(gram, postings);
+                }
+                // Cities are added in order, so only the last posting can be a repeat
+                if (postings.isEmpty() || postings.get(postings.size() - 1) != i) {
+                    postings.add(i);
+                }
+            }
+        }
+
+        Integer[] order = new Integer[keys.size()];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer k1, Integer k2) {
+                return keys.get(k1).compareTo(keys.get(k2));
+            }
+        });
+        mPrefixKeys = new String[order.length];
+        mPrefixCities = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            mPrefixKeys[k] = keys.get(order[k]);
+            mPrefixCities[k] = keyCities.get(order[k]);
+        }
+        for (Map.Entry<String, ArrayList<Integer>> entry : nGrams.entrySet()) {
+            ArrayList<Integer> postings = entry.getValue();
+            int[] array = new int[postings.size()];
+            for (int p = 0; p < array.length; p++) {
+                array[p] = postings.get(p);
+            }
+            mNGrams.put(entry.getKey(), array);
+        }
+    }
+
+    /**
+     * @return the ascending positions of the cities matching the query, or null if the query is
+     * empty and every city matches.
+     */
+    public int[] search(String query) {
+        String folded = fold(query).trim();
+        if (folded.isEmpty()) {
+            mLastQuery = null;
+            mLastMatches = null;
+            return null;
+        }
+        int[] matches;
+        if (mLastQuery != null && folded.startsWith(mLastQuery)
+                && (mLastQuery.length() >= N_GRAM || folded.length() < N_GRAM)) {
+            // Narrowing the previous query with the same kind of match can only drop cities
+            matches = filter(mLastMatches, folded);
+        } else if (folded.length() < N_GRAM) {
+            matches = searchPrefixes(folded);
+        } else {
+            // Word prefixes are substrings too, so this covers them
+            matches = searchNGrams(folded);
+        }
+        mLastQuery = folded;
+        mLastMatches = matches;
+        return matches;
+    }
+
+    private int[] searchPrefixes(String query) {
+        int from = lowerBound(query);
+        int to = from;
+        while (to < mPrefixKeys.length && mPrefixKeys[to].startsWith(query)) {
+            to++;
+        }
+        int[] cities = Arrays.copyOfRange(mPrefixCities, from, to);
+        Arrays.sort(cities);
+        return unique(cities);
+    }
+
+    private int[] searchNGrams(String query) {
+        int[] candidates = null;
+        for (int start = 0; start + N_GRAM <= query.length(); start++) {
+            int[] postings = mNGrams.get(query.substring(start, start + N_GRAM));
+            if (postings == null) {
+                return new int[0];
+            }
+            candidates = candidates == null ? postings : intersect(candidates, postings);
+        }
+        // The n-grams may come from different terms or places, check the whole query
+        return filter(candidates, query);
+    }
+
+    private int[] filter(int[] cities, String query) {
+        int[] result = new int[cities.length];
+        int count = 0;
+        for (int city : cities) {
+            if (matches(mTexts[city], query)) {
+                result[count++] = city;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static boolean matches(String text, String query) {
+        if (query.length() >= N_GRAM) {
+            return text.contains(query);
+        }
+        for (int start = text.indexOf(query); start >= 0; start = text.indexOf(query, start + 1)) {
+            if (isWordStart(text, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = mPrefixKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mPrefixKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] unique(int[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private static boolean isWordStart(String text, int index) {
+        if (text.charAt(index) == '\n' || text.charAt(index) == ' ') {
+            return false;
+        }
+        return index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1));
+    }
+
+    /**
+     * @return the regions of the time zone id and the long time zone name, one term per line.
+     */
+    private static String getZoneTerms(String timeZone) {
+        if (timeZone == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String region : timeZone.split("/")) {
+            sb.append(fold(region.replace('_', ' '))).append('\n');
+        }
+        sb.append(fold(ZoneOffsetCache.getTimeZone(timeZone)
+                .getDisplayName(false, TimeZone.LONG)));
+        return sb.toString();
+    }
+
+    /**
+     * @return the text in upper case, without accents and with the line breaks used to
+     * separate terms replaced by spaces.
+     */
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").replace('\n', ' ')
+                .toUpperCase(Locale.ROOT);
+    }
+}
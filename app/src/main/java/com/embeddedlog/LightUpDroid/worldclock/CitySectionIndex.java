@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2015 carlosperate http://carlosperate.github.io
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.embeddedlog.LightUpDroid.worldclock;
+
+import com.embeddedlog.LightUpDroid.Utils;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fast scroll sections of an array of cities in one of the city picker orders, built once when
+ * the cities are loaded in that order. A section starts at every new first letter when sorted
+ * by name, or at every new offset from GMT when sorted by offset.
+ *
+ * When listed, each section is preceded by its header entry, so the header of section s is at
+ * list position s plus the index of its first city. These positions are kept in a primitive
+ * array, and mapping between positions and sections is a lookup or a binary search that does
+ * not allocate.
+ */
+public class CitySectionIndex {
+    // Header shown in the list and fast scroll title of each section
+    private final CityObj[] mHeaders;
+    private final String[] mTitles;
+    // List position of the header of each section, ascending
+    private final int[] mHeaderPositions;
+
+    /**
+     * @param cities the cities in the given order
+     * @param byName true if the cities are sorted by name, false if sorted by offset
+     * @param time time at which the offsets of a list sorted by offset were taken
+     */
+    public CitySectionIndex(CityObj[] cities, boolean byName, long time) {
+        int[] starts = new int[cities.length];
+        String[] titles = new String[cities.length];
+        int sections = 0;
+        String lastLetter = null;
+        int lastOffset = 0;
+        for (int i = 0; i < cities.length; i++) {
+            CityObj city = cities[i];
+            if (byName) {
+                String letter = city.mCityName.substring(0, 1).toUpperCase(Locale.getDefault());
+                if (!letter.equals(lastLetter)) {
+                    lastLetter = letter;
+                    starts[sections] = i;
+                    titles[sections++] = letter;
+                }
+            } else {
+                int offset = ZoneOffsetCache.getOffset(city.mTimeZone, time);
+                if (i == 0 || offset != lastOffset) {
+                    lastOffset = offset;
+                    starts[sections] = i;
+                    titles[sections++] = Utils.getGMTHourOffset(
+                            ZoneOffsetCache.getTimeZone(city.mTimeZone), true);
+                }
+            }
+        }
+
+        mTitles = Arrays.copyOf(titles, sections);
+        mHeaders = new CityObj[sections];
+        mHeaderPositions = new int[sections];
+        for (int s = 0; s < sections; s++) {
+            // Headers only have a name when sorted by name, or a time zone when sorted by offset
+            mHeaders[s] = byName ? new CityObj(mTitles[s], null, null)
+                    : new CityObj(null, mTitles[s], null);
+            mHeaderPositions[s] = starts[s] + s;
+        }
+    }
+
+    public int getSectionCount() {
+        return mTitles.length;
+    }
+
+    public String[] getTitles() {
+        return mTitles;
+    }
+
+    public CityObj getHeader(int section) {
+        return mHeaders[section];
+    }
+
+    /**
+     * @return the list position of the header of the section.
+     */
+    public int getPositionForSection(int section) {
+        if (mHeaderPositions.length == 0) {
+            return 0;
+        }
+        return mHeaderPositions[Math.max(0, Math.min(section, mHeaderPositions.length - 1))];
+    }
+
+    /**
+     * @return the section containing the list position.
+     */
+    public int getSectionForPosition(int position) {
+        int index = Arrays.binarySearch(mHeaderPositions, position);
+        // Between two headers the position belongs to the section of the previous one
+        return Math.max(0, index >= 0 ? index : -index - 2);
+    }
+
+    /**
+     * @return true if a header is listed right before the city.
+     */
+    public boolean isSectionStart(int cityIndex, int section) {
+        return section < mHeaderPositions.length
+                && mHeaderPositions[section] - section == cityIndex;
+    }
+}
@@ -18,6 +18,7 @@ package com.embeddedlog.LightUpDroid.worldclock;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.os.Build;
 import android.preference.PreferenceManager;
 import android.view.LayoutInflater;
@@ -30,6 +31,7 @@ import com.embeddedlog.LightUpDroid.AnalogClock;
 import com.embeddedlog.LightUpDroid.R;
 import com.embeddedlog.LightUpDroid.SettingsActivity;
 import com.embeddedlog.LightUpDroid.Utils;
+import com.embeddedlog.LightUpDroid.ZoneOffsetCache;
 import com.embeddedlog.LightUpDroid.widget.TextClock;
 
 import java.text.Collator;
@@ -37,17 +39,18 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.TimeZone;
 
 public class WorldClockAdapter extends BaseAdapter {
     protected Object [] mCitiesList;
+    // Cities read from the last selected cities cursor, without the home city
+    private CityObj[] mSelectedCities = new CityObj[0];
     private final LayoutInflater mInflater;
     private final Context mContext;
     private String mClockStyle;
     private final Collator mCollator = Collator.getInstance();
-    protected HashMap<String, CityObj> mCitiesDb = new HashMap<String, CityObj>();
+    protected CityCatalog mCitiesDb;
     protected int mClocksPerRow;
 
     public WorldClockAdapter(Context context) {
@@ -64,26 +67,37 @@ public class WorldClockAdapter extends BaseAdapter {
         notifyDataSetChanged();
     }
 
+    /**
+     * Replaces the selected cities with the rows of a cursor from
+     * {@link Cities#getCitiesCursorLoader}. The cursor is not kept.
+     */
+    public void setSelectedCities(Cursor cursor) {
+        CityObj[] cities = new CityObj[cursor == null ? 0 : cursor.getCount()];
+        if (cursor != null && cursor.moveToFirst()) {
+            int i = 0;
+            do {
+                cities[i++] = Cities.getCity(cursor);
+            } while (cursor.moveToNext());
+        }
+        mSelectedCities = cities;
+        reloadData(mContext);
+    }
+
     public void loadData(Context context) {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         mClockStyle = prefs.getString(SettingsActivity.KEY_CLOCK_STYLE,
                 mContext.getResources().getString(R.string.default_clock_style));
-        mCitiesList = Cities.readCitiesFromSharedPrefs(prefs).values().toArray();
+        mCitiesList = new Object[mSelectedCities.length];
+        System.arraycopy(mSelectedCities, 0, mCitiesList, 0, mSelectedCities.length);
         sortList();
         mCitiesList = addHomeCity();
     }
 
     public void loadCitiesDb(Context context) {
-        mCitiesDb.clear();
         // Read the cities DB so that the names and timezones will be taken from the DB
         // and not from the selected list so that change of locale or changes in the DB will
-        // be reflected.
-        CityObj[] cities = Utils.loadCitiesFromXml(context);
-        if (cities != null) {
-            for (int i = 0; i < cities.length; i ++) {
-                mCitiesDb.put(cities[i].mCityId, cities [i]);
-            }
-        }
+        // be reflected. Only the cities looked up are read from the catalog.
+        mCitiesDb = CityCatalog.getInstance(context);
     }
 
     /**
@@ -122,7 +136,7 @@ public class WorldClockAdapter extends BaseAdapter {
             String homeTZ = sharedPref.getString(
                     SettingsActivity.KEY_HOME_TZ, TimeZone.getDefault().getID());
             final Date now = new Date();
-            return TimeZone.getTimeZone(homeTZ).getOffset(now.getTime())
+            return ZoneOffsetCache.getOffset(homeTZ, now.getTime())
                     != TimeZone.getDefault().getOffset(now.getTime());
         } else {
             return false;
@@ -164,8 +178,8 @@ public class WorldClockAdapter extends BaseAdapter {
                     return 1;
                 }
 
-                int gmOffset1 = TimeZone.getTimeZone(city1.mTimeZone).getOffset(now.getTime());
-                int gmOffset2 = TimeZone.getTimeZone(city2.mTimeZone).getOffset(now.getTime());
+                int gmOffset1 = ZoneOffsetCache.getOffset(city1.mTimeZone, now.getTime());
+                int gmOffset2 = ZoneOffsetCache.getOffset(city2.mTimeZone, now.getTime());
                 if (gmOffset1 == gmOffset2) {
                     return safeCityNameCompare(city1, city2);
                 } else {
@@ -270,7 +284,7 @@ public class WorldClockAdapter extends BaseAdapter {
             Utils.setTimeFormat(dclock,
                     (int)mContext.getResources().getDimension(R.dimen.label_font_size));
         }
-        CityObj cityInDb = mCitiesDb.get(cityObj.mCityId);
+        CityObj cityInDb = mCitiesDb.findCity(cityObj.mCityId);
         // Home city or city not in DB , use data from the save selected cities list
         name.setText(Utils.getCityName(cityObj, cityInDb));
 
@@ -279,7 +293,7 @@ public class WorldClockAdapter extends BaseAdapter {
         int myDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
         // Get timezone from cities DB if available
         String cityTZ = (cityInDb != null) ? cityInDb.mTimeZone : cityObj.mTimeZone;
-        now.setTimeZone(TimeZone.getTimeZone(cityTZ));
+        now.setTimeZone(ZoneOffsetCache.getTimeZone(cityTZ));
         int cityDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
         if (myDayOfWeek != cityDayOfWeek) {
             dayOfWeek.setText(mContext.getString(R.string.world_day_of_week_label,